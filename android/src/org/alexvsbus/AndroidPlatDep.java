@@ -133,6 +133,22 @@ class AndroidPlatDep implements PlatDep {
         return true;
     }
 
+    @Override
+    public boolean saveReplay(String name, byte data[], boolean best) {
+        //Replays are not kept on Android
+        return true;
+    }
+
+    @Override
+    public byte[] loadBestReplay(String name) {
+        return null;
+    }
+
+    @Override
+    public void saveProfile(String trace, String summary) {
+        //The profiler cannot be enabled on Android
+    }
+
     boolean getPrefsBoolean(String key, boolean def) {
         boolean ret = def;
 
@@ -190,6 +190,13 @@ public class Data {
         SPR_PLAYER_GRABROPE,  //PLAYER_ANIM_GRABROPE
     };
 
+    //Sprite corresponding to each particle type (PARTICLE_* constants)
+    static final int[] particleSprites = new int[]{
+        SPR_CRACK_PARTICLE,    //PARTICLE_CRACK
+        SPR_COIN_SPARK_SILVER, //PARTICLE_COIN_SPARK_SILVER
+        SPR_COIN_SPARK_GOLD,   //PARTICLE_COIN_SPARK_GOLD
+    };
+
     //Sprite corresponding to each object type (OBJ_* constants)
     static final int[] objSprites = new int[]{
         SPR_COIN_SILVER,      //OBJ_COIN_SILVER
@@ -210,6 +217,31 @@ public class Data {
         SPR_TRUCK,            //OBJ_PARKED_TRUCK
     };
 
+    //How the player character interacts with each object type (OBJ_*
+    //constants), with the fields given by the INTERACT_* constants
+    //
+    //Only the objects of types with at least one player state set are added
+    //to PlayCtx.interactIndex
+    static final int[] objInteractions = new int[]{
+     // x  y  w   h   states          action
+        2, 2, 4,  4,  PLAYER_ANY,     OBJ_ACTION_COLLECT_COIN,    //OBJ_COIN_SILVER
+        2, 2, 4,  4,  PLAYER_ANY,     OBJ_ACTION_COLLECT_COIN,    //OBJ_COIN_GOLD
+        0, 0, 0,  0,  0,              NONE,                       //OBJ_CRATE_PUSHABLE
+        1, 2, 6,  0,  PLAYER_NORMAL,  OBJ_ACTION_SLIP,            //OBJ_BANANA_PEEL
+        0, 0, 0,  0,  0,              NONE,                       //OBJ_BANANA_PEEL_MOVING
+        3, 0, 9,  72, PLAYER_NORMAL,  OBJ_ACTION_THROW_BACK,      //OBJ_GUSH
+        3, 0, 10, 0,  PLAYER_NORMAL,  OBJ_ACTION_OPEN_GUSH_CRACK, //OBJ_GUSH_CRACK
+        0, 0, 0,  0,  0,              NONE,                       //OBJ_ROPE_HORIZONTAL
+        0, 0, 4,  64, PLAYER_NORMAL,  OBJ_ACTION_GRAB_ROPE,       //OBJ_ROPE_VERTICAL
+        0, 8, 16, 0,  PLAYER_NORMAL,  OBJ_ACTION_BOUNCE,          //OBJ_SPRING
+        0, 0, 0,  0,  0,              NONE,                       //OBJ_HYDRANT
+        0, 0, 0,  0,  0,              NONE,                       //OBJ_OVERHEAD_SIGN
+        0, 0, 0,  0,  0,              NONE,                       //OBJ_PARKED_CAR_BLUE
+        0, 0, 0,  0,  0,              NONE,                       //OBJ_PARKED_CAR_SILVER
+        0, 0, 0,  0,  0,              NONE,                       //OBJ_PARKED_CAR_YELLOW
+        0, 0, 0,  0,  0,              NONE,                       //OBJ_PARKED_TRUCK
+    };
+
     //Gush movement patterns
     //
     //For each pair of values, the first value is the vertical velocity (yvel)
@@ -31,8 +31,20 @@ public class Defs {
     public static final String VERSION = "pre6";
     public static final String REPOSITORY = "https://github.com/M374LX/alexvsbus-java";
 
-    //Maximum delta time
-    static final float MAX_DT = (1.0f / 30.0f);
+    //Play sessions are simulated in ticks of fixed length, regardless of the
+    //frame rate (see Main.updatePlay())
+    static final int TICK_RATE = 120;
+    static final float TICK_DT = (1.0f / TICK_RATE);
+
+    //In fixed-point physics mode (see Play.integrate()), positions and
+    //velocities are kept as multiples of 1/FIXED_ONE. Values on that grid
+    //below 65536 in magnitude are exactly representable as floats
+    static final float FIXED_ONE = 256;
+
+    //Maximum time a single frame can account for, so that a long stall (as
+    //when the window is being dragged) does not make the game run a large
+    //number of ticks at once
+    static final float MAX_FRAME_DT = 0.25f;
 
     //Screen types
     static final int SCR_BLANK = 0;
@@ -93,7 +105,7 @@ public class Defs {
     //inactive
     //
     //Commonly used as an object's X position or as an index within
-    //PlayCtx.objs[]
+    //PlayCtx.objs
     public static final int NONE = (-1);
 
 
@@ -145,6 +157,9 @@ public class Defs {
     //Touchscreen button opacity
     static final float TOUCH_BUTTON_OPACITY = 0.45f;
 
+    //Opacity of the player character of a ghost (see Ghost)
+    static final float GHOST_OPACITY = 0.4f;
+
 
 
     //==========================================================================
@@ -363,18 +378,25 @@ public class Defs {
     static final int LVLNUM_ENDING = 8;
 
     //Maximum numbers
-    static final int MAX_OBJS = 160;
     static final int MAX_CRATE_BLOCKS = 32;
-    static final int MAX_HOLES = 32;
     static final int MAX_GUSHES = 32;
     static final int MAX_PASSAGEWAYS = 4;
     static final int MAX_PUSHABLE_CRATES = MAX_PASSAGEWAYS;
     static final int MAX_CUTSCENE_OBJECTS = 2;
+    static final int MAX_PARTICLES = 2048;
+    static final int MAX_PASSERS = 8;
+
+    //Each passing car throws at most one banana peel, and another one is
+    //thrown in the goal sequence of level 3
+    static final int MAX_THROWN_PEELS = MAX_PASSERS + 1;
+
+    //Default capacities of the tables sized for each level, which are only
+    //exceeded by levels that need more (see LevelLoad.prescan())
+    static final int MAX_OBJS = 160;
+    static final int MAX_HOLES = 32;
     static final int MAX_SOLIDS = 96;
     static final int MAX_TRIGGERS = 8;
     static final int MAX_RESPAWN_POINTS = 32;
-    static final int MAX_COIN_SPARKS = 12;
-    static final int MAX_CRACK_PARTICLES = 12;
 
     //A level block is the basic unit for positioning objects in the level, as
     //well as for the width of deep holes and passageways
@@ -382,6 +404,32 @@ public class Defs {
     static final int VSCREEN_MAX_WIDTH_LEVEL_BLOCKS =
                                         (VSCREEN_MAX_WIDTH / LEVEL_BLOCK_SIZE);
 
+    //Maximum level size in pixels (32 screens)
+    static final int MAX_LEVEL_SIZE = 32 * VSCREEN_MAX_WIDTH;
+
+    //Solid grid, which divides the level into columns of 64 pixels (see
+    //SolidGrid.java)
+    static final int SOLID_GRID_CELL_SHIFT = 6;
+    static final int SOLID_GRID_NUM_CELLS =
+                                (MAX_LEVEL_SIZE >> SOLID_GRID_CELL_SHIFT) + 1;
+    static final int SOLID_GRID_INITIAL_CELL_SIZE = 8;
+
+    //Margins for the windows of objects in PlayCtx.objs (see ObjIndex.java)
+    //
+    //The player character only interacts with objects close to it, while the
+    //widest object sprite (horizontal rope) is 400 pixels wide
+    static final int OBJ_INTERACT_MARGIN = 32;
+    static final int OBJ_DRAW_MARGIN = 400;
+
+    //Gushes that follow their movement pattern from a known point (see
+    //Play.moveGushes()) are only updated if within this distance from the
+    //camera or the player character
+    static final int GUSH_UPDATE_MARGIN = 128;
+
+    //Longest period of a gush movement pattern, in ticks, for which a table is
+    //built (see Play.buildGushTable())
+    static final int GUSH_TABLE_MAX_TICKS = 4096;
+
     //Floor, holes, light poles, and background
     static final int BACKGROUND_DRAW_Y = 176;
     static final int POLE_DISTANCE = 384; //Distance between light poles
@@ -406,7 +454,7 @@ public class Defs {
     static final int SOL_PASSAGEWAY_ENTRY = 5;
     static final int SOL_PASSAGEWAY_EXIT = 6;
 
-    //Object types (for objects that use PlayCtx.objs[])
+    //Object types (for objects that use PlayCtx.objs)
     static final int OBJ_COIN_SILVER = 0;
     static final int OBJ_COIN_GOLD = 1;
     static final int OBJ_CRATE_PUSHABLE = 2;
@@ -424,6 +472,25 @@ public class Defs {
     static final int OBJ_PARKED_CAR_YELLOW = 14;
     static final int OBJ_PARKED_TRUCK = 15;
 
+    //Fields of each entry of Data.objInteractions, the first four being the
+    //bounding box relative to the object's position (right = left + width
+    //and bottom = top + height)
+    static final int INTERACT_X = 0;
+    static final int INTERACT_Y = 1;
+    static final int INTERACT_WIDTH = 2;
+    static final int INTERACT_HEIGHT = 3;
+    static final int INTERACT_STATES = 4; //Player states it happens in (bits)
+    static final int INTERACT_ACTION = 5; //OBJ_ACTION_* constants
+    static final int INTERACT_FIELDS = 6;
+
+    //What happens when the player character touches an object
+    static final int OBJ_ACTION_SLIP = 0;
+    static final int OBJ_ACTION_COLLECT_COIN = 1;
+    static final int OBJ_ACTION_THROW_BACK = 2;
+    static final int OBJ_ACTION_OPEN_GUSH_CRACK = 3;
+    static final int OBJ_ACTION_GRAB_ROPE = 4;
+    static final int OBJ_ACTION_BOUNCE = 5;
+
     //Even if the player presses the jump button before the character hits the
     //floor, a timer is started and a jump is triggered if the character hits
     //the floor before this amount of time passes
@@ -444,6 +511,10 @@ public class Defs {
     static final int PLAYER_STATE_FLICKER = 5;
     static final int PLAYER_STATE_INACTIVE = 6;
 
+    //Sets of player character's states (one bit for each state)
+    static final int PLAYER_NORMAL = (1 << PLAYER_STATE_NORMAL);
+    static final int PLAYER_ANY = ~0;
+
     //Player character's animation types
     static final int PLAYER_ANIM_STAND = 0;
     static final int PLAYER_ANIM_WALK = 1;
@@ -462,8 +533,8 @@ public class Defs {
     //Triggered objects (other than the car colors above)
     static final int TRIGGER_HEN = 3;
 
-    //Used as a type for the Car class to represent the traffic jam of the
-    //ending sequence
+    //Used as the type of a passer (see Passers) to represent the traffic jam
+    //of the ending sequence
     static final int TRAFFIC_JAM = 4;
 
     //Objects with a fixed Y position
@@ -484,6 +555,15 @@ public class Defs {
     static final int CAMERA_XVEL = 700;
     static final int CAMERA_YVEL = 400;
 
+    //Particle types (see Particles)
+    static final int PARTICLE_CRACK = 0;
+    static final int PARTICLE_COIN_SPARK_SILVER = 1;
+    static final int PARTICLE_COIN_SPARK_GOLD = 2;
+
+    //A coin spark is removed once it reaches its last frame, which is blank
+    static final int COIN_SPARK_FRAMES = 4;
+    static final float COIN_SPARK_FRAME_TIME = 0.05f;
+
     //Animations
     static final int ANIM_PLAYER = 0;
     static final int ANIM_COINS = 1;
@@ -495,9 +575,8 @@ public class Defs {
     static final int ANIM_BUS_DOOR_FRONT = 7;
     static final int ANIM_CAR_WHEELS = 8;
     static final int ANIM_HEN = 9;
-    static final int ANIM_COIN_SPARKS = 10; //12 positions starting at 10
-    static final int ANIM_CUTSCENE_OBJECTS = 22; //2 positions starting at 22
-    static final int NUM_ANIMS = 24;
+    static final int ANIM_CUTSCENE_OBJECTS = 10; //2 positions starting at 10
+    static final int NUM_ANIMS = 12;
 
     //Sequence types
     static final int SEQ_NORMAL_PLAY_START = 0;
@@ -515,6 +594,74 @@ public class Defs {
     static final int SEQ_ENDING = 800;
     static final int SEQ_FINISHED = 999;
 
+    //Gameplay events (see EventQueue)
+    static final int EVENT_QUEUE_SIZE = 256; //Must be a power of two
+    static final int EV_COIN_COLLECTED = 0; //Value: points earned
+    static final int EV_SPRING_HIT = 1;
+    static final int EV_PEEL_SLIPPED = 2;
+    static final int EV_THROWN_BACK = 3; //By a gush
+    static final int EV_CRATE_PUSHED = 4;
+    static final int EV_PASSAGEWAY_OPENED = 5;
+    static final int EV_FELL = 6; //Into a deep hole
+    static final int EV_RESPAWNED = 7;
+    static final int EV_TIME_WARNING = 8; //Value: remaining time
+    static final int EV_SCORE_COUNTED = 9; //Value: score
+    static final int EV_LEVEL_ENDED = 10; //Value: 1 if the goal was reached
+
+    //Profiler sections (see Profiler), the first ones being the phases of
+    //Play.update() in the order they run
+    static final int PROF_STORE_PREV_POSITIONS = 0;
+    static final int PROF_BEGIN_UPDATE = 1;
+    static final int PROF_UPDATE_REMAINING_TIME = 2;
+    static final int PROF_UPDATE_SCORE_COUNT = 3;
+    static final int PROF_MOVE_OBJECTS = 4;
+    static final int PROF_HANDLE_CAR_THROWN_PEEL = 5;
+    static final int PROF_MOVE_PLAYER = 6;
+    static final int PROF_HANDLE_SOLIDS = 7;
+    static final int PROF_HANDLE_PASSAGEWAYS = 8;
+    static final int PROF_HANDLE_PLAYER_INTERACTIONS = 9;
+    static final int PROF_HANDLE_TRIGGERS = 10;
+    static final int PROF_DO_PLAYER_STATE_SPECIFICS = 11;
+    static final int PROF_HANDLE_FALL = 12;
+    static final int PROF_HANDLE_RESPAWN = 13;
+    static final int PROF_HANDLE_PLAYER_STATE_CHANGE = 14;
+    static final int PROF_MOVE_CAMERA = 15;
+    static final int PROF_KEEP_PLAYER_WITHIN_LIMITS = 16;
+    static final int PROF_HANDLE_PLAYER_ANIMATION_CHANGE = 17;
+    static final int PROF_UPDATE_ANIMATIONS = 18;
+    static final int PROF_MOVE_PUSH_ARROW = 19;
+    static final int PROF_POSITION_BUS_STOP_SIGN = 20;
+    static final int PROF_POSITION_LIGHT_POLE = 21;
+    static final int PROF_UPDATE_SEQUENCE = 22;
+    static final int PROF_UPDATE_STATE_HASH = 23;
+    static final int PROF_TICK = 24; //All of Play.update()
+    static final int PROF_FRAME = 25; //All of Main.render()
+    static final int PROF_INPUT = 26;
+    static final int PROF_DIALOGS = 27;
+    static final int PROF_PLAY = 28;
+    static final int PROF_GHOST = 29;
+    static final int PROF_WIPE = 30;
+    static final int PROF_DRAW = 31;
+    static final int NUM_PROF_SECTIONS = 32;
+    static final int PROF_HIST_BUCKETS = 40; //Up to 2^40 ns (18 minutes)
+    static final int PROF_TRACE_SIZE = 65536;
+
+    //Replays (see ReplayWriter)
+    //
+    //REPLAY_VERSION also needs to be increased whenever a change to Play makes
+    //the same input produce a different run or state hash, as older replays
+    //would no longer re-simulate to their recorded results
+    static final int REPLAY_VERSION = 7;
+    static final int REPLAY_FLAG_SKIP_INITIAL_SEQUENCE = (1 << 0);
+    static final int REPLAY_FLAG_FIXED_POINT = (1 << 1);
+    static final int REPLAY_INPUT_SHIFT = 2; //INPUT_LEFT becomes bit 0
+    static final int REPLAY_INPUT_MASK = (INPUT_LEFT | INPUT_RIGHT | INPUT_JUMP);
+    static final int REPLAY_HASH_INTERVAL = (TICK_RATE * 2); //In ticks
+    static final int REPLAY_MAX_PENDING_HASHES = 16;
+    static final int REPLAY_HASH = 0xFD;
+    static final int REPLAY_SCREEN_WIDTH = 0xFE;
+    static final int REPLAY_END = 0xFF;
+
 
 
     //==========================================================================
@@ -526,6 +673,29 @@ public class Defs {
         void setMinWindowSize(int width, int height);
         Config getConfig();
         boolean saveConfig();
+
+        //Stores the replay of a level run, where name identifies the level
+        //(such as "level1n"); platforms that do not keep replays just return
+        //true
+        //
+        //If best is set, the replay also replaces the one returned by
+        //loadBestReplay() for the level
+        boolean saveReplay(String name, byte data[], boolean best);
+
+        //Returns the best replay stored for a level, or null if there is none
+        byte[] loadBestReplay(String name);
+
+        //Stores the output of the profiler when the game exits, which only
+        //happens if Config.profilerEnabled is set
+        void saveProfile(String trace, String summary);
+    }
+
+    //Provides the contents of level files to LevelLoad
+    //
+    //Both methods throw an exception if the file cannot be read
+    static interface FileSource {
+        long length(String filename) throws Exception;
+        String readString(String filename) throws Exception;
     }
 
 
@@ -584,6 +754,17 @@ public class Defs {
         public int progressLevel;
         public int progressDifficulty;
         public boolean progressCheat;
+
+        //Physics (only set from the command line)
+        public boolean fixedPointPhysics;
+
+        //Race against the best recorded run of each level (only set from the
+        //command line)
+        public boolean ghostEnabled;
+
+        //Measure where the time of each frame goes (only set from the command
+        //line)
+        public boolean profilerEnabled;
     }
 
 
@@ -646,6 +827,7 @@ public class Defs {
 
     static class Camera {
         float x, y;
+        float prevx, prevy; //Position at the end of the previous tick
         float xvel, yvel;
         float xdest;
         float xmin;
@@ -677,10 +859,13 @@ public class Defs {
         int oldState;
         float oldx, oldy;
         int oldAnimType;
+
+        float prevx, prevy; //Position at the end of the previous tick
     }
 
     static class Bus {
         float x; //Position
+        float prevx; //Position at the end of the previous tick
         float xvel; //Velocity
         float acc; //Acceleration
 
@@ -688,10 +873,27 @@ public class Defs {
         int numCharacters; //Number of characters at the rear door
     }
 
-    //Class used for most game objects, which need only a type and a position
-    static class Obj {
-        int type;
-        int x, y;
+    //Most game objects, which need only a type and a position
+    //
+    //The entity classes below store each field in its own array, indexed by
+    //the handle of the entity, rather than using one small instance per entity
+    static class Objs extends Pool {
+        int type[];
+        int x[], y[];
+        long hash[]; //Contribution to PlayCtx.objsHash (see Play.hashObj())
+
+        Objs(int cap) {
+            super(cap);
+            type = new int[cap];
+            x = new int[cap];
+            y = new int[cap];
+            hash = new long[cap];
+        }
+    }
+
+    //Range of positions within ObjIndex.order[] that are currently active
+    static class ObjWindow {
+        int first, last; //The last position is not included
     }
 
     static class CrateBlock {
@@ -699,18 +901,58 @@ public class Defs {
         int width, height;
     }
 
-    static class Gush {
-        int obj; //Index of the gush within PlayCtx.objs[]
-        float y;
-        float yvel;
-        float ydest; //Destination Y position
-        int movePattern[];
-        int movePatternPos;
+    static class Gushes extends Pool {
+        int obj[]; //Handle of the gush within PlayCtx.objs
+        float y[];
+        float yvel[];
+        float ydest[]; //Destination Y position
+        int movePattern[][];
+        int movePatternPos[];
+
+        //Set once the gush has reached a destination Y position, from which
+        //point its state is taken from a GushTable, where it is at position
+        //(tick - phaseStart) modulo the period, and y, yvel, ydest, and
+        //movePatternPos are only updated when needed
+        boolean periodic[];
+        int phaseStart[];
+        int tick; //Ticks elapsed, shared by all gushes
+
+        Gushes(int cap) {
+            super(cap);
+            obj = new int[cap];
+            y = new float[cap];
+            yvel = new float[cap];
+            ydest = new float[cap];
+            movePattern = new int[cap][];
+            movePatternPos = new int[cap];
+            periodic = new boolean[cap];
+            phaseStart = new int[cap];
+        }
+    }
+
+    //Every state a gush goes through, tick by tick, during one period of its
+    //movement pattern, starting right after the pattern loops
+    //
+    //Tables are built for a given tick length and physics mode by running the
+    //same code that moves the gushes, so looking a state up gives exactly the
+    //same result as moving the gush tick by tick
+    static class GushTable {
+        int pattern[];
+        float dt;
+        boolean fixedPoint;
+
+        int period; //In ticks
+        float y[];
+        int movePatternPos[];
+
+        //Position within the table at which the gush reaches the step of the
+        //pattern at each position of the pattern
+        int stepStart[];
     }
 
     //Rope grabbed by the player character
     static class GrabbedRope {
-        int obj; //Index of the rope within PlayCtx.objs[]
+        int obj; //Handle of the rope within PlayCtx.objs
         float x;
         float xmin, xmax;
         float xvel;
@@ -718,20 +960,40 @@ public class Defs {
 
     //Moving banana peel
     static class MovingPeel {
-        int obj; //Index of the peel within PlayCtx.objs[]
+        int obj; //Handle of the peel within PlayCtx.objs
         float x, y;
-        float xdest; //Used only by thrown peels (not by slipped peels)
         float xvel, yvel;
         float grav;
     }
 
+    //Banana peels in the air after being thrown, each becoming an ordinary
+    //banana peel at xdest once it hits the floor
+    static class ThrownPeels extends Pool {
+        int obj[]; //Handle of the peel within PlayCtx.objs
+        float x[], y[];
+        float xdest[];
+        float xvel[], yvel[];
+        float grav[];
+
+        ThrownPeels(int cap) {
+            super(cap);
+            obj = new int[cap];
+            x = new float[cap];
+            y = new float[cap];
+            xdest = new float[cap];
+            xvel = new float[cap];
+            yvel = new float[cap];
+            grav = new float[cap];
+        }
+    }
+
     static class PushableCrate {
-        int obj; //Index of the crate within PlayCtx.objs[]
+        int obj; //Handle of the crate within PlayCtx.objs
         float x;
         boolean showArrow;
         boolean pushed;
         float xmax;
-        int solid; //Index within PlayCtx.solids[]
+        int solid; //Index within PlayCtx.solids
     }
 
     static class CutsceneObject {
@@ -745,53 +1007,117 @@ public class Defs {
 
     //An invisible area the player character cannot pass through, which is
     //placed along with the floor, crates, and so on
-    static class Solid {
-        int type, left, right, top, bottom;
+    static class Solids {
+        int capacity;
+        int type[], left[], right[], top[], bottom[];
+        long hash[]; //Contribution to PlayCtx.solidsHash
+
+        Solids(int cap) {
+            capacity = cap;
+            type = new int[cap];
+            left = new int[cap];
+            right = new int[cap];
+            top = new int[cap];
+            bottom = new int[cap];
+            hash = new long[cap];
+        }
     }
 
     //Used for both deep holes and underground passageways
-    static class Hole {
-        int type;
-        int x, width;
+    static class Holes extends Pool {
+        int type[];
+        int x[], width[];
+        long hash[]; //Contribution to PlayCtx.holesHash
+
+        Holes(int cap) {
+            super(cap);
+            type = new int[cap];
+            x = new int[cap];
+            width = new int[cap];
+            hash = new long[cap];
+        }
     }
 
-    //Position the player character can reappear at after falling into a deep hole
-    static class RespawnPoint {
-        int x, y;
+    //Positions the player character can reappear at after falling into a deep
+    //hole
+    static class RespawnPoints {
+        int capacity;
+        int x[], y[];
+
+        RespawnPoints(int cap) {
+            capacity = cap;
+            x = new int[cap];
+            y = new int[cap];
+        }
     }
 
     //When the player character reaches the X position of a trigger (regardless
     //of Y position), either a passing car or a hen is triggered
-    static class Trigger {
-        int x;
-        int what; //CAR_BLUE, CAR_SILVER, CAR_YELLOW, or TRIGGER_HEN
+    static class Triggers {
+        int capacity;
+        int x[];
+        int what[]; //CAR_BLUE, CAR_SILVER, CAR_YELLOW, or TRIGGER_HEN
+
+        Triggers(int cap) {
+            capacity = cap;
+            x = new int[cap];
+            what = new int[cap];
+        }
     }
 
-    //Either a single car that appears when triggered and throws a banana peel
-    //or the traffic jam of the ending sequence, but not used for parked cars
-    static class Car {
-        float x;
-        float xvel;
-        int type; //CAR_BLUE, CAR_SILVER, CAR_YELLOW, or TRAFFIC_JAM
-        boolean threwPeel;
-        int peelThrowX; //Throw a banana peel when the car reaches this X position
+    //Passing cars and hens that appear when triggered, as well as the traffic
+    //jam and the hen of the ending sequence
+    static class Passers extends Pool {
+        //CAR_BLUE, CAR_SILVER, CAR_YELLOW, TRIGGER_HEN, or TRAFFIC_JAM
+        int type[];
+
+        float x[];
+        float prevx[]; //Position at the end of the previous tick
+        float xvel[];
+        float acc[]; //Used only by hens
+
+        //Used only by passing cars, which throw a banana peel when reaching
+        //peelThrowX
+        boolean threwPeel[];
+        int peelThrowX[];
+
+        Passers(int cap) {
+            super(cap);
+            type = new int[cap];
+            x = new float[cap];
+            prevx = new float[cap];
+            xvel = new float[cap];
+            acc = new float[cap];
+            threwPeel = new boolean[cap];
+            peelThrowX = new int[cap];
+        }
     }
 
-    static class Hen {
-        float x;
-        float xvel;
-        float acc;
-    }
-
-    static class CoinSpark {
-        int x, y;
-        boolean gold;
-    }
-
-    static class CrackParticle {
-        float x, y;
-        float xvel, yvel;
-        float grav;
+    //Purely visual particles, such as crack particles and coin sparks
+    //
+    //Nothing refers to a particle from elsewhere, so unlike the entries of a
+    //Pool, the live particles are simply kept packed at the start of the
+    //arrays, with the last one moved to the position of a removed one (see
+    //Play.moveParticles())
+    static class Particles {
+        int count;
+        int type[]; //PARTICLE_* constants
+        float x[], y[];
+        float xvel[], yvel[];
+        float grav[];
+        float age[]; //Time since the particle was added
+        float lifetime[]; //Removed once its age reaches this (zero if never)
+
+        Particles(int cap) {
+            type = new int[cap];
+            x = new float[cap];
+            y = new float[cap];
+            xvel = new float[cap];
+            yvel = new float[cap];
+            grav = new float[cap];
+            age = new float[cap];
+            lifetime = new float[cap];
+        }
     }
 
     //Arrow indicating that a crate is pushable
@@ -802,14 +1128,17 @@ public class Defs {
     }
 
     //Animation
+    //
+    //The current frame of a running animation is not stored, but computed
+    //from PlayCtx.clock by Play.animFrame(), so animations need no updating
     static class Anim {
         boolean running;
         boolean loop;
         boolean reverse;
-        int frame;
+        int frame; //Frame shown while the animation is not running
         int numFrames;
-        float delay;
-        float maxDelay;
+        float frameTime; //Time each frame is shown for
+        float startTime; //Value of PlayCtx.clock when the animation started
     }
 
     //Gameplay context
@@ -818,9 +1147,9 @@ public class Defs {
         int difficulty;
         int levelNum;
         boolean lastLevel; //Last level of current difficulty
+        boolean fixedPoint; //Fixed-point physics mode
         int levelSize;
         int bgColor;
-        int bgOffsetX;
         int bgm;
 
         int busStopSignX;
@@ -840,38 +1169,55 @@ public class Defs {
         Player player;
         Bus bus;
 
-        Obj objs[];
+        Objs objs;
+        ObjIndex objIndex;
+        ObjIndex interactIndex; //Objects the player character can interact with
         CrateBlock crateBlocks[];
-        Gush gushes[];
+        Gushes gushes;
         GrabbedRope grabbedRope;
         MovingPeel slipPeel;
-        MovingPeel thrownPeel;
+        ThrownPeels thrownPeels;
         PushableCrate pushableCrates[];
         CutsceneObject cutsceneObjects[];
-        Solid solids[];
+        Solids solids;
+        SolidGrid solidGrid;
 
-        int hitSpring; //Index within objs[] of the last spring hit by the
+        int hitSpring; //Handle within objs of the last spring hit by the
                        //player character
 
-        Hole holes[];
-        Hole curPassageway; //Passageway the player character is in, if any
+        Holes holes;
+        int curPassageway; //Passageway the player character is in, if any
 
-        RespawnPoint respawnPoints[];
-        Trigger triggers[];
+        //Handles within holes of the passageways, sorted by X position
+        int passageways[];
+        int numPassageways;
+        int passagewayCursor; //First passageway whose entry is to the right
+                              //of the player character
 
-        //Objects that appear when triggered
-        Car car;
-        Hen hen;
+        //Both sorted by X position
+        RespawnPoints respawnPoints;
+        int numRespawnPoints;
+        Triggers triggers;
+        int numTriggers;
+        int nextTrigger; //Triggers before this one have already been reached
+
+        //Objects that appear when triggered (triggers reached while the pool
+        //is full stay pending until there is room)
+        Passers passers;
+        int trafficJam; //Handle within passers of the ending sequence's traffic
+                        //jam
+        int endingHen; //Handle within passers of the ending sequence's hen
+
+        //Events emitted during the last ticks, drained once per frame
+        EventQueue events;
 
         //Visual effects
-        CoinSpark coinSparks[];
-        CrackParticle crackParticles[];
+        Particles particles;
         PushArrow pushArrow;
-        int nextCoinSpark;
-        int nextCrackParticle;
 
         //Animations
         Anim anims[];
+        float clock; //Time elapsed since the play session started
 
         //Used in the ending sequence
         boolean playerReachedFlagman;
@@ -884,6 +1230,18 @@ public class Defs {
         boolean skipInitialSequence;
         boolean wipeIn;
         boolean wipeOut;
+
+        //Hash of the gameplay state at the end of the last tick (see
+        //Play.updateStateHash()), used to detect where two runs that should
+        //be identical start to differ
+        long stateHash;
+
+        //Parts of stateHash kept up to date as individual objects, solids,
+        //and holes change, so that each tick does not need to go through
+        //all of them
+        long objsHash;
+        long solidsHash;
+        long holesHash;
     }
 }
 
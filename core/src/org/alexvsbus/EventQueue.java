@@ -0,0 +1,84 @@
+/*
+ * Alex vs Bus
+ * Copyright (C) 2021-2023 M374LX
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.alexvsbus;
+
+import static org.alexvsbus.Defs.*;
+
+//Gameplay events (EV_* constants) emitted by Play during its ticks, so that
+//sound effects and anything else that reacts to the gameplay can be handled
+//outside of the simulation
+//
+//The queue is a ring buffer of fixed size. The events of a frame are read by
+//going through get(0) to get(count - 1), which any number of consumers can
+//do, and then removed all at once with clear().
+class EventQueue {
+    //Fields of each event, indexed by position within the buffer
+    int type[];
+    int x[], y[]; //Where the event took place, if applicable
+    int value[]; //Depends on the type
+
+    int first; //Position of the oldest event
+    int count;
+    int numDropped; //Events lost because the queue was full
+
+    //--------------------------------------------------------------------------
+
+    EventQueue() {
+        type = new int[EVENT_QUEUE_SIZE];
+        x = new int[EVENT_QUEUE_SIZE];
+        y = new int[EVENT_QUEUE_SIZE];
+        value = new int[EVENT_QUEUE_SIZE];
+    }
+
+    void clear() {
+        first = 0;
+        count = 0;
+    }
+
+    void push(int evType, int evx, int evy, int evValue) {
+        int pos;
+
+        if (count == EVENT_QUEUE_SIZE) {
+            numDropped++;
+            return;
+        }
+
+        pos = (first + count) & (EVENT_QUEUE_SIZE - 1);
+        type[pos] = evType;
+        x[pos] = evx;
+        y[pos] = evy;
+        value[pos] = evValue;
+        count++;
+    }
+
+    //Returns the position within the buffer of the nth oldest event
+    int get(int n) {
+        return (first + n) & (EVENT_QUEUE_SIZE - 1);
+    }
+
+    //Removes the oldest event
+    void pop() {
+        if (count == 0) return;
+
+        first = (first + 1) & (EVENT_QUEUE_SIZE - 1);
+        count--;
+    }
+}
@@ -0,0 +1,36 @@
+/*
+ * Alex vs Bus
+ * Copyright (C) 2021-2023 M374LX
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.alexvsbus;
+
+import static org.alexvsbus.Defs.*;
+
+import com.badlogic.gdx.Gdx;
+
+//Reads level files from the internal storage of libGDX
+class GdxFileSource implements FileSource {
+    public long length(String filename) {
+        return Gdx.files.internal(filename).length();
+    }
+
+    public String readString(String filename) {
+        return Gdx.files.internal(filename).readString();
+    }
+}
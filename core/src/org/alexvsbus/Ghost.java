@@ -0,0 +1,123 @@
+/*
+ * Alex vs Bus
+ * Copyright (C) 2021-2023 M374LX
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.alexvsbus;
+
+import static org.alexvsbus.Defs.*;
+
+import java.io.ByteArrayInputStream;
+
+//Recorded level run the player races against, shown as a translucent player
+//character next to the live one
+//
+//The ghost has its own play session (Play and PlayCtx), into which its replay
+//is fed one tick at a time in lockstep with the live session, so nothing is
+//stored per tick and the ghost follows exactly the same physics. Nothing in
+//the live session is ever read or written by the ghost's Play
+//
+//Both runs are aligned on the first tick of normal play, so that a ghost
+//recorded with the initial sequence can be raced against when the sequence
+//is skipped and vice versa
+class Ghost {
+    DisplayParams displayParams; //The replay's own vscreen width is used
+    Play play;
+    PlayCtx ctx;
+    LevelLoad levelLoad;
+    ReplayReader replay;
+
+    boolean loaded; //A replay is being followed
+    boolean racing; //Normal play has started in the live session
+
+    //--------------------------------------------------------------------------
+
+    Ghost(FileSource fileSource) {
+        displayParams = new DisplayParams();
+        play = new Play(displayParams);
+        ctx = play.newCtx();
+        levelLoad = new LevelLoad(ctx, fileSource);
+        replay = new ReplayReader();
+    }
+
+    //Prepares the ghost for a live session of the given level that is about
+    //to start, leaving it unloaded if the replay is missing or is of another
+    //level or physics mode
+    void start(byte data[], int levelNum, int difficulty, boolean fixedPoint) {
+        loaded = false;
+        racing = false;
+
+        if (data == null) return;
+        if (!replay.open(new ByteArrayInputStream(data))) return;
+        if (replay.levelNum != levelNum) return;
+        if (replay.difficulty != difficulty) return;
+        if (replay.fixedPoint() != fixedPoint) return;
+
+        displayParams.vscreenWidth = replay.vscreenWidth;
+        ctx.score = replay.score;
+        play.clear();
+
+        if (levelLoad.load(LevelLoad.filename(levelNum, difficulty))
+                != LVLERR_NONE) {
+            return;
+        }
+
+        play.start(levelNum, difficulty, replay.skipInitialSequence(),
+                fixedPoint);
+
+        //Run the ghost's initial sequence, if any, right away
+        while (ctx.sequenceStep != SEQ_NORMAL_PLAY) {
+            if (!replay.step(play)) return;
+            ctx.events.clear();
+        }
+
+        loaded = true;
+    }
+
+    //Runs the tick of the ghost that corresponds to the tick just run by the
+    //live session
+    void update(PlayCtx liveCtx) {
+        if (!loaded) return;
+
+        if (!racing) {
+            if (liveCtx.sequenceStep != SEQ_NORMAL_PLAY) return;
+
+            //The ghost already ran its first tick of normal play in start()
+            racing = true;
+            return;
+        }
+
+        if (!replay.step(play)) {
+            //The recorded run is over, so the ghost disappears
+            loaded = false;
+            racing = false;
+        }
+
+        //There is no audio for the ghost
+        ctx.events.clear();
+    }
+
+    void stop() {
+        loaded = false;
+        racing = false;
+    }
+
+    boolean visible() {
+        return racing && ctx.player.visible;
+    }
+}
@@ -22,10 +22,9 @@ package org.alexvsbus;
 
 import static org.alexvsbus.Defs.*;
 
-import com.badlogic.gdx.Gdx;
-
 class LevelLoad {
     PlayCtx ctx;
+    FileSource fileSource;
     LineRead lineRead;
 
     boolean invalid;
@@ -39,30 +38,65 @@ class LevelLoad {
     int numRespawnPoints;
     int numTriggers, numCarTriggers;
 
+    //Numbers of entries needed in the tables sized for the level, as
+    //counted by prescan()
+    int needObjs;
+    int needSolids;
+    int needHoles;
+    int needTriggers;
+    int needRespawnPoints;
+
     //--------------------------------------------------------------------------
 
-    LevelLoad(PlayCtx pctx) {
+    LevelLoad(PlayCtx pctx, FileSource fs) {
         ctx = pctx;
+        fileSource = fs;
         lineRead = new LineRead();
     }
 
+    //Returns the name of the file of a level, such as "level1n"
+    static String filename(int levelNum, int difficulty) {
+        String filename = "level" + levelNum;
+
+        switch (difficulty) {
+            case DIFFICULTY_NORMAL: filename += 'n'; break;
+            case DIFFICULTY_HARD:   filename += 'h'; break;
+            case DIFFICULTY_SUPER:  filename += 's'; break;
+        }
+
+        return filename;
+    }
+
     int load(String filename) {
         boolean noObjects = true;
+        String data;
         int x, y, w, h;
         int i, j;
 
         invalid = false;
 
         try {
-            if (Gdx.files.internal(filename).length() > 4096) { //4 kB
+            if (fileSource.length(filename) > 4096) { //4 kB
                 return LVLERR_TOO_LARGE;
             }
 
-            lineRead.setData(Gdx.files.internal(filename).readString());
+            data = fileSource.readString(filename);
         } catch (Exception e) {
             return LVLERR_CANNOT_OPEN;
         }
 
+        //The tables keep their default capacities unless the level needs more,
+        //so that they are not reallocated from one ordinary level to the next
+        prescan(data);
+        Play.setCapacities(ctx,
+                Math.max(MAX_OBJS, needObjs),
+                Math.max(MAX_SOLIDS, needSolids),
+                Math.max(MAX_HOLES, needHoles),
+                Math.max(MAX_TRIGGERS, needTriggers),
+                Math.max(MAX_RESPAWN_POINTS, needRespawnPoints));
+
+        lineRead.setData(data);
+
         xMax = NONE;
         numObjs = 0;
         numCrateBlocks = 0;
@@ -195,12 +229,14 @@ class LevelLoad {
                     return LVLERR_INVALID;
                 }
 
-                ctx.gushes[numGushes].obj = numObjs - 1;
-                ctx.gushes[numGushes].y = GUSH_INITIAL_Y;
-                ctx.gushes[numGushes].movePattern = Data.gushMovePattern1;
-                ctx.gushes[numGushes].movePatternPos = 0;
-                ctx.gushes[numGushes].yvel = Data.gushMovePattern1[0];
-                ctx.gushes[numGushes].ydest = Data.gushMovePattern1[1];
+                i = ctx.gushes.alloc();
+                ctx.gushes.obj[i] = numObjs - 1;
+                ctx.gushes.periodic[i] = false;
+                ctx.gushes.y[i] = GUSH_INITIAL_Y;
+                ctx.gushes.movePattern[i] = Data.gushMovePattern1;
+                ctx.gushes.movePatternPos[i] = 0;
+                ctx.gushes.yvel[i] = Data.gushMovePattern1[0];
+                ctx.gushes.ydest[i] = Data.gushMovePattern1[1];
 
                 numGushes++;
             } else if (tokens[0].equals("gush-crack")) {
@@ -263,9 +299,9 @@ class LevelLoad {
             return LVLERR_INVALID;
         }
 
-        //Error: running out of positions in ctx.objs[] due to banana peels
+        //Error: running out of positions in ctx.objs due to banana peels
         //thrown by triggered cars
-        if (numObjs + numCarTriggers > MAX_OBJS) {
+        if (numObjs + numCarTriggers > ctx.objs.capacity) {
             return LVLERR_INVALID;
         }
 
@@ -278,11 +314,11 @@ class LevelLoad {
         //Ensure every respawn point is close enough to the corresponding deep
         //hole but not placed after it or over another deep hole
         for (i = 0, j = 0; i < numHoles; i++) {
-            int hx = ctx.holes[i].x;
-            int rx = ctx.respawnPoints[j].x;
+            int hx = ctx.holes.x[i];
+            int rx = ctx.respawnPoints.x[j];
 
             //Skip passageways
-            if (ctx.holes[i].type != HOLE_DEEP) {
+            if (ctx.holes.type[i] != HOLE_DEEP) {
                 continue;
             }
 
@@ -294,13 +330,13 @@ class LevelLoad {
                 int prevHole = i - 1;
 
                 //Find previous deep hole (skip passageways)
-                while (prevHole >= 0 && ctx.holes[prevHole].type != HOLE_DEEP) {
+                while (prevHole >= 0 && ctx.holes.type[prevHole] != HOLE_DEEP) {
                     prevHole--;
                 }
 
                 if (prevHole >= 0) {
                     //Right side of previous deep hole
-                    hx = ctx.holes[prevHole].x + ctx.holes[prevHole].width - 2;
+                    hx = ctx.holes.x[prevHole] + ctx.holes.width[prevHole] - 2;
 
                     if (rx <= hx) {
                         return LVLERR_INVALID;
@@ -318,10 +354,10 @@ class LevelLoad {
         //passageways and adjust solids around them
         for (i = 0; i < numHoles; i++) {
             int prevSolRight, solLeft, solWidth;
-            boolean isDeep = (ctx.holes[i].type == HOLE_DEEP);
+            boolean isDeep = (ctx.holes.type[i] == HOLE_DEEP);
 
-            x = ctx.holes[i].x;
-            w = ctx.holes[i].width;
+            x = ctx.holes.x[i];
+            w = ctx.holes.width[i];
 
             prevSolRight = x * LEVEL_BLOCK_SIZE;
             solLeft = (x + w) * LEVEL_BLOCK_SIZE;
@@ -336,7 +372,8 @@ class LevelLoad {
 
             //Adjust the previous floor solid so that it does not cover the
             //hole
-            ctx.solids[i].right = prevSolRight;
+            ctx.solids.right[i] = prevSolRight;
+            ctx.solidGrid.update(i);
 
             //Add solid for the floor after the hole
             addSolid(SOL_FULL, solLeft, FLOOR_Y, solWidth, 80);
@@ -347,19 +384,19 @@ class LevelLoad {
             }
 
             //Convert position
-            ctx.holes[i].x *= LEVEL_BLOCK_SIZE;
+            ctx.holes.x[i] *= LEVEL_BLOCK_SIZE;
         }
 
         //Convert positions from level blocks to pixels and add solids for
-        //objects in ctx.objs[]
+        //objects in ctx.objs
         for (i = 0; i < numObjs; i++) {
-            x = ctx.objs[i].x * LEVEL_BLOCK_SIZE;
-            y = ctx.objs[i].y;
+            x = ctx.objs.x[i] * LEVEL_BLOCK_SIZE;
+            y = ctx.objs.y[i];
             if (y != NONE) {
                 y *= LEVEL_BLOCK_SIZE;
             }
 
-            switch (ctx.objs[i].type) {
+            switch (ctx.objs.type[i]) {
                 case OBJ_BANANA_PEEL:
                     x += 16;
                     y -= 8;
@@ -433,14 +470,18 @@ class LevelLoad {
             }
 
             //Apply converted position
-            ctx.objs[i].x = x;
-            ctx.objs[i].y = y;
+            ctx.objs.x[i] = x;
+            ctx.objs.y[i] = y;
         }
 
+        //Sort objects by X position
+        ctx.objIndex.build(numObjs);
+        ctx.interactIndex.build(numObjs);
+
         //Set properties for ctx.pushableCrates[]
         for (i = 0; i < numPassageways; i++) {
             int obj = ctx.pushableCrates[i].obj;
-            x = ctx.objs[obj].x;
+            x = ctx.objs.x[obj];
             ctx.pushableCrates[i].x = x;
             ctx.pushableCrates[i].xmax = x + LEVEL_BLOCK_SIZE;
         }
@@ -466,16 +507,30 @@ class LevelLoad {
 
         //Convert respawn point positions from level blocks to pixels
         for (i = 0; i < numRespawnPoints; i++) {
-            ctx.respawnPoints[i].x *= LEVEL_BLOCK_SIZE;
-            ctx.respawnPoints[i].x += 3;
+            ctx.respawnPoints.x[i] *= LEVEL_BLOCK_SIZE;
+            ctx.respawnPoints.x[i] += 3;
 
-            ctx.respawnPoints[i].y *= LEVEL_BLOCK_SIZE;
-            ctx.respawnPoints[i].y -= 12;
+            ctx.respawnPoints.y[i] *= LEVEL_BLOCK_SIZE;
+            ctx.respawnPoints.y[i] -= 12;
         }
 
         //Convert trigger positions from level blocks to pixels
         for (i = 0; i < numTriggers; i++) {
-            ctx.triggers[i].x *= LEVEL_BLOCK_SIZE;
+            ctx.triggers.x[i] *= LEVEL_BLOCK_SIZE;
+        }
+
+        ctx.numRespawnPoints = numRespawnPoints;
+        ctx.numTriggers = numTriggers;
+
+        //Holes are added in ascending X order, which is kept by the pool, so
+        //passageways are listed in that order too
+        for (i = 0; i < ctx.holes.numLive; i++) {
+            int hole = ctx.holes.live[i];
+
+            if (ctx.holes.type[hole] != HOLE_DEEP) {
+                ctx.passageways[ctx.numPassageways] = hole;
+                ctx.numPassageways++;
+            }
         }
 
         //Add solids for passageways and pushable crates over passageway entries
@@ -484,12 +539,12 @@ class LevelLoad {
         for (i = 0, j = 0; i < numHoles; i++) {
             int sol;
 
-            if (ctx.holes[i].type == HOLE_DEEP) {
+            if (ctx.holes.type[i] == HOLE_DEEP) {
                 continue;
             }
 
-            x = ctx.holes[i].x;
-            w = ctx.holes[i].width * LEVEL_BLOCK_SIZE;
+            x = ctx.holes.x[i];
+            w = ctx.holes.width[i] * LEVEL_BLOCK_SIZE;
 
             //Bottom solid
             addSolid(SOL_FULL, x, PASSAGEWAY_BOTTOM_Y, w, 4);
@@ -503,7 +558,7 @@ class LevelLoad {
             addSolid(SOL_PASSAGEWAY_ENTRY, x + 6, FLOOR_Y, 18, 13);
             addSolid(SOL_PASSAGEWAY_EXIT, x + w - 22, FLOOR_Y, 22, 13);
 
-            ctx.holes[i].x = x;
+            ctx.holes.x[i] = x;
 
             //Pushable crate solid
             x = (int)ctx.pushableCrates[j].x;
@@ -523,11 +578,73 @@ class LevelLoad {
 
     //--------------------------------------------------------------------------
 
+    //Counts the entries the level needs in the tables sized for it, without
+    //validating anything, which is left to load()
+    void prescan(String data) {
+        needObjs = 0;
+        needSolids = 1; //Floor
+        needHoles = 0;
+        needTriggers = 0;
+        needRespawnPoints = 0;
+
+        lineRead.setData(data);
+
+        while (!lineRead.endOfData() && !lineRead.isInvalid()) {
+            String line = lineRead.getLine();
+            String type;
+            int end;
+
+            end = line.indexOf(' ');
+            type = (end == -1) ? line : line.substring(0, end);
+
+            if (type.equals("car-blue") || type.equals("car-silver") ||
+                    type.equals("car-yellow")) {
+                needObjs++;
+                needSolids += 7;
+            } else if (type.equals("hydrant") ||
+                    type.equals("overhead-sign")) {
+                needObjs++;
+                needSolids++;
+            } else if (type.equals("truck")) {
+                needObjs++;
+                needSolids += 2;
+            } else if (type.equals("banana-peel") ||
+                    type.equals("coin-silver") || type.equals("coin-gold") ||
+                    type.equals("gush") || type.equals("gush-crack") ||
+                    type.equals("spring")) {
+                needObjs++;
+            } else if (type.equals("rope")) {
+                needObjs += 2;
+            } else if (type.equals("crates")) {
+                needSolids++;
+            } else if (type.equals("trigger-hen")) {
+                needTriggers++;
+            } else if (type.startsWith("trigger-car-")) {
+                needTriggers++;
+                needObjs++; //Banana peel thrown by the car
+            } else if (type.equals("respawn-point")) {
+                needRespawnPoints++;
+            } else if (type.equals("deep-hole")) {
+                needHoles++;
+                needSolids++; //Floor after the hole
+            } else if (type.equals("passageway") ||
+                    type.equals("passageway-arrow")) {
+                needHoles++;
+                needObjs++; //Pushable crate
+
+                //Floor after the passageway, bottom, top, entry, exit, and
+                //pushable crate
+                needSolids += 6;
+            }
+        }
+    }
+
     void addObj(int type, int x, int y, boolean useY) {
+        Objs objs = ctx.objs;
         int i;
 
         //Check if there are too many objects
-        if (numObjs >= MAX_OBJS) {
+        if (numObjs >= ctx.objs.capacity) {
             invalid = true;
             return;
         }
@@ -540,17 +657,17 @@ class LevelLoad {
 
         //Check object repetition
         for (i = 0; i < numObjs; i++) {
-            Obj obj = ctx.objs[i];
-
-            if (obj.type == type && obj.x == x && obj.y == y) {
+            if (objs.type[i] == type && objs.x[i] == x && objs.y[i] == y) {
                 invalid = true;
                 return;
             }
         }
 
-        ctx.objs[numObjs].type = type;
-        ctx.objs[numObjs].x = x;
-        ctx.objs[numObjs].y = y;
+        //As the pool has just been cleared, the handle is the same as numObjs
+        i = objs.alloc();
+        objs.type[i] = type;
+        objs.x[i] = x;
+        objs.y[i] = y;
 
         numObjs++;
     }
@@ -617,7 +734,7 @@ class LevelLoad {
         int i;
 
         //Check if there are too many holes
-        if (numHoles >= MAX_HOLES) {
+        if (numHoles >= ctx.holes.capacity) {
             invalid = true;
             return;
         }
@@ -637,8 +754,8 @@ class LevelLoad {
 
         //Check hole repetition or overlap
         for (i = 0; i < numHoles; i++) {
-            int hx1 = ctx.holes[i].x;
-            int hx2 = hx1 + ctx.holes[i].width - 1;
+            int hx1 = ctx.holes.x[i];
+            int hx2 = hx1 + ctx.holes.width[i] - 1;
 
             if (hx1 == x || x <= hx2) {
                 invalid = true;
@@ -646,9 +763,10 @@ class LevelLoad {
             }
         }
 
-        ctx.holes[numHoles].type = type;
-        ctx.holes[numHoles].x = x;
-        ctx.holes[numHoles].width = w;
+        i = ctx.holes.alloc();
+        ctx.holes.type[i] = type;
+        ctx.holes.x[i] = x;
+        ctx.holes.width[i] = w;
 
         if (type == HOLE_DEEP) {
             numDeepHoles++;
@@ -669,7 +787,7 @@ class LevelLoad {
         int i;
 
         //Check if there are too many respawn points
-        if (numRespawnPoints >= MAX_RESPAWN_POINTS) {
+        if (numRespawnPoints >= ctx.respawnPoints.capacity) {
             invalid = true;
             return;
         }
@@ -682,16 +800,14 @@ class LevelLoad {
 
         //An X position cannot be shared by two or more respawn points
         for (i = 0; i < numRespawnPoints; i++) {
-            RespawnPoint rp = ctx.respawnPoints[i];
-
-            if (rp.x == x) {
+            if (ctx.respawnPoints.x[i] == x) {
                 invalid = true;
                 return;
             }
         }
 
-        ctx.respawnPoints[numRespawnPoints].x = x;
-        ctx.respawnPoints[numRespawnPoints].y = y;
+        ctx.respawnPoints.x[numRespawnPoints] = x;
+        ctx.respawnPoints.y[numRespawnPoints] = y;
 
         numRespawnPoints++;
     }
@@ -700,7 +816,7 @@ class LevelLoad {
         int i;
 
         //Check if there are too many triggers
-        if (numTriggers >= MAX_TRIGGERS) {
+        if (numTriggers >= ctx.triggers.capacity) {
             invalid = true;
             return;
         }
@@ -713,7 +829,7 @@ class LevelLoad {
 
         //Check trigger repetition or excessive proximity
         for (i = 0; i < numTriggers; i++) {
-            int tx = ctx.triggers[i].x;
+            int tx = ctx.triggers.x[i];
 
             if (tx == x || tx > x - 28) {
                 invalid = true;
@@ -721,8 +837,8 @@ class LevelLoad {
             }
         }
 
-        ctx.triggers[numTriggers].x = x;
-        ctx.triggers[numTriggers].what = what;
+        ctx.triggers.x[numTriggers] = x;
+        ctx.triggers.what[numTriggers] = what;
 
         numTriggers++;
 
@@ -733,16 +849,17 @@ class LevelLoad {
 
     int addSolid(int type, int x, int y, int width, int height) {
         //Check if there are too many solids
-        if (numSolids >= MAX_SOLIDS) {
+        if (numSolids >= ctx.solids.capacity) {
             invalid = true;
             return -1;
         }
 
-        ctx.solids[numSolids].type = type;
-        ctx.solids[numSolids].left = x;
-        ctx.solids[numSolids].right = x + width;
-        ctx.solids[numSolids].top = y;
-        ctx.solids[numSolids].bottom = y + height;
+        ctx.solids.type[numSolids] = type;
+        ctx.solids.left[numSolids] = x;
+        ctx.solids.right[numSolids] = x + width;
+        ctx.solids.top[numSolids] = y;
+        ctx.solids.bottom[numSolids] = y + height;
+        ctx.solidGrid.add(numSolids);
         numSolids++;
 
         return numSolids - 1;
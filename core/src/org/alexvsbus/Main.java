@@ -28,6 +28,9 @@ import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Graphics.DisplayMode;
 import com.badlogic.gdx.Graphics.Monitor;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
 public class Main extends ApplicationAdapter implements Thread.UncaughtExceptionHandler {
     //Interface to platform-dependent methods
     PlatDep platDep;
@@ -38,6 +41,9 @@ public class Main extends ApplicationAdapter implements Thread.UncaughtException
     //Seconds since the previous frame
     float deltaTime;
 
+    //Time accumulated for the play session ticks that are yet to run
+    float tickTime;
+
     //Display parameters
     DisplayParams displayParams;
 
@@ -74,6 +80,19 @@ public class Main extends ApplicationAdapter implements Thread.UncaughtException
     int oldInputHeld;
     boolean waitInputUp;
 
+    //Recording of the current level run
+    ReplayWriter replayWriter;
+    ByteArrayOutputStream replayData;
+    boolean recordingReplay;
+    int replayScore; //Score at the start of the run
+
+    //Best recorded run of the current level
+    Ghost ghost;
+    int bestRunPoints; //Points earned in the run (NONE if there is none)
+
+    //Measurement of where the time of each frame goes
+    Profiler profiler;
+
     //Screen wiping effects
     int wipeCmd;
     int wipeValue;
@@ -92,12 +111,20 @@ public class Main extends ApplicationAdapter implements Thread.UncaughtException
         displayParams = new DisplayParams();
         input = new Input(displayParams, config);
         audio = new Audio(config);
-        play = new Play(displayParams, audio);
+        play = new Play(displayParams);
         playCtx = play.newCtx();
         dialogs = new Dialogs(displayParams, config, audio);
         dialogCtx = dialogs.newCtx();
-        levelLoad = new LevelLoad(playCtx);
-        renderer = new Renderer(displayParams, config, playCtx, dialogCtx);
+        levelLoad = new LevelLoad(playCtx, new GdxFileSource());
+        ghost = new Ghost(new GdxFileSource());
+        renderer = new Renderer(displayParams, config, playCtx, dialogCtx,
+                ghost);
+        replayWriter = new ReplayWriter();
+        replayData = new ByteArrayOutputStream();
+
+        profiler = new Profiler();
+        if (config.profilerEnabled) profiler.enable();
+        play.profiler = profiler;
 
         defHandler = Thread.getDefaultUncaughtExceptionHandler();
         Thread.currentThread().setDefaultUncaughtExceptionHandler(this);
@@ -123,30 +150,43 @@ public class Main extends ApplicationAdapter implements Thread.UncaughtException
 
     @Override
     public void render() {
+        profiler.start(PROF_FRAME);
         getDeltaTime();
+
+        profiler.start(PROF_INPUT);
         handleInput();
+        profiler.end(PROF_INPUT);
 
         if (Dialogs.isOpen()) {
+            profiler.start(PROF_DIALOGS);
             dialogs.handleKeys(inputHeld, inputHit);
             dialogs.update(deltaTime);
             handleDialogAction();
+            profiler.end(PROF_DIALOGS);
 
             //Dialog just closed
             if (!Dialogs.isOpen()) {
                 waitInputUp = true;
             }
         } else if (screenType == SCR_PLAY) {
-            play.setInput(inputHeld);
-            play.update(deltaTime);
+            profiler.start(PROF_PLAY);
+            updatePlay();
             handlePause();
-            checkGameProgress();
-            handleLevelEnd();
+            profiler.end(PROF_PLAY);
         }
 
         handleConfigChange();
         handleDelayedAction();
+
+        profiler.start(PROF_WIPE);
         updateScreenWipe();
+        profiler.end(PROF_WIPE);
+
+        profiler.start(PROF_DRAW);
         renderer.draw(screenType, inputHeld, wipeValue);
+        profiler.end(PROF_DRAW);
+
+        profiler.end(PROF_FRAME);
     }
 
     //Unlike the similarly named method handlePause(), this one is called by
@@ -171,6 +211,11 @@ public class Main extends ApplicationAdapter implements Thread.UncaughtException
     @Override
     public void dispose() {
         platDep.saveConfig();
+
+        if (profiler.enabled) {
+            platDep.saveProfile(profiler.trace(), profiler.summary());
+        }
+
         renderer.dispose();
         audio.dispose();
     }
@@ -192,8 +237,74 @@ public class Main extends ApplicationAdapter implements Thread.UncaughtException
     void getDeltaTime() {
         deltaTime = Gdx.graphics.getDeltaTime();
 
-        //Limit delta time to prevent problems with collision detection
-        if (deltaTime > MAX_DT) deltaTime = MAX_DT;
+        //Limit delta time, so that the game does not try to catch up with a
+        //long stall all at once
+        if (deltaTime > MAX_FRAME_DT) deltaTime = MAX_FRAME_DT;
+    }
+
+    //Runs as many fixed-length ticks of the play session as needed to catch
+    //up with the time elapsed, which makes the simulation independent of the
+    //frame rate
+    void updatePlay() {
+        tickTime += deltaTime;
+
+        //Starting a new play session resets tickTime, which ends the loop
+        while (tickTime >= TICK_DT) {
+            tickTime -= TICK_DT;
+
+            if (recordingReplay) {
+                replayWriter.tick(inputHeld, playCtx.stateHash);
+            }
+
+            play.setInput(inputHeld);
+            play.update(TICK_DT);
+
+            profiler.start(PROF_GHOST);
+            ghost.update(playCtx);
+            profiler.end(PROF_GHOST);
+
+            checkGameProgress();
+            handleLevelEnd();
+
+            if (screenType != SCR_PLAY || Dialogs.isOpen()) {
+                tickTime = 0;
+                break;
+            }
+        }
+
+        renderer.setTickAlpha(tickTime / TICK_DT);
+
+        handlePlayEvents();
+    }
+
+    //Plays the sound effects for the gameplay events of the ticks run in the
+    //current frame
+    void handlePlayEvents() {
+        EventQueue events = playCtx.events;
+        int i;
+
+        for (i = 0; i < events.count; i++) {
+            int ev = events.get(i);
+
+            switch (events.type[ev]) {
+                case EV_COIN_COLLECTED:    audio.playSfx(SFX_COIN);    break;
+                case EV_SPRING_HIT:        audio.playSfx(SFX_SPRING);  break;
+                case EV_PEEL_SLIPPED:      audio.playSfx(SFX_SLIP);    break;
+                case EV_THROWN_BACK:       audio.playSfx(SFX_HIT);     break;
+                case EV_CRATE_PUSHED:      audio.playSfx(SFX_CRATE);   break;
+                case EV_PASSAGEWAY_OPENED: audio.playSfx(SFX_HOLE);    break;
+                case EV_FELL:              audio.playSfx(SFX_FALL);    break;
+                case EV_TIME_WARNING:      audio.playSfx(SFX_TIME);    break;
+                case EV_SCORE_COUNTED:     audio.playSfx(SFX_SCORE);   break;
+
+                case EV_RESPAWNED:
+                    audio.stopSfx(SFX_FALL);
+                    audio.playSfx(SFX_RESPAWN);
+                    break;
+            }
+        }
+
+        events.clear();
     }
 
     void handleInput() {
@@ -265,6 +376,7 @@ public class Main extends ApplicationAdapter implements Thread.UncaughtException
                 break;
 
             case DLGACT_TRYAGAIN:
+                finishReplay();
                 dialogs.closeAll();
                 delayedActionType = DELACT_TRY_AGAIN;
                 actionDelay = 0;
@@ -321,6 +433,8 @@ public class Main extends ApplicationAdapter implements Thread.UncaughtException
     void handleLevelEnd() {
         if (playCtx.sequenceStep != SEQ_FINISHED) return;
 
+        finishReplay();
+
         if (playCtx.levelNum == LVLNUM_ENDING) {
             showFinalScore();
         } else if (playCtx.timeUp) {
@@ -503,12 +617,19 @@ public class Main extends ApplicationAdapter implements Thread.UncaughtException
 
         if (screenType == SCR_PLAY || screenType == SCR_PLAY_FREEZE) {
             play.adaptToScreenSize();
+
+            if (recordingReplay) {
+                replayWriter.screenWidth(displayParams.vscreenWidth);
+            }
         }
 
         dialogs.adaptToScreenSize();
     }
 
     void showTitle() {
+        finishReplay();
+        ghost.stop();
+
         screenType = SCR_BLANK;
 
         playCtx.score = 0;
@@ -538,13 +659,11 @@ public class Main extends ApplicationAdapter implements Thread.UncaughtException
 
     void startLevel(int levelNum, int difficulty, boolean skipInitialSequence) {
         int err;
-        String filename = "level" + levelNum;
+        String filename = LevelLoad.filename(levelNum, difficulty);
+        byte bestRun[];
 
-        switch (difficulty) {
-            case DIFFICULTY_NORMAL: filename += 'n'; break;
-            case DIFFICULTY_HARD:   filename += 'h'; break;
-            case DIFFICULTY_SUPER:  filename += 's'; break;
-        }
+        finishReplay();
+        ghost.stop();
 
         renderer.showSaveError(false);
         play.clear();
@@ -578,40 +697,70 @@ public class Main extends ApplicationAdapter implements Thread.UncaughtException
 
         progressChecked = false;
         screenType = SCR_PLAY;
+        tickTime = 0;
 
-        playCtx.difficulty = difficulty;
-        playCtx.levelNum = levelNum;
-        playCtx.lastLevel = (levelNum == Data.difficultyNumLevels[difficulty]);
-        playCtx.sequenceStep = SEQ_INITIAL;
-        playCtx.skipInitialSequence = skipInitialSequence;
+        play.start(levelNum, difficulty, skipInitialSequence,
+                config.fixedPointPhysics);
 
-        if (playCtx.lastLevel) {
-            playCtx.bus.numCharacters = 3;
-        } else {
-            switch (levelNum) {
-                case 1: playCtx.bus.numCharacters = 0; break;
-                case 2: playCtx.bus.numCharacters = 0; break;
-                case 3: playCtx.bus.numCharacters = 1; break;
-                case 4: playCtx.bus.numCharacters = 2; break;
-                case 5: playCtx.bus.numCharacters = 3; break;
-            }
-        }
+        replayData.reset();
+        replayWriter.begin(replayData, levelNum, difficulty,
+                skipInitialSequence, config.fixedPointPhysics,
+                displayParams.vscreenWidth, playCtx.score);
+        recordingReplay = true;
+        replayScore = playCtx.score;
 
-        playCtx.bus.routeSign = levelNum;
-        playCtx.cam.fixedAtLeftmost = true;
+        //The best run is needed even without the ghost, to know whether the
+        //new run beats it
+        bestRun = platDep.loadBestReplay(filename);
+        bestRunPoints = replayPoints(bestRun);
+        if (config.ghostEnabled) {
+            ghost.start(bestRun, levelNum, difficulty,
+                    config.fixedPointPhysics);
+        }
 
         audio.playBgm(playCtx.bgm);
         wipeCmd = WIPECMD_IN;
+    }
 
-        play.adaptToScreenSize();
+    //Ends the recording of the current level run, if any, and hands it over
+    //to the platform-dependent code to be stored
+    void finishReplay() {
+        String name;
+
+        if (!recordingReplay) return;
+        recordingReplay = false;
+
+        //A replay that fails to be stored is simply lost, as it is not worth
+        //interrupting the game for
+        if (replayWriter.end(playCtx.score, playCtx.time, playCtx.goalReached)) {
+            boolean best = playCtx.goalReached
+                    && playCtx.score - replayScore > bestRunPoints;
+
+            name = LevelLoad.filename(playCtx.levelNum, playCtx.difficulty);
+            platDep.saveReplay(name, replayData.toByteArray(), best);
+        }
+    }
+
+    //Returns the points earned in a recorded level run, or NONE if the run
+    //did not reach the goal or the replay cannot be read
+    int replayPoints(byte data[]) {
+        ReplayReader reader = new ReplayReader();
+
+        if (data == null) return NONE;
+        if (!reader.open(new ByteArrayInputStream(data))) return NONE;
+        if (!reader.readResults() || !reader.finalGoalReached) return NONE;
+
+        return reader.finalScore - reader.score;
     }
 
     void startEndingSequence() {
         renderer.showSaveError(false);
         play.clear();
+        ghost.stop();
 
         progressChecked = false;
         screenType = SCR_PLAY;
+        tickTime = 0;
 
         playCtx.levelNum = LVLNUM_ENDING;
         playCtx.lastLevel = false;
@@ -0,0 +1,181 @@
+/*
+ * Alex vs Bus
+ * Copyright (C) 2021-2023 M374LX
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.alexvsbus;
+
+import static org.alexvsbus.Defs.*;
+
+//Keeps the objects in PlayCtx.objs sorted by X position, so that a window
+//(ObjWindow) can slide along the level and only the objects within it need to
+//be visited, as in many NES games, in which objects are activated and
+//deactivated as the screen scrolls
+//
+//An index can also be limited to the objects the player character can
+//interact with, in which case build() leaves out the others and only the
+//objects passed to add() are added later
+class ObjIndex {
+    Objs objs;
+    boolean interactiveOnly;
+
+    int order[]; //Handles within objs sorted by X position
+    int orderPos[]; //Position of each object within order[] (NONE if absent)
+    int count;
+
+    //--------------------------------------------------------------------------
+
+    ObjIndex(Objs o, boolean interactive) {
+        objs = o;
+        interactiveOnly = interactive;
+        order = new int[o.capacity];
+        orderPos = new int[o.capacity];
+
+        clear();
+    }
+
+    void clear() {
+        for (int i = 0; i < objs.capacity; i++) {
+            orderPos[i] = NONE;
+        }
+
+        count = 0;
+    }
+
+    //Sorts the first n objects, which are the ones loaded from the level file
+    void build(int n) {
+        int i, j;
+
+        clear();
+
+        //Insertion sort, as objects in level files are placed in roughly
+        //ascending X order and the sort has to be stable
+        for (i = 0; i < n; i++) {
+            int x = objs.x[i];
+
+            if (interactiveOnly && !interactive(objs.type[i])) continue;
+
+            for (j = count; j > 0 && objs.x[order[j - 1]] > x; j--) {
+                order[j] = order[j - 1];
+            }
+            order[j] = i;
+            count++;
+        }
+
+        for (i = 0; i < count; i++) {
+            orderPos[order[i]] = i;
+        }
+    }
+
+    static boolean interactive(int type) {
+        if (type == NONE) return false;
+
+        return Data.objInteractions[type * INTERACT_FIELDS + INTERACT_STATES]
+                != 0;
+    }
+
+    //Adds an object that has been placed at a previously unused position
+    //within PlayCtx.objs
+    void add(int obj) {
+        if (orderPos[obj] != NONE) {
+            update(obj);
+            return;
+        }
+
+        order[count] = obj;
+        orderPos[obj] = count;
+        count++;
+
+        update(obj);
+    }
+
+    //Removes an object that is no longer in use, keeping the others in order
+    void remove(int obj) {
+        int pos = orderPos[obj];
+        int i;
+
+        if (pos == NONE) return;
+
+        for (i = pos; i < count - 1; i++) {
+            order[i] = order[i + 1];
+            orderPos[order[i]] = i;
+        }
+
+        orderPos[obj] = NONE;
+        count--;
+    }
+
+    //Must be called after the X position of an object changes, so that it is
+    //moved to its new place in the order
+    void update(int obj) {
+        int pos = orderPos[obj];
+        int x = objs.x[obj];
+
+        if (pos == NONE) return;
+
+        //Objects only move by a few pixels per frame, so just swap the object
+        //with its neighbors until it is in place
+        while (pos > 0 && objs.x[order[pos - 1]] > x) {
+            swap(pos - 1, pos);
+            pos--;
+        }
+        while (pos < count - 1 && objs.x[order[pos + 1]] < x) {
+            swap(pos, pos + 1);
+            pos++;
+        }
+    }
+
+    //Makes a window cover the objects whose X position is from left to right
+    //(inclusive)
+    //
+    //Because the window only moves a little from one frame to the next, this
+    //is amortized O(1)
+    void slide(ObjWindow win, int left, int right) {
+        int first = win.first;
+        int last = win.last;
+
+        if (first > count) first = count;
+        if (last  > count) last  = count;
+
+        //Activate objects that have entered the window from the left and
+        //deactivate those that have left it to the left
+        while (first > 0 && objs.x[order[first - 1]] >= left) first--;
+        while (first < count && objs.x[order[first]] < left) first++;
+
+        if (last < first) last = first;
+
+        //Same for the right side
+        while (last < count && objs.x[order[last]] <= right) last++;
+        while (last > first && objs.x[order[last - 1]] > right) last--;
+
+        win.first = first;
+        win.last = last;
+    }
+
+    //--------------------------------------------------------------------------
+
+    void swap(int pos1, int pos2) {
+        int obj1 = order[pos1];
+        int obj2 = order[pos2];
+
+        order[pos1] = obj2;
+        order[pos2] = obj1;
+        orderPos[obj2] = pos1;
+        orderPos[obj1] = pos2;
+    }
+}
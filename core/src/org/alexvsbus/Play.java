@@ -24,10 +24,10 @@ import static org.alexvsbus.Defs.*;
 
 class Play {
     DisplayParams displayParams;
-    Audio audio;
     PlayCtx ctx; //Gameplay context
 
-    float deltaTime; //Time elapsed since the previous frame
+    float deltaTime; //Length of the current tick
+    long dtFixed;    //deltaTime as a 32.32 fixed-point number
 
     boolean ignoreUserInput;
     boolean inputLeft,  oldInputLeft;
@@ -35,11 +35,30 @@ class Play {
     boolean inputJump,  oldInputJump;
     float jumpTimeout;
 
+    //Objects the player character can currently interact with
+    ObjWindow interactWindow;
+
+    //One table for each gush movement pattern in Data (see moveGushes())
+    GushTable gushTables[];
+    Gushes gushScratch; //Single gush used to build the tables
+
+    Profiler profiler;
+
     //--------------------------------------------------------------------------
 
-    Play(DisplayParams dp, Audio a) {
+    Play(DisplayParams dp) {
         displayParams = dp;
-        audio = a;
+        interactWindow = new ObjWindow();
+
+        gushTables = new GushTable[2];
+        gushTables[0] = new GushTable();
+        gushTables[0].pattern = Data.gushMovePattern1;
+        gushTables[1] = new GushTable();
+        gushTables[1].pattern = Data.gushMovePattern2;
+        gushScratch = new Gushes(1);
+
+        //Disabled unless replaced by an enabled one
+        profiler = new Profiler();
     }
 
     PlayCtx newCtx() {
@@ -51,26 +70,17 @@ class Play {
         ctx.player = new Player();
         ctx.bus = new Bus();
         ctx.grabbedRope = new GrabbedRope();
-        ctx.thrownPeel = new MovingPeel();
+        ctx.thrownPeels = new ThrownPeels(MAX_THROWN_PEELS);
         ctx.slipPeel = new MovingPeel();
-        ctx.car = new Car();
-        ctx.hen = new Hen();
+        ctx.passers = new Passers(MAX_PASSERS);
         ctx.pushArrow = new PushArrow();
 
-        ctx.objs = new Obj[MAX_OBJS];
-        for (i = 0; i < MAX_OBJS; i++) {
-            ctx.objs[i] = new Obj();
-        }
-
         ctx.crateBlocks = new CrateBlock[MAX_CRATE_BLOCKS];
         for (i = 0; i < MAX_CRATE_BLOCKS; i++) {
             ctx.crateBlocks[i] = new CrateBlock();
         }
 
-        ctx.gushes = new Gush[MAX_GUSHES];
-        for (i = 0; i < MAX_GUSHES; i++) {
-            ctx.gushes[i] = new Gush();
-        }
+        ctx.gushes = new Gushes(MAX_GUSHES);
 
         ctx.pushableCrates = new PushableCrate[MAX_PUSHABLE_CRATES];
         for (i = 0; i < MAX_PUSHABLE_CRATES; i++) {
@@ -82,35 +92,13 @@ class Play {
             ctx.cutsceneObjects[i] = new CutsceneObject();
         }
 
-        ctx.solids = new Solid[MAX_SOLIDS];
-        for (i = 0; i < MAX_SOLIDS; i++) {
-            ctx.solids[i] = new Solid();
-        }
+        ctx.passageways = new int[MAX_PASSAGEWAYS];
 
-        ctx.holes = new Hole[MAX_HOLES];
-        for (i = 0; i < MAX_HOLES; i++) {
-            ctx.holes[i] = new Hole();
-        }
+        setCapacities(ctx, MAX_OBJS, MAX_SOLIDS, MAX_HOLES, MAX_TRIGGERS,
+                MAX_RESPAWN_POINTS);
 
-        ctx.respawnPoints = new RespawnPoint[MAX_RESPAWN_POINTS];
-        for (i = 0; i < MAX_RESPAWN_POINTS; i++) {
-            ctx.respawnPoints[i] = new RespawnPoint();
-        }
-
-        ctx.triggers = new Trigger[MAX_TRIGGERS];
-        for (i = 0; i < MAX_TRIGGERS; i++) {
-            ctx.triggers[i] = new Trigger();
-        }
-
-        ctx.coinSparks = new CoinSpark[MAX_COIN_SPARKS];
-        for (i = 0; i < MAX_COIN_SPARKS; i++) {
-            ctx.coinSparks[i] = new CoinSpark();
-        }
-
-        ctx.crackParticles = new CrackParticle[MAX_CRACK_PARTICLES];
-        for (i = 0; i < MAX_CRACK_PARTICLES; i++) {
-            ctx.crackParticles[i] = new CrackParticle();
-        }
+        ctx.events = new EventQueue();
+        ctx.particles = new Particles(MAX_PARTICLES);
 
         ctx.anims = new Anim[NUM_ANIMS];
         for (i = 0; i < NUM_ANIMS; i++) {
@@ -127,12 +115,19 @@ class Play {
 
         ignoreUserInput = true;
         inputLeft = false;
+        oldInputLeft = false;
         inputRight = false;
+        oldInputRight = false;
         inputJump = false;
+        oldInputJump = false;
         jumpTimeout = 0;
+        interactWindow.first = 0;
+        interactWindow.last = 0;
 
         ctx.canPause = false;
+        ctx.clock = 0;
         ctx.time = 90;
+        ctx.timeDelay = 0;
         ctx.timeRunning = false;
         ctx.timeUp = false;
         ctx.goalReached = false;
@@ -144,6 +139,7 @@ class Play {
         ctx.cam.y = 0;
         ctx.cam.xvel = 0;
         ctx.cam.yvel = 0;
+        ctx.cam.xdest = 0;
         ctx.cam.followPlayer = false;
         ctx.cam.fixedAtLeftmost = false;
         ctx.cam.fixedAtRightmost = false;
@@ -156,6 +152,7 @@ class Play {
         ctx.player.yvel = 0;
         ctx.player.fell = false;
         ctx.player.onFloor = false;
+        ctx.player.flickerDelay = 0;
         ctx.player.animType = PLAYER_ANIM_STAND;
         ctx.player.oldAnimType = PLAYER_ANIM_STAND;
         ctx.player.state = PLAYER_STATE_NORMAL;
@@ -168,24 +165,26 @@ class Play {
 
         ctx.grabbedRope.obj = NONE;
         ctx.slipPeel.obj = NONE;
-        ctx.thrownPeel.obj = NONE;
+        ctx.thrownPeels.clear();
 
         ctx.hitSpring = NONE;
 
-        ctx.car.x = NONE;
-        ctx.hen.x = NONE;
+        ctx.passers.clear();
+        ctx.trafficJam = NONE;
+        ctx.endingHen = NONE;
 
-        for (i = 0; i < MAX_OBJS; i++) {
-            ctx.objs[i].type = NONE;
-        }
+        clearTables(ctx);
 
         for (i = 0; i < MAX_CRATE_BLOCKS; i++) {
             ctx.crateBlocks[i].x = NONE;
         }
 
         for (i = 0; i < MAX_GUSHES; i++) {
-            ctx.gushes[i].obj = NONE;
+            ctx.gushes.obj[i] = NONE;
+            ctx.gushes.periodic[i] = false;
         }
+        ctx.gushes.clear();
+        ctx.gushes.tick = 0;
 
         for (i = 0; i < MAX_PUSHABLE_CRATES; i++) {
             ctx.pushableCrates[i].obj = NONE;
@@ -203,31 +202,15 @@ class Play {
             ctx.cutsceneObjects[i].inBus = false;
         }
 
-        for (i = 0; i < MAX_SOLIDS; i++) {
-            ctx.solids[i].type = NONE;
-        }
+        ctx.curPassageway = NONE;
+        ctx.numPassageways = 0;
+        ctx.passagewayCursor = 0;
+        ctx.nextTrigger = 0;
 
-        for (i = 0; i < MAX_HOLES; i++) {
-            ctx.holes[i].x = NONE;
-        }
+        //The event queue is not cleared, as the events of the last ticks of
+        //the previous session may not have been handled yet
 
-        ctx.curPassageway = null;
-
-        for (i = 0; i < MAX_RESPAWN_POINTS; i++) {
-            ctx.respawnPoints[i].x = NONE;
-        }
-
-        for (i = 0; i < MAX_TRIGGERS; i++) {
-            ctx.triggers[i].x = NONE;
-        }
-
-        for (i = 0; i < MAX_COIN_SPARKS; i++) {
-            ctx.coinSparks[i].x = NONE;
-        }
-
-        for (i = 0; i < MAX_CRACK_PARTICLES; i++) {
-            ctx.crackParticles[i].x = NONE;
-        }
+        ctx.particles.count = 0;
 
         setAnimation(ANIM_PLAYER, true, true, false, 1, 0.1f);
         setAnimation(ANIM_COINS, true, true, false, 3, 0.1f);
@@ -240,16 +223,10 @@ class Play {
         setAnimation(ANIM_CAR_WHEELS, false, true, false, 2, 0.05f);
         setAnimation(ANIM_HEN, false, true, false, 4, 0.05f);
 
-        for (i = 0; i < MAX_COIN_SPARKS; i++) {
-            setAnimation(ANIM_COIN_SPARKS + i, false, false, false, 4, 0.05f);
-        }
         for (i = 0; i < MAX_CUTSCENE_OBJECTS; i++) {
             setAnimation(ANIM_CUTSCENE_OBJECTS + i, false, false, false, 1, 0);
         }
 
-        ctx.nextCoinSpark = 0;
-        ctx.nextCrackParticle = 0;
-
         ctx.pushArrow.xoffs = 0;
         ctx.pushArrow.xvel = 0;
         ctx.pushArrow.delay = 1;
@@ -260,6 +237,37 @@ class Play {
 
         ctx.wipeIn = false;
         ctx.wipeOut = false;
+
+        rehash();
+    }
+
+    //Starts playing a level that has just been loaded by LevelLoad
+    void start(int levelNum, int difficulty, boolean skipInitialSequence,
+                                                        boolean fixedPoint) {
+        ctx.difficulty = difficulty;
+        ctx.fixedPoint = fixedPoint;
+        ctx.levelNum = levelNum;
+        ctx.lastLevel = (levelNum == Data.difficultyNumLevels[difficulty]);
+        ctx.sequenceStep = SEQ_INITIAL;
+        ctx.skipInitialSequence = skipInitialSequence;
+
+        if (ctx.lastLevel) {
+            ctx.bus.numCharacters = 3;
+        } else {
+            switch (levelNum) {
+                case 1: ctx.bus.numCharacters = 0; break;
+                case 2: ctx.bus.numCharacters = 0; break;
+                case 3: ctx.bus.numCharacters = 1; break;
+                case 4: ctx.bus.numCharacters = 2; break;
+                case 5: ctx.bus.numCharacters = 3; break;
+            }
+        }
+
+        ctx.bus.routeSign = levelNum;
+        ctx.cam.fixedAtLeftmost = true;
+
+        adaptToScreenSize();
+        rehash();
     }
 
     void setInput(int inputState) {
@@ -278,36 +286,139 @@ class Play {
         }
     }
 
+    //Advances the play session by one tick
     void update(float dt) {
+        boolean finished = (ctx.sequenceStep == SEQ_FINISHED);
+
         deltaTime = dt;
+        dtFixed = (long)((double)deltaTime * 4294967296.0);
 
+        profiler.start(PROF_TICK);
+        profiler.mark();
+        storePrevPositions();
+        profiler.lap(PROF_STORE_PREV_POSITIONS);
         beginUpdate();
+        profiler.lap(PROF_BEGIN_UPDATE);
         updateRemainingTime();
+        profiler.lap(PROF_UPDATE_REMAINING_TIME);
         updateScoreCount();
+        profiler.lap(PROF_UPDATE_SCORE_COUNT);
         moveObjects();
+        profiler.lap(PROF_MOVE_OBJECTS);
         handleCarThrownPeel();
+        profiler.lap(PROF_HANDLE_CAR_THROWN_PEEL);
         movePlayer();
+        profiler.lap(PROF_MOVE_PLAYER);
         handleSolids();
+        profiler.lap(PROF_HANDLE_SOLIDS);
         handlePassageways();
+        profiler.lap(PROF_HANDLE_PASSAGEWAYS);
         handlePlayerInteractions();
+        profiler.lap(PROF_HANDLE_PLAYER_INTERACTIONS);
         handleTriggers();
+        profiler.lap(PROF_HANDLE_TRIGGERS);
         doPlayerStateSpecifics();
-        handleFallSound();
+        profiler.lap(PROF_DO_PLAYER_STATE_SPECIFICS);
+        handleFall();
+        profiler.lap(PROF_HANDLE_FALL);
         handleRespawn();
+        profiler.lap(PROF_HANDLE_RESPAWN);
         handlePlayerStateChange();
+        profiler.lap(PROF_HANDLE_PLAYER_STATE_CHANGE);
         moveCamera();
+        profiler.lap(PROF_MOVE_CAMERA);
         keepPlayerWithinLimits();
+        profiler.lap(PROF_KEEP_PLAYER_WITHIN_LIMITS);
         handlePlayerAnimationChange();
+        profiler.lap(PROF_HANDLE_PLAYER_ANIMATION_CHANGE);
         updateAnimations();
+        profiler.lap(PROF_UPDATE_ANIMATIONS);
         movePushArrow();
+        profiler.lap(PROF_MOVE_PUSH_ARROW);
         positionBusStopSign();
+        profiler.lap(PROF_POSITION_BUS_STOP_SIGN);
         positionLightPole();
-        applyBackgroundOffset();
+        profiler.lap(PROF_POSITION_LIGHT_POLE);
         updateSequence();
+        profiler.lap(PROF_UPDATE_SEQUENCE);
+
+        if (!finished && ctx.sequenceStep == SEQ_FINISHED) {
+            ctx.events.push(EV_LEVEL_ENDED, 0, 0, ctx.goalReached ? 1 : 0);
+        }
+
+        updateStateHash();
+        profiler.lap(PROF_UPDATE_STATE_HASH);
+        profiler.end(PROF_TICK);
     }
 
     //--------------------------------------------------------------------------
 
+    //Sets the capacities of the tables whose sizes depend on the level, which
+    //are only reallocated if their capacity changes, so that they are reused
+    //from one level to the next
+    //
+    //All of the tables are left empty, so this is only called right before a
+    //level is loaded (see LevelLoad.load())
+    static void setCapacities(PlayCtx ctx, int numObjs, int numSolids,
+            int numHoles, int numTriggers, int numRespawnPoints) {
+        if (ctx.objs == null || ctx.objs.capacity != numObjs) {
+            ctx.objs = new Objs(numObjs);
+            ctx.objIndex = new ObjIndex(ctx.objs, false);
+            ctx.interactIndex = new ObjIndex(ctx.objs, true);
+        }
+
+        if (ctx.solids == null || ctx.solids.capacity != numSolids) {
+            ctx.solids = new Solids(numSolids);
+            ctx.solidGrid = new SolidGrid(ctx.solids);
+        }
+
+        if (ctx.holes == null || ctx.holes.capacity != numHoles) {
+            ctx.holes = new Holes(numHoles);
+        }
+
+        if (ctx.triggers == null || ctx.triggers.capacity != numTriggers) {
+            ctx.triggers = new Triggers(numTriggers);
+        }
+
+        if (ctx.respawnPoints == null
+                || ctx.respawnPoints.capacity != numRespawnPoints) {
+            ctx.respawnPoints = new RespawnPoints(numRespawnPoints);
+        }
+
+        clearTables(ctx);
+    }
+
+    static void clearTables(PlayCtx ctx) {
+        int i;
+
+        for (i = 0; i < ctx.objs.capacity; i++) {
+            ctx.objs.type[i] = NONE;
+        }
+        ctx.objs.clear();
+        ctx.objIndex.clear();
+        ctx.interactIndex.clear();
+
+        for (i = 0; i < ctx.solids.capacity; i++) {
+            ctx.solids.type[i] = NONE;
+        }
+        ctx.solidGrid.clear();
+
+        for (i = 0; i < ctx.holes.capacity; i++) {
+            ctx.holes.x[i] = NONE;
+        }
+        ctx.holes.clear();
+
+        for (i = 0; i < ctx.respawnPoints.capacity; i++) {
+            ctx.respawnPoints.x[i] = NONE;
+        }
+        ctx.numRespawnPoints = 0;
+
+        for (i = 0; i < ctx.triggers.capacity; i++) {
+            ctx.triggers.x[i] = NONE;
+        }
+        ctx.numTriggers = 0;
+    }
+
     void adaptToScreenSize() {
         Camera cam = ctx.cam;
         int vscreenWidth = displayParams.vscreenWidth;
@@ -328,7 +439,535 @@ class Play {
         }
 
         positionCamera();
-        applyBackgroundOffset();
+
+        //Prevent the renderer from interpolating from the positions prior to
+        //the change
+        storePrevPositions();
+    }
+
+    //Returns a buffer large enough to hold the state of a play session
+    StateBuffer newStateBuffer() {
+        StateBuffer sb = new StateBuffer(0, 0);
+
+        sb.begin(StateBuffer.MODE_MEASURE);
+        transferState(sb);
+
+        return new StateBuffer(sb.intPos, sb.floatPos);
+    }
+
+    //Copies the complete state of the play session into a buffer
+    void saveState(StateBuffer sb) {
+        sb.begin(StateBuffer.MODE_SAVE);
+        transferState(sb);
+    }
+
+    //Brings the play session back to a state previously saved with
+    //saveState(), which must have been taken from the same level
+    void restoreState(StateBuffer sb) {
+        int i;
+
+        sb.begin(StateBuffer.MODE_RESTORE);
+        transferState(sb);
+
+        //The grid is not part of the state, as it only depends on the
+        //positions of the solids
+        for (i = 0; i < ctx.solids.capacity; i++) {
+            if (ctx.solids.type[i] != NONE) {
+                ctx.solidGrid.update(i);
+            }
+        }
+
+        //Neither are the hashes, which are computed from the state itself
+        rehash();
+
+        //The particles are purely visual and can be many, so they are not
+        //saved and just removed
+        ctx.particles.count = 0;
+
+        //The gushes that follow a table are in step with the tables for the
+        //tick length of the restored state
+        buildGushTables();
+    }
+
+    //Used by both saveState() and restoreState() (see StateBuffer)
+    void transferState(StateBuffer sb) {
+        Camera cam = ctx.cam;
+        Player pl = ctx.player;
+        Bus bus = ctx.bus;
+        Gushes gushes = ctx.gushes;
+        Solids solids = ctx.solids;
+        Holes holes = ctx.holes;
+        int i;
+
+        deltaTime = sb.f(deltaTime);
+        dtFixed = (long)((double)deltaTime * 4294967296.0);
+        ignoreUserInput = sb.b(ignoreUserInput);
+        inputLeft = sb.b(inputLeft);
+        oldInputLeft = sb.b(oldInputLeft);
+        inputRight = sb.b(inputRight);
+        oldInputRight = sb.b(oldInputRight);
+        inputJump = sb.b(inputJump);
+        oldInputJump = sb.b(oldInputJump);
+        jumpTimeout = sb.f(jumpTimeout);
+        interactWindow.first = sb.i(interactWindow.first);
+        interactWindow.last = sb.i(interactWindow.last);
+
+        ctx.canPause = sb.b(ctx.canPause);
+        ctx.difficulty = sb.i(ctx.difficulty);
+        ctx.levelNum = sb.i(ctx.levelNum);
+        ctx.lastLevel = sb.b(ctx.lastLevel);
+        ctx.levelSize = sb.i(ctx.levelSize);
+        ctx.bgColor = sb.i(ctx.bgColor);
+        ctx.bgm = sb.i(ctx.bgm);
+        ctx.busStopSignX = sb.i(ctx.busStopSignX);
+        ctx.poleX = sb.i(ctx.poleX);
+        ctx.score = sb.i(ctx.score);
+        ctx.time = sb.i(ctx.time);
+        ctx.timeDelay = sb.f(ctx.timeDelay);
+        ctx.timeRunning = sb.b(ctx.timeRunning);
+        ctx.timeUp = sb.b(ctx.timeUp);
+        ctx.goalReached = sb.b(ctx.goalReached);
+        ctx.countingScore = sb.b(ctx.countingScore);
+        ctx.cratePushRemaining = sb.f(ctx.cratePushRemaining);
+
+        cam.x = sb.f(cam.x);
+        cam.y = sb.f(cam.y);
+        cam.prevx = sb.f(cam.prevx);
+        cam.prevy = sb.f(cam.prevy);
+        cam.xvel = sb.f(cam.xvel);
+        cam.yvel = sb.f(cam.yvel);
+        cam.xdest = sb.f(cam.xdest);
+        cam.xmin = sb.f(cam.xmin);
+        cam.xmax = sb.f(cam.xmax);
+        cam.followPlayer = sb.b(cam.followPlayer);
+        cam.followPlayerMinX = sb.f(cam.followPlayerMinX);
+        cam.followPlayerMaxX = sb.f(cam.followPlayerMaxX);
+        cam.fixedAtLeftmost = sb.b(cam.fixedAtLeftmost);
+        cam.fixedAtRightmost = sb.b(cam.fixedAtRightmost);
+
+        pl.state = sb.i(pl.state);
+        pl.visible = sb.b(pl.visible);
+        pl.onFloor = sb.b(pl.onFloor);
+        pl.fell = sb.b(pl.fell);
+        pl.height = sb.i(pl.height);
+        pl.flickerDelay = sb.f(pl.flickerDelay);
+        pl.animType = sb.i(pl.animType);
+        pl.x = sb.f(pl.x);
+        pl.y = sb.f(pl.y);
+        pl.xvel = sb.f(pl.xvel);
+        pl.yvel = sb.f(pl.yvel);
+        pl.acc = sb.f(pl.acc);
+        pl.dec = sb.f(pl.dec);
+        pl.grav = sb.f(pl.grav);
+        pl.oldState = sb.i(pl.oldState);
+        pl.oldx = sb.f(pl.oldx);
+        pl.oldy = sb.f(pl.oldy);
+        pl.oldAnimType = sb.i(pl.oldAnimType);
+        pl.prevx = sb.f(pl.prevx);
+        pl.prevy = sb.f(pl.prevy);
+
+        bus.x = sb.f(bus.x);
+        bus.prevx = sb.f(bus.prevx);
+        bus.xvel = sb.f(bus.xvel);
+        bus.acc = sb.f(bus.acc);
+        bus.routeSign = sb.i(bus.routeSign);
+        bus.numCharacters = sb.i(bus.numCharacters);
+
+        transferPool(ctx.objs, sb);
+        sb.ints(ctx.objs.type, ctx.objs.capacity);
+        sb.ints(ctx.objs.x, ctx.objs.capacity);
+        sb.ints(ctx.objs.y, ctx.objs.capacity);
+        sb.ints(ctx.objIndex.order, ctx.objs.capacity);
+        sb.ints(ctx.objIndex.orderPos, ctx.objs.capacity);
+        ctx.objIndex.count = sb.i(ctx.objIndex.count);
+        sb.ints(ctx.interactIndex.order, ctx.objs.capacity);
+        sb.ints(ctx.interactIndex.orderPos, ctx.objs.capacity);
+        ctx.interactIndex.count = sb.i(ctx.interactIndex.count);
+
+        for (i = 0; i < MAX_CRATE_BLOCKS; i++) {
+            CrateBlock block = ctx.crateBlocks[i];
+
+            block.x = sb.i(block.x);
+            block.y = sb.i(block.y);
+            block.width = sb.i(block.width);
+            block.height = sb.i(block.height);
+        }
+
+        transferPool(gushes, sb);
+        sb.ints(gushes.obj, MAX_GUSHES);
+        sb.floats(gushes.y, MAX_GUSHES);
+        sb.floats(gushes.yvel, MAX_GUSHES);
+        sb.floats(gushes.ydest, MAX_GUSHES);
+        sb.ints(gushes.movePatternPos, MAX_GUSHES);
+        sb.bools(gushes.periodic, MAX_GUSHES);
+        sb.ints(gushes.phaseStart, MAX_GUSHES);
+        gushes.tick = sb.i(gushes.tick);
+        for (i = 0; i < MAX_GUSHES; i++) {
+            //Movement patterns are shared arrays from Data, so store which one
+            //is used rather than its contents
+            int pattern = 0;
+
+            if (gushes.movePattern[i] == Data.gushMovePattern1) pattern = 1;
+            if (gushes.movePattern[i] == Data.gushMovePattern2) pattern = 2;
+
+            switch (sb.i(pattern)) {
+                case 0: gushes.movePattern[i] = null; break;
+                case 1: gushes.movePattern[i] = Data.gushMovePattern1; break;
+                case 2: gushes.movePattern[i] = Data.gushMovePattern2; break;
+            }
+        }
+
+        ctx.grabbedRope.obj = sb.i(ctx.grabbedRope.obj);
+        ctx.grabbedRope.x = sb.f(ctx.grabbedRope.x);
+        ctx.grabbedRope.xmin = sb.f(ctx.grabbedRope.xmin);
+        ctx.grabbedRope.xmax = sb.f(ctx.grabbedRope.xmax);
+        ctx.grabbedRope.xvel = sb.f(ctx.grabbedRope.xvel);
+
+        transferMovingPeel(ctx.slipPeel, sb);
+        transferPool(ctx.thrownPeels, sb);
+        sb.ints(ctx.thrownPeels.obj, MAX_THROWN_PEELS);
+        sb.floats(ctx.thrownPeels.x, MAX_THROWN_PEELS);
+        sb.floats(ctx.thrownPeels.y, MAX_THROWN_PEELS);
+        sb.floats(ctx.thrownPeels.xdest, MAX_THROWN_PEELS);
+        sb.floats(ctx.thrownPeels.xvel, MAX_THROWN_PEELS);
+        sb.floats(ctx.thrownPeels.yvel, MAX_THROWN_PEELS);
+        sb.floats(ctx.thrownPeels.grav, MAX_THROWN_PEELS);
+
+        for (i = 0; i < MAX_PUSHABLE_CRATES; i++) {
+            PushableCrate crate = ctx.pushableCrates[i];
+
+            crate.obj = sb.i(crate.obj);
+            crate.x = sb.f(crate.x);
+            crate.showArrow = sb.b(crate.showArrow);
+            crate.pushed = sb.b(crate.pushed);
+            crate.xmax = sb.f(crate.xmax);
+            crate.solid = sb.i(crate.solid);
+        }
+
+        for (i = 0; i < MAX_CUTSCENE_OBJECTS; i++) {
+            CutsceneObject cobj = ctx.cutsceneObjects[i];
+
+            cobj.sprite = sb.i(cobj.sprite);
+            cobj.x = sb.f(cobj.x);
+            cobj.y = sb.f(cobj.y);
+            cobj.xvel = sb.f(cobj.xvel);
+            cobj.yvel = sb.f(cobj.yvel);
+            cobj.acc = sb.f(cobj.acc);
+            cobj.grav = sb.f(cobj.grav);
+            cobj.inBus = sb.b(cobj.inBus);
+        }
+
+        sb.ints(solids.type, solids.capacity);
+        sb.ints(solids.left, solids.capacity);
+        sb.ints(solids.right, solids.capacity);
+        sb.ints(solids.top, solids.capacity);
+        sb.ints(solids.bottom, solids.capacity);
+
+        ctx.hitSpring = sb.i(ctx.hitSpring);
+
+        transferPool(holes, sb);
+        sb.ints(holes.type, holes.capacity);
+        sb.ints(holes.x, holes.capacity);
+        sb.ints(holes.width, holes.capacity);
+        ctx.curPassageway = sb.i(ctx.curPassageway);
+        sb.ints(ctx.passageways, MAX_PASSAGEWAYS);
+        ctx.numPassageways = sb.i(ctx.numPassageways);
+        ctx.passagewayCursor = sb.i(ctx.passagewayCursor);
+
+        sb.ints(ctx.respawnPoints.x, ctx.respawnPoints.capacity);
+        sb.ints(ctx.respawnPoints.y, ctx.respawnPoints.capacity);
+        ctx.numRespawnPoints = sb.i(ctx.numRespawnPoints);
+
+        sb.ints(ctx.triggers.x, ctx.triggers.capacity);
+        sb.ints(ctx.triggers.what, ctx.triggers.capacity);
+        ctx.numTriggers = sb.i(ctx.numTriggers);
+        ctx.nextTrigger = sb.i(ctx.nextTrigger);
+
+        transferPool(ctx.passers, sb);
+        sb.ints(ctx.passers.type, MAX_PASSERS);
+        sb.floats(ctx.passers.x, MAX_PASSERS);
+        sb.floats(ctx.passers.prevx, MAX_PASSERS);
+        sb.floats(ctx.passers.xvel, MAX_PASSERS);
+        sb.floats(ctx.passers.acc, MAX_PASSERS);
+        sb.bools(ctx.passers.threwPeel, MAX_PASSERS);
+        sb.ints(ctx.passers.peelThrowX, MAX_PASSERS);
+        ctx.trafficJam = sb.i(ctx.trafficJam);
+        ctx.endingHen = sb.i(ctx.endingHen);
+
+        ctx.pushArrow.xoffs = sb.f(ctx.pushArrow.xoffs);
+        ctx.pushArrow.xvel = sb.f(ctx.pushArrow.xvel);
+        ctx.pushArrow.delay = sb.f(ctx.pushArrow.delay);
+
+        for (i = 0; i < NUM_ANIMS; i++) {
+            Anim anim = ctx.anims[i];
+
+            anim.running = sb.b(anim.running);
+            anim.loop = sb.b(anim.loop);
+            anim.reverse = sb.b(anim.reverse);
+            anim.frame = sb.i(anim.frame);
+            anim.numFrames = sb.i(anim.numFrames);
+            anim.frameTime = sb.f(anim.frameTime);
+            anim.startTime = sb.f(anim.startTime);
+        }
+        ctx.clock = sb.f(ctx.clock);
+
+        ctx.playerReachedFlagman = sb.b(ctx.playerReachedFlagman);
+        ctx.henReachedFlagman = sb.b(ctx.henReachedFlagman);
+        ctx.busReachedFlagman = sb.b(ctx.busReachedFlagman);
+
+        ctx.sequenceStep = sb.i(ctx.sequenceStep);
+        ctx.sequenceDelay = sb.f(ctx.sequenceDelay);
+        ctx.skipInitialSequence = sb.b(ctx.skipInitialSequence);
+        ctx.fixedPoint = sb.b(ctx.fixedPoint);
+        ctx.wipeIn = sb.b(ctx.wipeIn);
+        ctx.wipeOut = sb.b(ctx.wipeOut);
+    }
+
+    void transferPool(Pool pool, StateBuffer sb) {
+        sb.ints(pool.live, pool.capacity);
+        sb.ints(pool.livePos, pool.capacity);
+        sb.ints(pool.freeList, pool.capacity);
+        pool.numLive = sb.i(pool.numLive);
+        pool.numFree = sb.i(pool.numFree);
+    }
+
+    void transferMovingPeel(MovingPeel peel, StateBuffer sb) {
+        peel.obj = sb.i(peel.obj);
+        peel.x = sb.f(peel.x);
+        peel.y = sb.f(peel.y);
+        peel.xvel = sb.f(peel.xvel);
+        peel.yvel = sb.f(peel.yvel);
+        peel.grav = sb.f(peel.grav);
+    }
+
+    //Computes the hashes of all objects, solids, and holes from scratch, which
+    //is only needed when they are all set at once, as when a level is loaded
+    void rehash() {
+        int i;
+
+        ctx.objsHash = 0;
+        ctx.solidsHash = 0;
+        ctx.holesHash = 0;
+
+        for (i = 0; i < ctx.objs.capacity; i++) {
+            ctx.objs.hash[i] = 0;
+            hashObj(i);
+        }
+
+        for (i = 0; i < ctx.solids.capacity; i++) {
+            ctx.solids.hash[i] = 0;
+            hashSolid(i);
+        }
+
+        for (i = 0; i < ctx.holes.capacity; i++) {
+            ctx.holes.hash[i] = 0;
+            hashHole(i);
+        }
+
+        updateStateHash();
+    }
+
+    //The three methods below must be called whenever the type or position of
+    //an object, solid, or hole changes, as each one replaces the contribution
+    //of the element to the corresponding hash within PlayCtx
+    //
+    //Contributions are combined with XOR, so removing the old one and adding
+    //the new one is the same operation, and the order of the elements does
+    //not matter
+    void hashObj(int obj) {
+        Objs objs = ctx.objs;
+        long h = 0;
+
+        if (objs.type[obj] != NONE) {
+            h = hashMix(obj + 1, objs.type[obj]);
+            h = hashMix(h, objs.x[obj]);
+            h = hashMix(h, objs.y[obj]);
+        }
+
+        ctx.objsHash ^= objs.hash[obj] ^ h;
+        objs.hash[obj] = h;
+    }
+
+    void hashSolid(int sol) {
+        Solids solids = ctx.solids;
+        long h = 0;
+
+        if (solids.type[sol] != NONE) {
+            h = hashMix(sol + 1, solids.type[sol]);
+            h = hashMix(h, solids.left[sol]);
+            h = hashMix(h, solids.right[sol]);
+            h = hashMix(h, solids.top[sol]);
+            h = hashMix(h, solids.bottom[sol]);
+        }
+
+        ctx.solidsHash ^= solids.hash[sol] ^ h;
+        solids.hash[sol] = h;
+    }
+
+    void hashHole(int hole) {
+        Holes holes = ctx.holes;
+        long h = 0;
+
+        if (holes.x[hole] != NONE) {
+            h = hashMix(hole + 1, holes.type[hole]);
+            h = hashMix(h, holes.x[hole]);
+            h = hashMix(h, holes.width[hole]);
+        }
+
+        ctx.holesHash ^= holes.hash[hole] ^ h;
+        holes.hash[hole] = h;
+    }
+
+    //Sets PlayCtx.stateHash from everything that affects how the play session
+    //continues, leaving out purely visual state such as particles and
+    //animations (apart from the clock they are based on)
+    //
+    //Objects, solids, and holes are already hashed incrementally, so only the
+    //few values that change on almost every tick are gone through here
+    void updateStateHash() {
+        Camera cam = ctx.cam;
+        Player pl = ctx.player;
+        Gushes gushes = ctx.gushes;
+        long h = ctx.objsHash;
+        int i;
+
+        h = hashMix(h, ctx.solidsHash);
+        h = hashMix(h, ctx.holesHash);
+
+        h = hashMix(h, (ignoreUserInput ? 1 : 0) | (inputLeft ? 2 : 0)
+                | (inputRight ? 4 : 0) | (inputJump ? 8 : 0)
+                | (oldInputJump ? 16 : 0));
+        h = hashMix(h, jumpTimeout);
+
+        h = hashMix(h, ctx.score);
+        h = hashMix(h, ctx.time);
+        h = hashMix(h, ctx.timeDelay);
+        h = hashMix(h, (ctx.timeRunning ? 1 : 0) | (ctx.timeUp ? 2 : 0)
+                | (ctx.goalReached ? 4 : 0) | (ctx.countingScore ? 8 : 0)
+                | (ctx.canPause ? 16 : 0));
+        h = hashMix(h, ctx.cratePushRemaining);
+        h = hashMix(h, ctx.clock);
+        h = hashMix(h, ctx.sequenceStep);
+        h = hashMix(h, ctx.sequenceDelay);
+
+        h = hashMix(h, cam.x);
+        h = hashMix(h, cam.y);
+        h = hashMix(h, cam.xvel);
+        h = hashMix(h, cam.xdest);
+
+        h = hashMix(h, pl.state | (pl.oldState << 8) | (pl.animType << 16)
+                | (pl.height << 24));
+        h = hashMix(h, (pl.visible ? 1 : 0) | (pl.onFloor ? 2 : 0)
+                | (pl.fell ? 4 : 0));
+        h = hashMix(h, pl.flickerDelay);
+        h = hashMix(h, pl.x);
+        h = hashMix(h, pl.y);
+        h = hashMix(h, pl.xvel);
+        h = hashMix(h, pl.yvel);
+        h = hashMix(h, pl.acc);
+        h = hashMix(h, pl.dec);
+        h = hashMix(h, pl.grav);
+        h = hashMix(h, pl.oldx);
+        h = hashMix(h, pl.oldy);
+
+        h = hashMix(h, ctx.bus.x);
+        h = hashMix(h, ctx.bus.xvel);
+        h = hashMix(h, ctx.bus.acc);
+        h = hashMix(h, ctx.bus.numCharacters);
+
+        //The positions of the gushes as objects are truncated to integers,
+        //while those that follow a table are only updated when needed, so
+        //where they are in the table is used instead
+        h = hashMix(h, gushes.tick);
+        for (i = 0; i < gushes.numLive; i++) {
+            int g = gushes.live[i];
+
+            if (gushes.periodic[g]) {
+                h = hashMix(h, gushes.phaseStart[g]);
+                continue;
+            }
+
+            h = hashMix(h, gushes.y[g]);
+            h = hashMix(h, gushes.yvel[g]);
+            h = hashMix(h, gushes.ydest[g]);
+            h = hashMix(h, gushes.movePatternPos[g]);
+        }
+
+        //Values left over from an earlier play session are ignored until the
+        //rope, peel, car, or hen they belong to is active again
+        h = hashMix(h, ctx.grabbedRope.obj);
+        if (ctx.grabbedRope.obj != NONE) {
+            h = hashMix(h, ctx.grabbedRope.x);
+            h = hashMix(h, ctx.grabbedRope.xvel);
+        }
+
+        h = hashMix(h, ctx.slipPeel.obj);
+        if (ctx.slipPeel.obj != NONE) {
+            h = hashMix(h, ctx.slipPeel.x);
+            h = hashMix(h, ctx.slipPeel.y);
+            h = hashMix(h, ctx.slipPeel.yvel);
+        }
+
+        h = hashMix(h, ctx.thrownPeels.numLive);
+        for (i = 0; i < ctx.thrownPeels.numLive; i++) {
+            int p = ctx.thrownPeels.live[i];
+
+            h = hashMix(h, ctx.thrownPeels.obj[p]);
+            h = hashMix(h, ctx.thrownPeels.x[p]);
+            h = hashMix(h, ctx.thrownPeels.y[p]);
+            h = hashMix(h, ctx.thrownPeels.yvel[p]);
+        }
+
+        for (i = 0; i < MAX_PUSHABLE_CRATES; i++) {
+            PushableCrate crate = ctx.pushableCrates[i];
+
+            if (crate.obj == NONE) continue;
+
+            h = hashMix(h, crate.x);
+            h = hashMix(h, crate.pushed ? 1 : 0);
+        }
+
+        h = hashMix(h, ctx.hitSpring);
+        h = hashMix(h, ctx.curPassageway);
+        h = hashMix(h, ctx.nextTrigger);
+
+        h = hashMix(h, ctx.passers.numLive);
+        for (i = 0; i < ctx.passers.numLive; i++) {
+            int p = ctx.passers.live[i];
+
+            h = hashMix(h, ctx.passers.type[p]
+                    | (ctx.passers.threwPeel[p] ? 256 : 0));
+            h = hashMix(h, ctx.passers.x[p]);
+            h = hashMix(h, ctx.passers.xvel[p]);
+            h = hashMix(h, ctx.passers.acc[p]);
+        }
+
+        for (i = 0; i < MAX_CUTSCENE_OBJECTS; i++) {
+            CutsceneObject cobj = ctx.cutsceneObjects[i];
+
+            if (cobj.sprite == NONE) continue;
+
+            h = hashMix(h, cobj.x);
+            h = hashMix(h, cobj.y);
+        }
+
+        h = hashMix(h, (ctx.playerReachedFlagman ? 1 : 0)
+                | (ctx.henReachedFlagman ? 2 : 0)
+                | (ctx.busReachedFlagman ? 4 : 0));
+
+        ctx.stateHash = h;
+    }
+
+    //Mixes a value into a hash by multiplying by a large odd constant and
+    //folding the high bits back into the low ones
+    static long hashMix(long h, long v) {
+        h = (h ^ v) * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    //Floats are mixed in by their exact bit pattern
+    static long hashMix(long h, float v) {
+        return hashMix(h, (long)Float.floatToRawIntBits(v));
     }
 
     void positionCamera() {
@@ -367,7 +1006,7 @@ class Play {
     }
 
     void setAnimation(int anim, boolean running, boolean loop, boolean reverse,
-                                                int numFrames, float delay) {
+                                                int numFrames, float frameTime) {
 
         Anim a = ctx.anims[anim];
 
@@ -376,50 +1015,132 @@ class Play {
         a.reverse = reverse;
         a.numFrames = numFrames;
         a.frame = reverse ? numFrames - 1 : 0;
-        a.delay = delay;
-        a.maxDelay = delay;
+        a.frameTime = frameTime;
+        a.startTime = ctx.clock;
     }
 
     void startAnimation(int anim) {
         Anim a = ctx.anims[anim];
 
         a.running = true;
-        a.delay = a.maxDelay;
         a.frame = a.reverse ? a.numFrames - 1 : 0;
+        a.startTime = ctx.clock;
+    }
+
+    //Stops an animation and keeps it at the given frame
+    void stopAnimation(int anim, int frame) {
+        Anim a = ctx.anims[anim];
+
+        a.running = false;
+        a.frame = frame;
+    }
+
+    //Makes an animation run from the given frame, with the given frame time,
+    //as if it had been running all along
+    void continueAnimation(int anim, int frame, float frameTime) {
+        Anim a = ctx.anims[anim];
+        int step = a.reverse ? a.numFrames - 1 - frame : frame;
+
+        a.running = true;
+        a.frameTime = frameTime;
+        a.startTime = ctx.clock - (step * frameTime);
+    }
+
+    //Makes an animation go in the opposite direction from its current frame
+    void reverseAnimation(int anim) {
+        Anim a = ctx.anims[anim];
+        int frame = animFrame(ctx, anim);
+
+        a.reverse = !a.reverse;
+        a.frame = frame;
+
+        if (a.running) {
+            continueAnimation(anim, frame, a.frameTime);
+        }
+    }
+
+    //Returns the current frame of an animation
+    static int animFrame(PlayCtx ctx, int anim) {
+        Anim a = ctx.anims[anim];
+        int step;
+
+        if (!a.running || a.frameTime <= 0) return a.frame;
+
+        step = (int)((ctx.clock - a.startTime) / a.frameTime);
+
+        if (a.loop) {
+            step %= a.numFrames;
+        } else if (step > a.numFrames - 1) {
+            step = a.numFrames - 1;
+        }
+
+        return a.reverse ? a.numFrames - 1 - step : step;
+    }
+
+    //Returns the current frame of a particle
+    static int particleFrame(PlayCtx ctx, int p) {
+        Particles ptcls = ctx.particles;
+        int frame;
+
+        if (ptcls.type[p] == PARTICLE_CRACK) {
+            return animFrame(ctx, ANIM_CRACK_PARTICLES);
+        }
+
+        //Coin spark
+        frame = (int)(ptcls.age[p] / COIN_SPARK_FRAME_TIME);
+
+        return Math.min(frame, COIN_SPARK_FRAMES - 1);
+    }
+
+    //Returns value advanced by rate over the current tick
+    //
+    //In fixed-point physics mode, the computation is done on integers, with
+    //both values truncated to the 1/FIXED_ONE grid, so that the result is
+    //the same on every platform and JVM and depends on no floating-point
+    //rounding. As the result is on the grid, it is held exactly by the float
+    //and the rest of the code, such as collision checks, sees the same
+    //values as the integer computation
+    float integrate(float value, float rate) {
+        long fixedValue, fixedRate;
+
+        if (!ctx.fixedPoint) return value + rate * deltaTime;
+
+        fixedValue = (long)(value * FIXED_ONE);
+        fixedRate = (long)(rate * FIXED_ONE);
+        fixedValue += (fixedRate * dtFixed + (1L << 31)) >> 32;
+
+        return fixedValue / FIXED_ONE;
     }
 
     void addCrackParticles(int x, int y) {
-        ctx.crackParticles[ctx.nextCrackParticle].x = x;
-        ctx.crackParticles[ctx.nextCrackParticle].y = y;
-        ctx.crackParticles[ctx.nextCrackParticle].xvel = -15;
-        ctx.crackParticles[ctx.nextCrackParticle].yvel = -120;
-        ctx.crackParticles[ctx.nextCrackParticle].grav =  200;
-        ctx.nextCrackParticle++;
-        ctx.nextCrackParticle %= MAX_CRACK_PARTICLES;
-
-        ctx.crackParticles[ctx.nextCrackParticle].x = x;
-        ctx.crackParticles[ctx.nextCrackParticle].y = y;
-        ctx.crackParticles[ctx.nextCrackParticle].xvel = -5;
-        ctx.crackParticles[ctx.nextCrackParticle].yvel = -190;
-        ctx.crackParticles[ctx.nextCrackParticle].grav =  200;
-        ctx.nextCrackParticle++;
-        ctx.nextCrackParticle %= MAX_CRACK_PARTICLES;
-
-        ctx.crackParticles[ctx.nextCrackParticle].x = x;
-        ctx.crackParticles[ctx.nextCrackParticle].y = y;
-        ctx.crackParticles[ctx.nextCrackParticle].xvel =  15;
-        ctx.crackParticles[ctx.nextCrackParticle].yvel = -120;
-        ctx.crackParticles[ctx.nextCrackParticle].grav =  200;
-        ctx.nextCrackParticle++;
-        ctx.nextCrackParticle %= MAX_CRACK_PARTICLES;
-
-        ctx.crackParticles[ctx.nextCrackParticle].x = x;
-        ctx.crackParticles[ctx.nextCrackParticle].y = y;
-        ctx.crackParticles[ctx.nextCrackParticle].xvel =  5;
-        ctx.crackParticles[ctx.nextCrackParticle].yvel = -190;
-        ctx.crackParticles[ctx.nextCrackParticle].grav =  200;
-        ctx.nextCrackParticle++;
-        ctx.nextCrackParticle %= MAX_CRACK_PARTICLES;
+        addCrackParticle(x, y, -15, -120);
+        addCrackParticle(x, y,  -5, -190);
+        addCrackParticle(x, y,  15, -120);
+        addCrackParticle(x, y,   5, -190);
+    }
+
+    void addCrackParticle(int x, int y, float xvel, float yvel) {
+        addParticle(PARTICLE_CRACK, x, y, xvel, yvel, 200, 0);
+    }
+
+    void addParticle(int type, int x, int y, float xvel, float yvel,
+            float grav, float lifetime) {
+        Particles ptcls = ctx.particles;
+        int p = ptcls.count;
+
+        //The particles are only a visual effect, so they can be omitted if
+        //there is no room for them
+        if (p == MAX_PARTICLES) return;
+
+        ptcls.type[p] = type;
+        ptcls.x[p] = x;
+        ptcls.y[p] = y;
+        ptcls.xvel[p] = xvel;
+        ptcls.yvel[p] = yvel;
+        ptcls.grav[p] = grav;
+        ptcls.age[p] = 0;
+        ptcls.lifetime[p] = lifetime;
+        ptcls.count++;
     }
 
     //Moves the bus to the end of the level
@@ -429,14 +1150,12 @@ class Play {
         ctx.bus.x = ctx.levelSize - 456;
 
         //Make rear door closed
-        ctx.anims[ANIM_BUS_DOOR_REAR].running = false;
-        ctx.anims[ANIM_BUS_DOOR_REAR].frame = 0;
         ctx.anims[ANIM_BUS_DOOR_REAR].reverse = false;
+        stopAnimation(ANIM_BUS_DOOR_REAR, 0);
 
         //Make front door open
-        ctx.anims[ANIM_BUS_DOOR_FRONT].running = false;
-        ctx.anims[ANIM_BUS_DOOR_FRONT].frame = 3;
         ctx.anims[ANIM_BUS_DOOR_FRONT].reverse = true;
+        stopAnimation(ANIM_BUS_DOOR_FRONT, 3);
 
         //Bus route sign
         if (ctx.lastLevel) {
@@ -450,15 +1169,13 @@ class Play {
 
     void showPlayerInBus() {
         CutsceneObject cutscenePlayer = ctx.cutsceneObjects[0];
-        Anim anim = ctx.anims[ANIM_CUTSCENE_OBJECTS + 0];
 
         cutscenePlayer.sprite = SPR_PLAYER_STAND;
         cutscenePlayer.inBus = true;
         cutscenePlayer.x = 342;
         cutscenePlayer.y = BUS_Y + 36;
 
-        anim.frame = 0;
-        anim.numFrames = 1;
+        setAnimation(ANIM_CUTSCENE_OBJECTS + 0, false, false, false, 1, 0);
 
         ctx.player.state = PLAYER_STATE_INACTIVE;
         ctx.player.visible = false;
@@ -471,6 +1188,23 @@ class Play {
 
     //--------------------------------------------------------------------------
 
+    //Stores the positions of the objects the renderer interpolates between
+    //ticks (see Renderer.interpolate())
+    void storePrevPositions() {
+        int i;
+
+        ctx.cam.prevx = ctx.cam.x;
+        ctx.cam.prevy = ctx.cam.y;
+        ctx.player.prevx = ctx.player.x;
+        ctx.player.prevy = ctx.player.y;
+        ctx.bus.prevx = ctx.bus.x;
+
+        for (i = 0; i < ctx.passers.numLive; i++) {
+            int p = ctx.passers.live[i];
+            ctx.passers.prevx[p] = ctx.passers.x[p];
+        }
+    }
+
     //Begins the update
     void beginUpdate() {
         Player pl = ctx.player;
@@ -500,7 +1234,7 @@ class Play {
             ctx.time--;
 
             if (ctx.time <= 10 && ctx.time >= 0) {
-                audio.playSfx(SFX_TIME);
+                ctx.events.push(EV_TIME_WARNING, 0, 0, ctx.time);
             }
 
             if (ctx.time < 0) {
@@ -523,7 +1257,7 @@ class Play {
             if (ctx.time > 0) {
                 ctx.time--;
                 ctx.score += 10;
-                audio.playSfx(SFX_SCORE);
+                ctx.events.push(EV_SCORE_COUNTED, 0, 0, ctx.score);
             }
 
             if (ctx.time <= 0) {
@@ -536,88 +1270,74 @@ class Play {
     //Updates the position of most game objects, not including the player
     //character and the camera
     void moveObjects() {
+        Objs objs = ctx.objs;
+        Gushes gushes = ctx.gushes;
+        ThrownPeels thrown = ctx.thrownPeels;
+        Passers passers = ctx.passers;
         MovingPeel peel;
         int i;
 
         //Bus
-        ctx.bus.xvel += ctx.bus.acc * deltaTime;
-        ctx.bus.x += ctx.bus.xvel * deltaTime;
-
-        //Thrown peel
-        peel = ctx.thrownPeel;
-        if (peel.obj != NONE) {
-            Obj obj = ctx.objs[peel.obj];
-
-            peel.yvel += peel.grav * deltaTime;
-            peel.x += peel.xvel * deltaTime;
-            peel.y += peel.yvel * deltaTime;
-            if (peel.y >= 256) {
+        ctx.bus.xvel = integrate(ctx.bus.xvel, ctx.bus.acc);
+        ctx.bus.x = integrate(ctx.bus.x, ctx.bus.xvel);
+
+        //Thrown peels (visited backwards, as freeing one moves the last live
+        //handle to its position)
+        for (i = thrown.numLive - 1; i >= 0; i--) {
+            int p = thrown.live[i];
+            int obj = thrown.obj[p];
+
+            thrown.yvel[p] = integrate(thrown.yvel[p], thrown.grav[p]);
+            thrown.x[p] = integrate(thrown.x[p], thrown.xvel[p]);
+            thrown.y[p] = integrate(thrown.y[p], thrown.yvel[p]);
+            if (thrown.y[p] >= 256) {
                 //Stop the peel when it hits the floor
-                obj.type = OBJ_BANANA_PEEL;
-                peel.x = peel.xdest;
-                peel.y = 256;
-                peel.obj = NONE;
+                objs.type[obj] = OBJ_BANANA_PEEL;
+                thrown.x[p] = thrown.xdest[p];
+                thrown.y[p] = 256;
+                thrown.free(p);
             }
 
-            obj.x = (int)peel.x;
-            obj.y = (int)peel.y;
+            objs.x[obj] = (int)thrown.x[p];
+            objs.y[obj] = (int)thrown.y[p];
+            ctx.objIndex.update(obj);
+            ctx.interactIndex.update(obj);
+            hashObj(obj);
         }
 
         //Slipped peel
         peel = ctx.slipPeel;
         if (peel.obj != NONE) {
-            Obj obj = ctx.objs[peel.obj];
+            int obj = peel.obj;
 
-            peel.yvel += peel.grav * deltaTime;
-            peel.x += peel.xvel * deltaTime;
-            peel.y += peel.yvel * deltaTime;
+            peel.yvel = integrate(peel.yvel, peel.grav);
+            peel.x = integrate(peel.x, peel.xvel);
+            peel.y = integrate(peel.y, peel.yvel);
             if (peel.y >= 400) {
                 //Deactivate the peel when it goes too far downwards
-                obj.type = NONE;
+                objs.type[obj] = NONE;
                 peel.obj = NONE;
+                ctx.objIndex.remove(obj);
+                ctx.interactIndex.remove(obj);
+                objs.free(obj);
+            } else {
+                objs.x[obj] = (int)peel.x;
+                objs.y[obj] = (int)peel.y;
+                ctx.objIndex.update(obj);
+                ctx.interactIndex.update(obj);
             }
 
-            obj.x = (int)peel.x;
-            obj.y = (int)peel.y;
+            hashObj(obj);
         }
 
-        //Gushes
-        for (i = 0; i < MAX_GUSHES; i++) {
-            Gush gush = ctx.gushes[i];
-
-            float y = gush.y;
-            float yvel = gush.yvel;
-            float ydest = gush.ydest;
-
-            //Ignore inexistent gushes
-            if (gush.obj == NONE) continue;
-
-            y += yvel * deltaTime;
-
-            //If the gush reaches its destination Y position
-            if ((yvel < 0 && y <= ydest) || (yvel > 0 && y >= ydest)) {
-                y = ydest;
-
-                //Advance within the movement pattern and loop if its end is
-                //reached
-                gush.movePatternPos += 2;
-                if (gush.movePattern[gush.movePatternPos] == 0) {
-                    gush.movePatternPos = 0;
-                }
-
-                gush.yvel  = gush.movePattern[gush.movePatternPos];
-                gush.ydest = gush.movePattern[gush.movePatternPos + 1];
-            }
-
-            gush.y = y;
-            ctx.objs[gush.obj].y = (int)y;
-        }
+        moveGushes();
 
         //Grabbed rope
         if (ctx.grabbedRope.obj != NONE) {
-            Obj obj = ctx.objs[ctx.grabbedRope.obj];
+            int obj = ctx.grabbedRope.obj;
 
-            ctx.grabbedRope.x += ctx.grabbedRope.xvel * deltaTime;
+            ctx.grabbedRope.x = integrate(ctx.grabbedRope.x,
+                                                ctx.grabbedRope.xvel);
 
             if (ctx.grabbedRope.x >= ctx.grabbedRope.xmax) {
                 ctx.grabbedRope.x = ctx.grabbedRope.xmax;
@@ -627,7 +1347,10 @@ class Play {
                 ctx.grabbedRope.obj = NONE;
             }
 
-            obj.x = (int)ctx.grabbedRope.x;
+            objs.x[obj] = (int)ctx.grabbedRope.x;
+            ctx.objIndex.update(obj);
+            ctx.interactIndex.update(obj);
+            hashObj(obj);
         }
 
         //Pushable crate
@@ -635,94 +1358,367 @@ class Play {
             PushableCrate crate = ctx.pushableCrates[i];
 
             if (crate.obj != NONE && crate.pushed) {
-                Solid sol = ctx.solids[crate.solid];
-
-                crate.x += 72 * deltaTime;
+                crate.x = integrate(crate.x, 72);
                 if (crate.x >= crate.xmax) crate.x = crate.xmax;
 
-                ctx.objs[crate.obj].x = (int)crate.x;
-                sol.left = (int)crate.x;
-                sol.right = (int)crate.x + 24;
+                objs.x[crate.obj] = (int)crate.x;
+                ctx.objIndex.update(crate.obj);
+                ctx.solids.left[crate.solid] = (int)crate.x;
+                ctx.solids.right[crate.solid] = (int)crate.x + 24;
+                ctx.solidGrid.update(crate.solid);
+                hashObj(crate.obj);
+                hashSolid(crate.solid);
+            }
+        }
+
+        //Passing cars, hens, and ending sequence traffic jam (visited
+        //backwards for the same reason as thrown peels)
+        for (i = passers.numLive - 1; i >= 0; i--) {
+            int p = passers.live[i];
+            float xmax = ctx.cam.x + VSCREEN_MAX_WIDTH + 64;
+
+            if (passers.type[p] == TRIGGER_HEN) {
+                passers.xvel[p] = integrate(passers.xvel[p], passers.acc[p]);
+                passers.x[p] = integrate(passers.x[p], passers.xvel[p]);
+
+                if (passers.x[p] > xmax) {
+                    passers.free(p);
+                }
+            } else {
+                passers.x[p] = integrate(passers.x[p], passers.xvel[p]);
+
+                if (passers.x[p] >= xmax && passers.type[p] != TRAFFIC_JAM) {
+                    passers.free(p);
+                }
             }
         }
 
-        //Passing car and ending sequence traffic jam
-        if (ctx.car.x != NONE) {
-            ctx.car.x += ctx.car.xvel * deltaTime;
+        moveParticles();
+
+        //Cutscene objects
+        for (i = 0; i < MAX_CUTSCENE_OBJECTS; i++) {
+            CutsceneObject cobj = ctx.cutsceneObjects[i];
+
+            //Ignore inexistent cutscene objects
+            if (cobj.sprite == NONE) continue;
+
+            cobj.xvel = integrate(cobj.xvel, cobj.acc);
+            cobj.yvel = integrate(cobj.yvel, cobj.grav);
+            cobj.x = integrate(cobj.x, cobj.xvel);
+            cobj.y = integrate(cobj.y, cobj.yvel);
+        }
+    }
+
+    //Moves the gushes
+    //
+    //The movement of a gush only depends on its movement pattern, so once it
+    //reaches a destination Y position, it goes through the same states over
+    //and over. From then on, its state is taken from a table, and only when
+    //it is close enough to be seen or touched, so gushes far away cost
+    //nothing
+    void moveGushes() {
+        Gushes gushes = ctx.gushes;
+        Camera cam = ctx.cam;
+        Player pl = ctx.player;
+        int left, right;
+        int i;
+
+        //A change to the tick length (never the case in the game itself)
+        //requires new tables, and the gushes that follow the old ones need to
+        //be moved tick by tick again until they are in step with the new ones
+        if (!gushTablesValid()) {
+            for (i = 0; i < gushes.numLive; i++) {
+                int g = gushes.live[i];
 
-            if (ctx.car.x >= ctx.cam.x + VSCREEN_MAX_WIDTH + 64) {
-                if (ctx.car.type != TRAFFIC_JAM) {
-                    ctx.car.x = NONE;
+                if (gushes.periodic[g]) {
+                    updateGush(g);
+                    gushes.periodic[g] = false;
                 }
             }
+
+            buildGushTables();
         }
 
-        //Hen
-        if (ctx.hen.x != NONE) {
-            ctx.hen.xvel += ctx.hen.acc * deltaTime;
-            ctx.hen.x += ctx.hen.xvel * deltaTime;
+        gushes.tick++;
+
+        left = (int)Math.min(cam.x, pl.x) - GUSH_UPDATE_MARGIN;
+        right = (int)Math.max(cam.x + VSCREEN_MAX_WIDTH, pl.x)
+                    + GUSH_UPDATE_MARGIN;
+
+        for (i = 0; i < gushes.numLive; i++) {
+            int g = gushes.live[i];
+            int obj = gushes.obj[g];
+
+            if (gushes.periodic[g]) {
+                if (ctx.objs.x[obj] >= left && ctx.objs.x[obj] <= right) {
+                    updateGush(g);
+                }
 
-            if (ctx.hen.x > ctx.cam.x + VSCREEN_MAX_WIDTH + 64) {
-                ctx.hen.x = NONE;
+                continue;
             }
+
+            if (moveGush(gushes, g)) {
+                GushTable table = gushTable(gushes.movePattern[g]);
+
+                //The gush is now at the start of a step of its pattern
+                if (table != null && table.period > 0) {
+                    int step = table.stepStart[gushes.movePatternPos[g]];
+
+                    gushes.periodic[g] = true;
+                    gushes.phaseStart[g] = gushes.tick - step;
+                }
+            }
+
+            ctx.objs.y[obj] = (int)gushes.y[g];
+            hashObj(obj);
         }
+    }
 
-        //Crack particles
-        for (i = 0; i < MAX_CRACK_PARTICLES; i++) {
-            CrackParticle ptcl = ctx.crackParticles[i];
+    //Moves a gush by one tick and returns true if it has reached its
+    //destination Y position, in which case it advances to the next step of
+    //its movement pattern
+    boolean moveGush(Gushes gushes, int g) {
+        float y = gushes.y[g];
+        float yvel = gushes.yvel[g];
+        float ydest = gushes.ydest[g];
+        boolean reached = false;
 
-            //Ignore inexistent particles
-            if (ptcl.x == NONE) continue;
+        y = integrate(y, yvel);
 
-            ptcl.yvel += ptcl.grav * deltaTime;
-            ptcl.x += ptcl.xvel * deltaTime;
-            ptcl.y += ptcl.yvel * deltaTime;
+        if ((yvel < 0 && y <= ydest) || (yvel > 0 && y >= ydest)) {
+            int pattern[] = gushes.movePattern[g];
+            int pos = gushes.movePatternPos[g];
 
-            if (ptcl.y > 400) {
-                ptcl.x = NONE;
+            y = ydest;
+            reached = true;
+
+            //Advance within the movement pattern and loop if its end is
+            //reached
+            pos += 2;
+            if (pattern[pos] == 0) {
+                pos = 0;
             }
+
+            gushes.movePatternPos[g] = pos;
+            gushes.yvel[g]  = pattern[pos];
+            gushes.ydest[g] = pattern[pos + 1];
         }
 
-        //Cutscene objects
-        for (i = 0; i < MAX_CUTSCENE_OBJECTS; i++) {
-            CutsceneObject cobj = ctx.cutsceneObjects[i];
+        gushes.y[g] = y;
 
-            //Ignore inexistent cutscene objects
-            if (cobj.sprite == NONE) continue;
+        return reached;
+    }
+
+    //Sets the current state of a gush that follows a table
+    void updateGush(int g) {
+        Gushes gushes = ctx.gushes;
+        GushTable table = gushTable(gushes.movePattern[g]);
+        int phase = (gushes.tick - gushes.phaseStart[g]) % table.period;
+        int pos = table.movePatternPos[phase];
+
+        gushes.y[g] = table.y[phase];
+        gushes.movePatternPos[g] = pos;
+        gushes.yvel[g] = table.pattern[pos];
+        gushes.ydest[g] = table.pattern[pos + 1];
+
+        ctx.objs.y[gushes.obj[g]] = (int)gushes.y[g];
+        hashObj(gushes.obj[g]);
+    }
+
+    GushTable gushTable(int pattern[]) {
+        int i;
+
+        for (i = 0; i < gushTables.length; i++) {
+            if (gushTables[i].pattern == pattern) return gushTables[i];
+        }
+
+        return null;
+    }
 
-            cobj.xvel += cobj.acc * deltaTime;
-            cobj.yvel += cobj.grav * deltaTime;
-            cobj.x += cobj.xvel * deltaTime;
-            cobj.y += cobj.yvel * deltaTime;
+    boolean gushTablesValid() {
+        GushTable table = gushTables[0];
+
+        return table.dt == deltaTime && table.fixedPoint == ctx.fixedPoint;
+    }
+
+    void buildGushTables() {
+        int i;
+
+        if (gushTablesValid()) return;
+
+        for (i = 0; i < gushTables.length; i++) {
+            buildGushTable(gushTables[i]);
         }
     }
 
-    //Acts if the passing car has reached the X position at which it throws a
+    //Fills a table by moving a gush tick by tick from the start of its
+    //movement pattern until the pattern loops, which is also how the period
+    //is found; no table (a period of zero) is built if the period is too long
+    void buildGushTable(GushTable table) {
+        Gushes gush = gushScratch;
+        int pattern[] = table.pattern;
+        int period = 0;
+        int end, pass, t;
+
+        table.dt = deltaTime;
+        table.fixedPoint = ctx.fixedPoint;
+        table.period = 0;
+
+        if (deltaTime <= 0) return;
+
+        if (table.stepStart == null) {
+            table.stepStart = new int[pattern.length];
+        }
+
+        end = 0;
+        while (pattern[end] != 0) end += 2;
+
+        //The first pass finds the period and the second one fills the table
+        for (pass = 0; pass < 2; pass++) {
+            //The state right after the pattern loops
+            gush.movePattern[0] = pattern;
+            gush.movePatternPos[0] = 0;
+            gush.y[0] = pattern[end - 1];
+            gush.yvel[0] = pattern[0];
+            gush.ydest[0] = pattern[1];
+
+            if (pass == 1) {
+                if (table.y == null || table.y.length < period) {
+                    table.y = new float[period];
+                    table.movePatternPos = new int[period];
+                }
+
+                table.y[0] = gush.y[0];
+                table.movePatternPos[0] = 0;
+                table.stepStart[0] = 0;
+            }
+
+            for (t = 1; t <= GUSH_TABLE_MAX_TICKS; t++) {
+                boolean reached = moveGush(gush, 0);
+                int pos = gush.movePatternPos[0];
+
+                if (reached && pos == 0) {
+                    period = t;
+                    break;
+                }
+
+                if (pass == 1) {
+                    table.y[t] = gush.y[0];
+                    table.movePatternPos[t] = pos;
+                    if (reached) table.stepStart[pos] = t;
+                }
+            }
+
+            if (period == 0) return;
+        }
+
+        table.period = period;
+    }
+
+    //Moves the particles and removes those that have fallen off the screen
+    //or reached their lifetime
+    void moveParticles() {
+        Particles ptcls = ctx.particles;
+        int i;
+
+        //Iterated backwards, as removing a particle moves the last one to its
+        //position
+        for (i = ptcls.count - 1; i >= 0; i--) {
+            ptcls.yvel[i] = integrate(ptcls.yvel[i], ptcls.grav[i]);
+            ptcls.x[i] = integrate(ptcls.x[i], ptcls.xvel[i]);
+            ptcls.y[i] = integrate(ptcls.y[i], ptcls.yvel[i]);
+            ptcls.age[i] += deltaTime;
+
+            if (ptcls.y[i] > 400
+                    || (ptcls.lifetime[i] > 0
+                        && ptcls.age[i] >= ptcls.lifetime[i])) {
+                int last = ptcls.count - 1;
+
+                ptcls.type[i] = ptcls.type[last];
+                ptcls.x[i] = ptcls.x[last];
+                ptcls.y[i] = ptcls.y[last];
+                ptcls.xvel[i] = ptcls.xvel[last];
+                ptcls.yvel[i] = ptcls.yvel[last];
+                ptcls.grav[i] = ptcls.grav[last];
+                ptcls.age[i] = ptcls.age[last];
+                ptcls.lifetime[i] = ptcls.lifetime[last];
+                ptcls.count = last;
+            }
+        }
+    }
+
+    //Acts if any passing car has reached the X position at which it throws a
     //banana peel
     void handleCarThrownPeel() {
-        if (ctx.car.x == NONE || ctx.car.threwPeel) return;
-        if (ctx.car.type == TRAFFIC_JAM) return;
-        if (ctx.car.x < ctx.car.peelThrowX) return;
+        Passers passers = ctx.passers;
+        int i, obj;
 
-        for (int i = 0; i < MAX_OBJS; i++) {
-            if (ctx.objs[i].type == NONE) {
-                ctx.objs[i].type = OBJ_BANANA_PEEL_MOVING;
+        for (i = 0; i < passers.numLive; i++) {
+            int car = passers.live[i];
+            int type = passers.type[car];
+            float x;
 
-                ctx.thrownPeel.obj = i;
-                ctx.thrownPeel.x = ctx.car.peelThrowX + 90;
-                ctx.thrownPeel.y = 200;
-                ctx.thrownPeel.xdest = ctx.thrownPeel.x + 70;
-                ctx.thrownPeel.xvel = 140;
-                ctx.thrownPeel.yvel = -10;
-                ctx.thrownPeel.grav = 500;
+            if (type == TRIGGER_HEN || type == TRAFFIC_JAM) continue;
+            if (passers.threwPeel[car]) continue;
+            if (passers.x[car] < passers.peelThrowX[car]) continue;
 
-                ctx.car.threwPeel = true;
+            //If there is no room, the car throws the peel on a later tick
+            if (ctx.thrownPeels.numFree == 0) continue;
 
-                break;
-            }
+            //The level loader makes sure there is room for the peel
+            obj = ctx.objs.alloc();
+            if (obj == NONE) continue;
+
+            x = passers.peelThrowX[car] + 90;
+            throwPeel(obj, x, 200, x + 70, 140, -10);
+            passers.threwPeel[car] = true;
         }
     }
 
+    //Makes an object of PlayCtx.objs a banana peel that falls until it hits
+    //the floor, for which there must be room in PlayCtx.thrownPeels
+    void throwPeel(int obj, float x, float y, float xdest, float xvel,
+            float yvel) {
+        ThrownPeels thrown = ctx.thrownPeels;
+        int p = thrown.alloc();
+
+        thrown.obj[p] = obj;
+        thrown.x[p] = x;
+        thrown.y[p] = y;
+        thrown.xdest[p] = xdest;
+        thrown.xvel[p] = xvel;
+        thrown.yvel[p] = yvel;
+        thrown.grav[p] = 500;
+
+        //The handle may have belonged to a collected coin, so the position is
+        //set right away rather than on the next call to moveObjects()
+        ctx.objs.type[obj] = OBJ_BANANA_PEEL_MOVING;
+        ctx.objs.x[obj] = (int)x;
+        ctx.objs.y[obj] = (int)y;
+        ctx.objIndex.add(obj);
+        ctx.interactIndex.add(obj); //Becomes a banana peel once it lands
+        hashObj(obj);
+    }
+
+    //Adds a passing car, hen, or traffic jam and returns its handle within
+    //PlayCtx.passers or NONE if the pool is full
+    int addPasser(int type, float x, float xvel) {
+        Passers passers = ctx.passers;
+        int p = passers.alloc();
+
+        if (p == NONE) return NONE;
+
+        passers.type[p] = type;
+        passers.x[p] = x;
+        passers.prevx[p] = x;
+        passers.xvel[p] = xvel;
+        passers.acc[p] = 0;
+        passers.threwPeel[p] = false;
+        passers.peelThrowX[p] = NONE;
+
+        return p;
+    }
+
     //Updates the position of the player character (without taking solids into
     //account, as solids are handled by handleSolids())
     void movePlayer() {
@@ -732,13 +1728,13 @@ class Play {
 
         //Deceleration and acceleration
         if (pl.xvel > 0 && pl.acc <= 0) {
-            pl.xvel -= pl.dec * deltaTime;
+            pl.xvel = integrate(pl.xvel, -pl.dec);
             if (pl.xvel <= 0) pl.xvel = 0;
         } else if (pl.xvel < 0 && pl.acc >= 0) {
-            pl.xvel += pl.dec * deltaTime;
+            pl.xvel = integrate(pl.xvel, pl.dec);
             if (pl.xvel >= 0) pl.xvel = 0;
         } else {
-            pl.xvel += pl.acc * deltaTime;
+            pl.xvel = integrate(pl.xvel, pl.acc);
 
             //Limit velocity
             if (pl.xvel < -90) pl.xvel = -90;
@@ -746,12 +1742,12 @@ class Play {
         }
 
         //Gravity
-        pl.yvel += pl.grav * deltaTime;
+        pl.yvel = integrate(pl.yvel, pl.grav);
         if (pl.yvel > 300) pl.yvel = 300; //Limit velocity
 
         //Update position
-        pl.x += pl.xvel * deltaTime;
-        pl.y += pl.yvel * deltaTime;
+        pl.x = integrate(pl.x, pl.xvel);
+        pl.y = integrate(pl.y, pl.yvel);
 
         //Update position relative to the rope if grabbing one
         if (pl.state == PLAYER_STATE_GRABROPE) {
@@ -783,6 +1779,9 @@ class Play {
 
         int ledgeSolid = NONE;
 
+        Solids sols = ctx.solids;
+        SolidGrid grid = ctx.solidGrid;
+        int numFound;
         int limit;
         int i;
 
@@ -792,19 +1791,25 @@ class Play {
         //
         limit = movedRight ? 30000 : 0;
 
-        for (i = 0; i < MAX_SOLIDS; i++) {
-            Solid sol = ctx.solids[i];
+        //Only the solids within the horizontal range swept by the player
+        //character's bounding box can block the movement
+        numFound = grid.query(Math.min(plLeft, plNewLeft),
+                                Math.max(plRight, plNewRight));
 
-            //Ignore inexistent solids
-            if (sol.type == NONE) continue;
+        for (i = 0; i < numFound; i++) {
+            int sol = grid.result[i];
+            int solLeft = sols.left[sol];
+            int solRight = sols.right[sol];
+
+            //Ignore inexistent solids and those that are not full
+            if (sols.type[sol] != SOL_FULL) continue;
 
-            if (sol.type != SOL_FULL) continue;
-            if (sol.top >= plBottom || sol.bottom < plTop) continue;
+            if (sols.top[sol] >= plBottom || sols.bottom[sol] < plTop) continue;
 
-            if (movedRight && sol.left < limit && sol.left >= plRight) {
-                limit = sol.left;
-            } else if (movedLeft && sol.right > limit && sol.right <= plLeft) {
-                limit = sol.right;
+            if (movedRight && solLeft < limit && solLeft >= plRight) {
+                limit = solLeft;
+            } else if (movedLeft && solRight > limit && solRight <= plLeft) {
+                limit = solRight;
             }
         }
 
@@ -829,22 +1834,29 @@ class Play {
         //
         limit = movedUp ? 0 : 30000;
 
-        for (i = 0; i < MAX_SOLIDS; i++) {
-            Solid sol = ctx.solids[i];
+        numFound = grid.query(plLeft, plRight);
+
+        for (i = 0; i < numFound; i++) {
+            int sol = grid.result[i];
+            int solType = sols.type[sol];
+            int solLeft = sols.left[sol];
+            int solRight = sols.right[sol];
+            int solTop = sols.top[sol];
+            int solBottom = sols.bottom[sol];
 
             //Ignore inexistent solids
-            if (sol.type == NONE) continue;
+            if (solType == NONE) continue;
 
-            if (sol.left >= plRight || sol.right <= plLeft) continue;
+            if (solLeft >= plRight || solRight <= plLeft) continue;
 
             //Detect if the player character's bounding box is on a ledge while
             //the sprite appears to be standing on the air, so we can prevent
             //this weird visual effect
-            if (sol.type == SOL_FULL && pl.xvel == 0 && sol.top == plBottom) {
-                if (sol.right <= plLeft + 4) {
+            if (solType == SOL_FULL && pl.xvel == 0 && solTop == plBottom) {
+                if (solRight <= plLeft + 4) {
                     //If this is the case, store the solid number
-                    ledgeSolid = i;
-                } else if (ledgeSolid != i && sol.left <= plRight) {
+                    ledgeSolid = sol;
+                } else if (ledgeSolid != sol && solLeft <= plRight) {
                     //If the bottom-right point of the player character's
                     //bounding box is on a different solid, then the player
                     //character is not really on a ledge
@@ -853,30 +1865,29 @@ class Play {
             }
 
             if (movedDown) {
-                int type = sol.type;
-                int top = sol.top;
+                int top = solTop;
                 boolean checkLimit = false;
 
-                if (sol.bottom < plTop) {
+                if (solBottom < plTop) {
                     continue;
                 }
 
-                if (type == SOL_PASSAGEWAY_ENTRY) {
+                if (solType == SOL_PASSAGEWAY_ENTRY) {
                     //When moving down, ignore passageway entry solids, which
                     //are intended to prevent the player character from leaving
                     //the passageway through the entry
                     continue;
-                } else if (type == SOL_SLOPE_UP) {
-                    if (plRight < sol.right) {
-                        top = sol.bottom + (sol.left - plRight);
+                } else if (solType == SOL_SLOPE_UP) {
+                    if (plRight < solRight) {
+                        top = solBottom + (solLeft - plRight);
                     }
                     checkLimit = true;
-                } else if (type == SOL_SLOPE_DOWN) {
-                    if (plLeft > sol.left) {
-                        top = sol.top - (sol.left - plLeft);
+                } else if (solType == SOL_SLOPE_DOWN) {
+                    if (plLeft > solLeft) {
+                        top = solTop - (solLeft - plLeft);
                     }
                     checkLimit = true;
-                } else if (type == SOL_KEEP_ON_TOP) {
+                } else if (solType == SOL_KEEP_ON_TOP) {
                     checkLimit = true;
                 } else {
                     if (top >= plBottom) {
@@ -888,22 +1899,22 @@ class Play {
                     limit = top;
                 }
             } else if (movedUp) {
-                if (sol.type == SOL_PASSAGEWAY_EXIT && pl.yvel < -160) {
+                if (solType == SOL_PASSAGEWAY_EXIT && pl.yvel < -160) {
                     //Ignore passageway exit solids if the player is moving
                     //upwards at a high enough velocity, as when hitting a
                     //spring
                     continue;
                 }
 
-                if (sol.bottom > limit && sol.bottom <= plTop) {
-                    limit = sol.bottom;
+                if (solBottom > limit && solBottom <= plTop) {
+                    limit = solBottom;
                 }
             }
         }
 
         if (movedDown && limit <= pl.y + pl.height) {
             if (ledgeSolid != NONE) {
-                pl.x = ctx.solids[ledgeSolid].right - PLAYER_BOX_OFFSET_X;
+                pl.x = sols.right[ledgeSolid] - PLAYER_BOX_OFFSET_X;
             } else {
                 pl.y = limit - pl.height;
                 pl.yvel = 0;
@@ -923,22 +1934,27 @@ class Play {
         int plLeft = (int)pl.x + PLAYER_BOX_OFFSET_X;
         int plTop = (int)pl.y;
         int plBottom = plTop + pl.height;
-        int i;
+        Holes holes = ctx.holes;
+        int cursor = ctx.passagewayCursor;
 
-        for (i = 0; i < MAX_HOLES; i++) {
-            if (ctx.holes[i].x == NONE) {
-                break; //No more holes
-            } else if (ctx.holes[i].type == HOLE_DEEP) {
-                continue; //Skip holes that are not passageways
-            }
+        //Move the cursor to the first passageway whose entry ends to the right
+        //of the player character, which is the only one that can be entered
+        //(the player character only moves a few pixels per tick)
+        while (cursor > 0 && entryRight(ctx.passageways[cursor - 1]) > plLeft) {
+            cursor--;
+        }
+        while (cursor < ctx.numPassageways
+                && entryRight(ctx.passageways[cursor]) <= plLeft) {
+            cursor++;
+        }
+        ctx.passagewayCursor = cursor;
 
-            Hole pw = ctx.holes[i];
-            int pwLeft = pw.x;
-            int pwEntryRight = pwLeft + LEVEL_BLOCK_SIZE;
+        //Check if the player is entering a passageway
+        if (cursor < ctx.numPassageways) {
+            int pw = ctx.passageways[cursor];
 
-            //Check if the player is entering a passageway
-            if (ctx.curPassageway == null && plBottom >= FLOOR_Y + 4) {
-                if (plLeft > pwLeft && plLeft < pwEntryRight) {
+            if (ctx.curPassageway == NONE && plBottom >= FLOOR_Y + 4) {
+                if (plLeft > holes.x[pw]) {
                     ctx.curPassageway = pw;
 
                     //Move camera down
@@ -950,24 +1966,25 @@ class Play {
         }
 
         //Check if the player is leaving a passageway
-        if (ctx.curPassageway != null) {
-            Hole pw = ctx.curPassageway;
-            int pwRight = pw.x + (pw.width * LEVEL_BLOCK_SIZE);
+        if (ctx.curPassageway != NONE) {
+            int pw = ctx.curPassageway;
+            int pwRight = holes.x[pw] + (holes.width[pw] * LEVEL_BLOCK_SIZE);
 
             if (plLeft > pwRight - 32) {
                 //Check if the player is opening the passageway exit, but only
                 //if the character is moving upwards at a high enough velocity,
                 //as when hitting a spring
                 if (pl.yvel < -160 && plTop < FLOOR_Y + 8) {
-                    if (pw.type == HOLE_PASSAGEWAY_EXIT_CLOSED) {
-                        audio.playSfx(SFX_HOLE);
+                    if (holes.type[pw] == HOLE_PASSAGEWAY_EXIT_CLOSED) {
+                        ctx.events.push(EV_PASSAGEWAY_OPENED, pwRight - 16, 276, 0);
                         addCrackParticles(pwRight - 16, 276);
-                        pw.type = HOLE_PASSAGEWAY_EXIT_OPENED;
+                        holes.type[pw] = HOLE_PASSAGEWAY_EXIT_OPENED;
+                        hashHole(pw);
                     }
                 }
 
                 if (plTop < FLOOR_Y - 54) {
-                    ctx.curPassageway = null;
+                    ctx.curPassageway = NONE;
 
                     //Move camera up
                     if (!ctx.timeUp) {
@@ -978,164 +1995,139 @@ class Play {
         }
     }
 
+    //Right side of the entry of a passageway
+    int entryRight(int pw) {
+        return ctx.holes.x[pw] + LEVEL_BLOCK_SIZE;
+    }
+
     //Handles the interactions between the player character and most other
     //objects
     void handlePlayerInteractions() {
         Player pl = ctx.player;
         int plLeft = (int)pl.x + PLAYER_BOX_OFFSET_X;
         int plTop = (int)pl.y;
-        int plRight = plLeft + PLAYER_BOX_WIDTH;
-        int plBottom = plTop + pl.height;
-        boolean collectedCoin = false;
+        int plOldLeft = (int)pl.oldx + PLAYER_BOX_OFFSET_X;
+        int plOldTop = (int)pl.oldy;
         boolean slipped = false;
         boolean thrownBack = false;
-        int i, j;
-
-        for (i = 0; i < MAX_OBJS; i++) {
-            CoinSpark spk;
-            Obj obj = ctx.objs[i];
+        int releasedRope = NONE;
+        boolean removedObjs = false;
+        Objs objs = ctx.objs;
+        ObjIndex index = ctx.interactIndex;
+        ObjWindow win = interactWindow;
+        int points;
+        int i, j, k;
+
+        //Only the objects close to the path of the player character during
+        //the current tick are visited
+        index.slide(win, Math.min(plLeft, plOldLeft) - OBJ_INTERACT_MARGIN,
+            Math.max(plLeft, plOldLeft) + PLAYER_BOX_WIDTH + OBJ_INTERACT_MARGIN);
+
+        for (k = win.first; k < win.last; k++) {
+            int type, entry, action;
             int objLeft, objRight, objTop, objBottom;
 
+            i = index.order[k];
+            type = objs.type[i];
+
             //Ignore inexistent objects
-            if (obj.type == NONE) continue;
-
-            //Ignore objects the player character does not interact with
-            if (obj.type == OBJ_BANANA_PEEL_MOVING) continue;
-            if (obj.type == OBJ_HYDRANT) continue;
-            if (obj.type == OBJ_OVERHEAD_SIGN) continue;
-            if (obj.type == OBJ_PARKED_CAR_BLUE) continue;
-            if (obj.type == OBJ_PARKED_CAR_SILVER) continue;
-            if (obj.type == OBJ_PARKED_CAR_YELLOW) continue;
-            if (obj.type == OBJ_PARKED_TRUCK) continue;
-            if (obj.type == OBJ_ROPE_HORIZONTAL) continue;
-
-            //Except for coins, the player character only interacts with other
-            //objects when in the normal state
-            if (obj.type != OBJ_COIN_SILVER && obj.type != OBJ_COIN_GOLD) {
-                if (pl.state != PLAYER_STATE_NORMAL) {
-                    continue;
-                }
+            if (type == NONE) continue;
+
+            //Ignore objects the player character does not interact with in
+            //its current state, which can change during the loop (except for
+            //coins, objects only interact with it in the normal state)
+            entry = type * INTERACT_FIELDS;
+            if ((Data.objInteractions[entry + INTERACT_STATES]
+                    & (1 << pl.state)) == 0) {
+                continue;
             }
 
-            objLeft = obj.x;
-            objTop = obj.y;
-            objRight = objLeft;
-            objBottom = objTop;
-
-            //Determine the bounding box of the object
-            switch (obj.type) {
-                case OBJ_BANANA_PEEL:
-                    objLeft += 1;
-                    objRight = objLeft + 6;
-                    objTop += 2;
-                    objBottom = objTop;
-                    break;
-
-                case OBJ_COIN_SILVER:
-                case OBJ_COIN_GOLD:
-                    objLeft += 2;
-                    objRight = objLeft + 4;
-                    objTop += 2;
-                    objBottom = objTop + 4;
-                    break;
-
-                case OBJ_GUSH:
-                    objLeft += 3;
-                    objRight = objLeft + 9;
-                    objBottom += 72;
-                    break;
+            action = Data.objInteractions[entry + INTERACT_ACTION];
 
-                case OBJ_GUSH_CRACK:
-                    objLeft += 3;
-                    objRight = objLeft + 10;
-                    break;
+            //Bounding box of the object
+            objLeft = objs.x[i] + Data.objInteractions[entry + INTERACT_X];
+            objTop = objs.y[i] + Data.objInteractions[entry + INTERACT_Y];
+            objRight = objLeft + Data.objInteractions[entry + INTERACT_WIDTH];
+            objBottom = objTop + Data.objInteractions[entry + INTERACT_HEIGHT];
 
-                case OBJ_ROPE_VERTICAL:
-                    objRight += 4;
-                    objBottom += 64;
-                    break;
-
-                case OBJ_SPRING:
-                    objRight += 16;
-                    objTop += 8;
-                    objBottom += 8;
-                    break;
-            }
-
-            if (obj.type == OBJ_ROPE_VERTICAL) {
+            //The path from the position at the start of the tick is also
+            //checked if needed, so that objects are not skipped over when the
+            //player character moves fast or the tick is long
+            if (action == OBJ_ACTION_GRAB_ROPE) {
                 //For vertical ropes, check interaction using a point close to
                 //the player character
-                int px = (int)pl.x + 21;
-                int py = (int)pl.y + 28;
-
-                if (px < objLeft || px > objRight)  continue;
-                if (py < objTop  || py > objBottom) continue;
+                if (!sweptOverlap((int)pl.oldx + 21, (int)pl.oldy + 28,
+                        (int)pl.x + 21, (int)pl.y + 28, 0, 0,
+                        objLeft, objTop, objRight, objBottom)) {
+                    continue;
+                }
             } else {
                 //For other object types, check interaction using player
                 //character's bounding box
-                if (plRight  < objLeft || plLeft > objRight)  continue;
-                if (plBottom < objTop  || plTop  > objBottom) continue;
+                if (!sweptOverlap(plOldLeft, plOldTop, plLeft, plTop,
+                        PLAYER_BOX_WIDTH, pl.height,
+                        objLeft, objTop, objRight, objBottom)) {
+                    continue;
+                }
             }
 
-            switch (obj.type) {
-                case OBJ_BANANA_PEEL:
+            switch (action) {
+                case OBJ_ACTION_SLIP:
                     ctx.slipPeel.obj = i;
-                    ctx.slipPeel.x = obj.x;
-                    ctx.slipPeel.y = obj.y;
-                    obj.type = OBJ_BANANA_PEEL_MOVING;
+                    ctx.slipPeel.x = objs.x[i];
+                    ctx.slipPeel.y = objs.y[i];
+                    objs.type[i] = OBJ_BANANA_PEEL_MOVING;
+                    hashObj(i);
                     slipped = true;
                     break;
 
-                case OBJ_COIN_SILVER:
-                case OBJ_COIN_GOLD:
-                    collectedCoin = true;
-                    ctx.score += (obj.type == OBJ_COIN_GOLD) ? 100 : 50;
+                case OBJ_ACTION_COLLECT_COIN:
+                    points = (type == OBJ_COIN_GOLD) ? 100 : 50;
+                    ctx.score += points;
+                    ctx.events.push(EV_COIN_COLLECTED, objs.x[i], objs.y[i], points);
 
                     //Add spark
-                    spk = ctx.coinSparks[ctx.nextCoinSpark];
-                    spk.x = obj.x;
-                    spk.y = obj.y;
-                    spk.gold = (obj.type == OBJ_COIN_GOLD);
-
-                    startAnimation(ANIM_COIN_SPARKS + ctx.nextCoinSpark);
+                    addParticle((type == OBJ_COIN_GOLD)
+                            ? PARTICLE_COIN_SPARK_GOLD
+                            : PARTICLE_COIN_SPARK_SILVER,
+                        objs.x[i], objs.y[i], 0, 0, 0,
+                        (COIN_SPARK_FRAMES - 1) * COIN_SPARK_FRAME_TIME);
 
-                    ctx.nextCoinSpark++;
-                    ctx.nextCoinSpark %= MAX_COIN_SPARKS;
-
-                    //Remove the coin
-                    obj.type = NONE;
+                    //Remove the coin (it is freed after the loop)
+                    objs.type[i] = NONE;
+                    hashObj(i);
+                    removedObjs = true;
 
                     break;
 
-                case OBJ_GUSH:
+                case OBJ_ACTION_THROW_BACK:
                     thrownBack = true;
                     break;
 
-                case OBJ_GUSH_CRACK:
-                    obj.type = OBJ_GUSH;
-
-                    for (j = 0; j < MAX_GUSHES; j++) {
-                        if (ctx.gushes[j].obj == NONE) {
-                            ctx.gushes[j].obj = i;
-                            ctx.gushes[j].y = 266;
-                            ctx.gushes[j].movePattern = Data.gushMovePattern2;
-                            ctx.gushes[j].movePatternPos = 0;
-                            ctx.gushes[j].yvel = -140;
-                            ctx.gushes[j].ydest = Data.gushMovePattern2[1];
+                case OBJ_ACTION_OPEN_GUSH_CRACK:
+                    objs.type[i] = OBJ_GUSH;
+                    hashObj(i);
 
-                            addCrackParticles(obj.x + 6, 276);
+                    j = ctx.gushes.alloc();
+                    if (j != NONE) {
+                        ctx.gushes.obj[j] = i;
+                        ctx.gushes.periodic[j] = false;
+                        ctx.gushes.y[j] = 266;
+                        ctx.gushes.movePattern[j] = Data.gushMovePattern2;
+                        ctx.gushes.movePatternPos[j] = 0;
+                        ctx.gushes.yvel[j] = -140;
+                        ctx.gushes.ydest[j] = Data.gushMovePattern2[1];
 
-                            if (pl.state == PLAYER_STATE_NORMAL) {
-                                thrownBack = true;
-                            }
+                        addCrackParticles(objs.x[i] + 6, 276);
 
-                            break;
+                        if (pl.state == PLAYER_STATE_NORMAL) {
+                            thrownBack = true;
                         }
                     }
 
                     break;
 
-                case OBJ_ROPE_VERTICAL:
+                case OBJ_ACTION_GRAB_ROPE:
                     if (ctx.grabbedRope.obj == i) {
                         //Cannot grab the same rope again right after releasing
                         //it
@@ -1143,26 +2135,26 @@ class Play {
                             break;
                         }
                     } else if (ctx.grabbedRope.obj != NONE) {
-                        Obj rope = ctx.objs[ctx.grabbedRope.obj];
-                        rope.x = (int)ctx.grabbedRope.xmin;
+                        objs.x[ctx.grabbedRope.obj] = (int)ctx.grabbedRope.xmin;
+                        releasedRope = ctx.grabbedRope.obj;
                         ctx.grabbedRope.obj = NONE;
                     }
 
                     if (ctx.grabbedRope.obj == NONE) {
-                        ctx.grabbedRope.xmin = obj.x;
-                        ctx.grabbedRope.xmax = obj.x + 352;
+                        ctx.grabbedRope.xmin = objs.x[i];
+                        ctx.grabbedRope.xmax = objs.x[i] + 352;
                     }
 
                     pl.state = PLAYER_STATE_GRABROPE;
                     ctx.grabbedRope.obj = i;
-                    ctx.grabbedRope.x = obj.x;
+                    ctx.grabbedRope.x = objs.x[i];
                     ctx.grabbedRope.xvel = 256;
 
                     break;
 
-                case OBJ_SPRING:
+                case OBJ_ACTION_BOUNCE:
                     if (pl.yvel >= 0) {
-                        audio.playSfx(SFX_SPRING);
+                        ctx.events.push(EV_SPRING_HIT, objs.x[i], objs.y[i], 0);
                         pl.yvel = -244;
                         ctx.hitSpring = i;
                         startAnimation(ANIM_HIT_SPRING);
@@ -1171,14 +2163,29 @@ class Play {
             }
         }
 
-        //Play a sound effect if the player character has collected a coin
-        if (collectedCoin) {
-            audio.playSfx(SFX_COIN);
+        //The order of the objects is not changed while it is being traversed,
+        //so the collected coins are freed and the released rope is moved to
+        //its new place only now
+        if (removedObjs) {
+            for (k = win.last - 1; k >= win.first; k--) {
+                i = index.order[k];
+
+                if (objs.type[i] == NONE) {
+                    index.remove(i);
+                    ctx.objIndex.remove(i);
+                    objs.free(i);
+                }
+            }
+        }
+        if (releasedRope != NONE) {
+            index.update(releasedRope);
+            ctx.objIndex.update(releasedRope);
+            hashObj(releasedRope);
         }
 
         //Act if the player character has slipped on a banana peel
         if (slipped) {
-            audio.playSfx(SFX_SLIP);
+            ctx.events.push(EV_PEEL_SLIPPED, (int)pl.x, (int)pl.y, 0);
             pl.state = PLAYER_STATE_SLIP;
 
             ctx.slipPeel.xvel = 150;
@@ -1188,7 +2195,7 @@ class Play {
 
         //Act if the player character has been thrown back by a gush
         if (thrownBack) {
-            audio.playSfx(SFX_HIT);
+            ctx.events.push(EV_THROWN_BACK, (int)pl.x, (int)pl.y, 0);
             pl.state = PLAYER_STATE_THROWBACK;
         }
 
@@ -1196,7 +2203,8 @@ class Play {
         if (!inputRight) ctx.cratePushRemaining = 0.75f;
         for (i = 0; i < MAX_PUSHABLE_CRATES; i++) {
             PushableCrate crate = ctx.pushableCrates[i];
-            Solid sol;
+            Solids sols = ctx.solids;
+            int sol;
             int x = (int)ctx.player.x + 24;
             int y = (int)ctx.player.y + 48;
 
@@ -1205,12 +2213,12 @@ class Play {
 
             //If the point does not overlap the crate's solid, then the player
             //is not pushing the crate
-            sol = ctx.solids[crate.solid];
-            if (sol.type == NONE) continue;
-            if (x < sol.left) continue;
-            if (x > sol.right) continue;
-            if (y < sol.top) continue;
-            if (y > sol.bottom) continue;
+            sol = crate.solid;
+            if (sols.type[sol] == NONE) continue;
+            if (x < sols.left[sol]) continue;
+            if (x > sols.right[sol]) continue;
+            if (y < sols.top[sol]) continue;
+            if (y > sols.bottom[sol]) continue;
 
             //If we got here, then the player is pushing the crate
             ctx.cratePushRemaining -= deltaTime;
@@ -1219,39 +2227,103 @@ class Play {
                 ctx.cratePushRemaining = 0.75f;
                 crate.showArrow = false;
                 crate.pushed = true;
-                audio.playSfx(SFX_CRATE);
+                ctx.events.push(EV_CRATE_PUSHED, (int)crate.x, 0, 0);
+            }
+        }
+    }
+
+    //Returns true if a box of the given width and height that has moved in a
+    //straight line from (x0, y0) to (x1, y1) touches the rectangle from (left,
+    //top) to (right, bottom) (all edges are inclusive)
+    //
+    //The box is checked at (x1, y1), as done for every tick. Only if it has
+    //moved so far that it could have passed over the rectangle, which does not
+    //happen at the normal tick rate, the rest of the way is also checked,
+    //leaving out (x0, y0), as the box was already checked there in the
+    //previous tick
+    static boolean sweptOverlap(int x0, int y0, int x1, int y1,
+            int width, int height, int left, int top, int right, int bottom) {
+
+        float tmin = 0, tmax = 1;
+        float t0, t1, tmp;
+
+        if (x1 + width >= left && x1 <= right
+                && y1 + height >= top && y1 <= bottom) {
+            return true;
+        }
+
+        //The box overlaps the rectangle while its top-left corner is within
+        //the rectangle enlarged by the size of the box, so it can only have
+        //passed over the rectangle if it has moved further than the size of
+        //that enlarged rectangle on at least one of the axes
+        if (Math.abs(x1 - x0) <= right - left + width
+                && Math.abs(y1 - y0) <= bottom - top + height) {
+            return false;
+        }
+
+        //Intersect the segment with the intervals of the enlarged rectangle on
+        //each axis
+        if (x0 == x1) {
+            if (x0 < left - width || x0 > right) return false;
+        } else {
+            t0 = (float)(left - width - x0) / (x1 - x0);
+            t1 = (float)(right - x0) / (x1 - x0);
+            if (t0 > t1) {
+                tmp = t0;
+                t0 = t1;
+                t1 = tmp;
             }
+            if (t0 > tmin) tmin = t0;
+            if (t1 < tmax) tmax = t1;
+            if (tmin > tmax) return false;
         }
+
+        if (y0 == y1) {
+            if (y0 < top - height || y0 > bottom) return false;
+        } else {
+            t0 = (float)(top - height - y0) / (y1 - y0);
+            t1 = (float)(bottom - y0) / (y1 - y0);
+            if (t0 > t1) {
+                tmp = t0;
+                t0 = t1;
+                t1 = tmp;
+            }
+            if (t0 > tmin) tmin = t0;
+            if (t1 < tmax) tmax = t1;
+            if (tmin > tmax) return false;
+        }
+
+        return (tmin > 0);
     }
 
     //Acts when the player character reaches the X position of a trigger, which
     //causes the appearance of a passing car or hen
     void handleTriggers() {
         int plx = (int)ctx.player.x;
-        int i;
 
-        for (i = 0; i < MAX_TRIGGERS; i++) {
-            Trigger tr = ctx.triggers[i];
+        //Triggers are sorted by X position, so only the next one needs to be
+        //checked
+        while (ctx.nextTrigger < ctx.numTriggers) {
+            int trx = ctx.triggers.x[ctx.nextTrigger];
+            int what = ctx.triggers.what[ctx.nextTrigger];
+            int p;
 
-            //Ignore triggers that do not exist or the player character has not
-            //reached
-            if (tr.x == NONE || tr.x > plx) continue;
+            if (trx > plx) break;
+
+            //If the pool is full, the trigger (and the ones after it) stay
+            //pending until a passer leaves the screen
+            if (ctx.passers.numFree == 0) break;
 
-            if (tr.what == TRIGGER_HEN) {
-                ctx.hen.x = tr.x - (VSCREEN_MAX_WIDTH / 2) - 32;
-                ctx.hen.xvel = 350;
-                ctx.hen.acc = 0;
+            if (what == TRIGGER_HEN) {
+                addPasser(TRIGGER_HEN, trx - (VSCREEN_MAX_WIDTH / 2) - 32, 350);
                 startAnimation(ANIM_HEN);
             } else { //If not a hen, then trigger a passing car
-                ctx.car.x = tr.x - (VSCREEN_MAX_WIDTH / 2) - 128;
-                ctx.car.xvel = 1200;
-                ctx.car.type = tr.what;
-                ctx.car.threwPeel = false;
-                ctx.car.peelThrowX = tr.x + 72;
+                p = addPasser(what, trx - (VSCREEN_MAX_WIDTH / 2) - 128, 1200);
+                ctx.passers.peelThrowX[p] = trx + 72;
                 startAnimation(ANIM_CAR_WHEELS);
             }
 
-            tr.x = NONE;
+            ctx.nextTrigger++;
         }
     }
 
@@ -1334,15 +2406,14 @@ class Play {
     }
 
     //Checks if the player character has fallen into a deep hole on the ground
-    //and plays the fall sound effect if so
-    void handleFallSound() {
+    void handleFall() {
         Player pl = ctx.player;
         int plBottom = (int)pl.y + pl.height;
-        boolean inPassageway = (ctx.curPassageway != null);
+        boolean inPassageway = (ctx.curPassageway != NONE);
 
         if (!ctx.timeUp && !pl.fell && !inPassageway) {
             if (plBottom > FLOOR_Y + 8 && pl.yvel > 0) {
-                audio.playSfx(SFX_FALL);
+                ctx.events.push(EV_FELL, (int)pl.x, (int)pl.y, 0);
                 pl.fell = true;
             }
         }
@@ -1352,21 +2423,27 @@ class Play {
     //falling into a deep hole
     void handleRespawn() {
         int rx = 0, ry = 0;
-        int i;
+        int low = 0, high = ctx.numRespawnPoints;
 
         //No respawn on time up or if the player character's Y position is
         //above (lower than) 324
         if (ctx.timeUp || ctx.player.y < 324) return;
 
-        for (i = 0; i < MAX_RESPAWN_POINTS; i++) {
-            RespawnPoint rp = ctx.respawnPoints[i];
+        //Binary search for the last respawn point that is not to the right of
+        //the player character
+        while (low < high) {
+            int mid = (low + high) / 2;
 
-            //Leave the loop on the first respawn point that does not exist or
-            //is to the right of the player character
-            if (rp.x == NONE || rp.x > ctx.player.x) break;
+            if (ctx.respawnPoints.x[mid] > ctx.player.x) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
 
-            rx = rp.x;
-            ry = rp.y;
+        if (low > 0) {
+            rx = ctx.respawnPoints.x[low - 1];
+            ry = ctx.respawnPoints.y[low - 1];
         }
 
         ctx.player.x = rx;
@@ -1382,8 +2459,7 @@ class Play {
             ctx.cam.xvel = -CAMERA_XVEL;
         }
 
-        audio.stopSfx(SFX_FALL);
-        audio.playSfx(SFX_RESPAWN);
+        ctx.events.push(EV_RESPAWNED, rx, ry, 0);
     }
 
     //Acts if the player character's state has changed
@@ -1457,7 +2533,7 @@ class Play {
 
         //Horizontal camera movement
         if (cam.xvel != 0) {
-            cam.x += cam.xvel * deltaTime;
+            cam.x = integrate(cam.x, cam.xvel);
 
             if (cam.xvel > 0 && cam.x >= cam.xdest) {
                 cam.xvel = 0;
@@ -1468,7 +2544,7 @@ class Play {
 
         //Vertical camera movement
         if (cam.yvel != 0) {
-            cam.y += cam.yvel * deltaTime;
+            cam.y = integrate(cam.y, cam.yvel);
             if (cam.yvel < 0 && cam.y <= 0) {
                 cam.y = 0;
                 cam.yvel = 0;
@@ -1535,55 +2611,34 @@ class Play {
         }
     }
 
-    //Updates all animations
+    //Advances the clock animation frames are derived from and sets the
+    //speed of the bus wheels
     void updateAnimations() {
-        int i;
+        Anim wheels = ctx.anims[ANIM_BUS_WHEELS];
+        float frameTime = 0;
 
-        //Set animation speed for bus wheels
-        ctx.anims[ANIM_BUS_WHEELS].running = false;
         if (ctx.bus.xvel > 0) {
-            float maxDelay = 0.1f;
-            if (ctx.bus.xvel > 64)  maxDelay = 0.05f;
-            if (ctx.bus.xvel > 128) maxDelay = 0.025f;
-
-            ctx.anims[ANIM_BUS_WHEELS].running = true;
-            ctx.anims[ANIM_BUS_WHEELS].maxDelay = maxDelay;
-
-            if (ctx.anims[ANIM_BUS_WHEELS].delay > maxDelay) {
-                ctx.anims[ANIM_BUS_WHEELS].delay = maxDelay;
-            }
+            frameTime = 0.1f;
+            if (ctx.bus.xvel > 64)  frameTime = 0.05f;
+            if (ctx.bus.xvel > 128) frameTime = 0.025f;
         }
 
-        //Update animations
-        for (i = 0; i < NUM_ANIMS; i++) {
-            Anim anim = ctx.anims[i];
-
-            if (!anim.running) continue;
-
-            anim.delay -= deltaTime;
-            if (anim.delay > 0) continue;
-
-            anim.delay = anim.maxDelay;
-
-            if (anim.reverse) {
-                anim.frame--;
-
-                if (anim.frame < 0) {
-                    anim.frame = anim.loop ? anim.numFrames - 1 : 0;
-                }
-            } else {
-                anim.frame++;
-
-                if (anim.frame >= anim.numFrames) {
-                    anim.frame = anim.loop ? 0 : anim.numFrames - 1;
-                }
+        if (frameTime == 0) {
+            if (wheels.running) {
+                stopAnimation(ANIM_BUS_WHEELS, animFrame(ctx, ANIM_BUS_WHEELS));
             }
+        } else if (!wheels.running || wheels.frameTime != frameTime) {
+            continueAnimation(ANIM_BUS_WHEELS, animFrame(ctx, ANIM_BUS_WHEELS),
+                                                                    frameTime);
         }
+
+        ctx.clock += deltaTime;
     }
 
     //Moves the arrows indicating that a crate is pushable
     void movePushArrow() {
-        ctx.pushArrow.xoffs += ctx.pushArrow.xvel * deltaTime;
+        ctx.pushArrow.xoffs = integrate(ctx.pushArrow.xoffs,
+                                                ctx.pushArrow.xvel);
         if (ctx.pushArrow.xoffs >= 8) {
             ctx.pushArrow.xoffs = 8;
             ctx.pushArrow.xvel = -32;
@@ -1622,12 +2677,6 @@ class Play {
         ctx.poleX = camx - (camx % POLE_DISTANCE) + 16;
     }
 
-    //Sets the offset of the background image based on the position of the
-    //camera
-    void applyBackgroundOffset() {
-        ctx.bgOffsetX = (int)ctx.cam.x % 96;
-    }
-
     //Updates the sequences, like the player character entering the bus when
     //the level's goal is reached
     //
@@ -1637,7 +2686,13 @@ class Play {
         Player pl = ctx.player;
         Bus bus = ctx.bus;
         Camera cam = ctx.cam;
+        Passers passers = ctx.passers;
         int levelSize = ctx.levelSize;
+        int i;
+
+        //Traffic jam and hen of the ending sequence
+        int jam = ctx.trafficJam;
+        int hen = ctx.endingHen;
 
         //Cutscene objects
         CutsceneObject cutscenePlayer = ctx.cutsceneObjects[0];
@@ -1647,10 +2702,6 @@ class Play {
         CutsceneObject flagman = ctx.cutsceneObjects[1];
 
         //Cutscene object animations
-        Anim cutscenePlayerAnim = ctx.anims[ANIM_CUTSCENE_OBJECTS + 0];
-        Anim beardedManAnim = ctx.anims[ANIM_CUTSCENE_OBJECTS + 1];
-        Anim birdAnim = ctx.anims[ANIM_CUTSCENE_OBJECTS + 1];
-        Anim flagmanAnim = ctx.anims[ANIM_CUTSCENE_OBJECTS + 1];
 
         ctx.sequenceDelay -= deltaTime;
         if (ctx.sequenceDelay > 0) return;
@@ -1705,8 +2756,8 @@ class Play {
             case 10: //SEQ_INITIAL
                 if (ctx.levelNum != LVLNUM_ENDING) {
                     //Start with bus rear door open
-                    ctx.anims[ANIM_BUS_DOOR_REAR].frame = 3;
                     ctx.anims[ANIM_BUS_DOOR_REAR].reverse = true;
+                    stopAnimation(ANIM_BUS_DOOR_REAR, 3);
                 }
 
                 ignoreUserInput = true;
@@ -1756,11 +2807,16 @@ class Play {
             //------------------------------------------------------------------
             case 30: //SEQ_TIMEUP_BUS_NEAR
                 //Camera moves towards the bus
-                if (ctx.hen.x != NONE && ctx.hen.x - cam.x < -32) {
-                    ctx.hen.x = NONE;
+                for (i = passers.numLive - 1; i >= 0; i--) {
+                    int p = passers.live[i];
+
+                    if (passers.type[p] == TRIGGER_HEN
+                            && passers.x[p] - cam.x < -32) {
+                        passers.free(p);
+                    }
                 }
-                if (ctx.car.x != NONE) break; //Wait until the car and hen are
-                if (ctx.hen.x != NONE) break; //not visible anymore
+                //Wait until the cars and hens are not visible anymore
+                if (passers.numLive > 0) break;
                 cam.followPlayer = false;
                 cam.xdest = levelSize;
                 cam.xvel = CAMERA_XVEL;
@@ -1784,8 +2840,7 @@ class Play {
                 cam.followPlayer = false;
                 cam.xvel = 0;
                 cam.yvel = 0;
-                ctx.car.x = NONE;
-                ctx.hen.x = NONE;
+                passers.clear();
                 ctx.wipeOut = true;
                 ctx.sequenceDelay = 0.6f;
                 ctx.sequenceStep++;
@@ -1814,17 +2869,18 @@ class Play {
                     if (ctx.levelNum == 3) {
                         if (pl.x > bus.x + 192) {
                             //A banana peel is thrown from the right side of the
-                            //screen
-                            ctx.objs[0].type = OBJ_BANANA_PEEL_MOVING;
-                            ctx.objs[0].x = levelSize;
-                            ctx.objs[0].y = BUS_Y + 72;
-                            ctx.thrownPeel.obj = 0;
-                            ctx.thrownPeel.x = ctx.objs[0].x;
-                            ctx.thrownPeel.y = ctx.objs[0].y;
-                            ctx.thrownPeel.xdest = (int)bus.x + 345;
-                            ctx.thrownPeel.xvel = -512;
-                            ctx.thrownPeel.yvel = 200;
-                            ctx.thrownPeel.grav = 500;
+                            //screen (if there is no room for it, the first
+                            //object, which is far behind, is reused)
+                            int peelObj;
+
+                            //Wait for a peel thrown by a car to land
+                            if (ctx.thrownPeels.numFree == 0) break;
+
+                            peelObj = ctx.objs.alloc();
+                            if (peelObj == NONE) peelObj = 0;
+
+                            throwPeel(peelObj, levelSize, BUS_Y + 72,
+                                    (int)bus.x + 345, -512, 200);
                             ctx.sequenceStep++;
                         }
                     } else if (ctx.levelNum == 4) {
@@ -1834,12 +2890,8 @@ class Play {
                             bird.x = cam.x - 16;
                             bird.y = 120;
                             bird.xvel = 304;
-                            birdAnim.running = true;
-                            birdAnim.frame = 0;
-                            birdAnim.numFrames = 4;
-                            birdAnim.delay = 0.1f;
-                            birdAnim.maxDelay = 0.1f;
-                            birdAnim.loop = true;
+                            setAnimation(ANIM_CUTSCENE_OBJECTS + 1, true, true,
+                                                            false, 4, 0.1f);
                             ctx.sequenceStep++;
                         }
                     } else {
@@ -1946,12 +2998,7 @@ class Play {
                 beardedMan.x = ctx.levelSize;
                 beardedMan.y = 203;
                 beardedMan.xvel = -150;
-                beardedManAnim.running = true;
-                beardedManAnim.frame = 0;
-                beardedManAnim.numFrames = 6;
-                beardedManAnim.delay = 0.1f;
-                beardedManAnim.maxDelay = 0.1f;
-                beardedManAnim.loop = true;
+                setAnimation(ANIM_CUTSCENE_OBJECTS + 1, true, true, false, 6, 0.1f);
                 ctx.sequenceStep++;
                 break;
 
@@ -1971,8 +3018,7 @@ class Play {
                     beardedMan.x = bus.x + 337;
                     beardedMan.xvel = 0;
                     beardedMan.acc = 0;
-                    beardedManAnim.frame = 0;
-                    beardedManAnim.numFrames = 1;
+                    setAnimation(ANIM_CUTSCENE_OBJECTS + 1, false, false, false, 1, 0);
                     ctx.anims[ANIM_BUS_DOOR_FRONT].reverse = false;
                     startAnimation(ANIM_BUS_DOOR_FRONT);
                     ctx.sequenceDelay = 0.5f;
@@ -2003,7 +3049,7 @@ class Play {
                 break;
 
             case 208:
-                ctx.anims[ANIM_BUS_DOOR_FRONT].reverse = true;
+                reverseAnimation(ANIM_BUS_DOOR_FRONT);
                 ctx.sequenceStep = SEQ_BUS_LEAVING;
                 break;
 
@@ -2095,12 +3141,7 @@ class Play {
 
             case 402:
                 //Player character cleans the dung
-                cutscenePlayerAnim.running = true;
-                cutscenePlayerAnim.frame = 0;
-                cutscenePlayerAnim.numFrames = 9;
-                cutscenePlayerAnim.delay = 0.2f;
-                cutscenePlayerAnim.maxDelay = 0.2f;
-                cutscenePlayerAnim.loop = false;
+                setAnimation(ANIM_CUTSCENE_OBJECTS + 0, true, false, false, 9, 0.2f);
                 ctx.sequenceDelay = 2.0f;
                 ctx.sequenceStep++;
                 break;
@@ -2161,11 +3202,7 @@ class Play {
                     cutscenePlayer.y = pl.y;
                     cutscenePlayer.xvel = 128;
                     cutscenePlayer.acc = 512;
-                    cutscenePlayerAnim.running = true;
-                    cutscenePlayerAnim.numFrames = 4;
-                    cutscenePlayerAnim.loop = true;
-                    cutscenePlayerAnim.delay = 0.1f;
-                    cutscenePlayerAnim.maxDelay = 0.1f;
+                    setAnimation(ANIM_CUTSCENE_OBJECTS + 0, true, true, false, 4, 0.1f);
                     ctx.sequenceStep++;
                 }
                 break;
@@ -2207,9 +3244,9 @@ class Play {
 
                 cam.x = VSCREEN_MAX_WIDTH + 24;
 
-                ctx.car.x = VSCREEN_MAX_WIDTH + 16;
-                ctx.car.type = TRAFFIC_JAM;
-                ctx.car.xvel = 0;
+                passers.clear();
+                ctx.trafficJam = addPasser(TRAFFIC_JAM,
+                        VSCREEN_MAX_WIDTH + 16, 0);
 
                 bus.x = VSCREEN_MAX_WIDTH + 16 - 408;
                 bus.xvel = 0;
@@ -2218,13 +3255,8 @@ class Play {
                 flagman.sprite = SPR_FLAGMAN;
                 flagman.x = VSCREEN_MAX_WIDTH * 2 + 32;
                 flagman.y = 180;
-                flagmanAnim.running = false;
-                flagmanAnim.loop = false;
-                flagmanAnim.reverse = false;
-                flagmanAnim.frame = 3;
-                flagmanAnim.numFrames = 4;
-                flagmanAnim.delay = 0.1f;
-                flagmanAnim.maxDelay = 0.1f;
+                setAnimation(ANIM_CUTSCENE_OBJECTS + 1, false, false, false, 4, 0.1f);
+                stopAnimation(ANIM_CUTSCENE_OBJECTS + 1, 3);
 
                 ctx.sequenceDelay = 1;
                 ctx.sequenceStep++;
@@ -2240,23 +3272,21 @@ class Play {
 
             case 802:
                 //Traffic jam starts moving
-                ctx.car.xvel = 64;
+                passers.xvel[jam] = 64;
                 bus.xvel = 64;
-                ctx.anims[ANIM_CAR_WHEELS].delay = 0.1f;
-                ctx.anims[ANIM_CAR_WHEELS].maxDelay = 0.1f;
+                ctx.anims[ANIM_CAR_WHEELS].frameTime = 0.1f;
                 startAnimation(ANIM_CAR_WHEELS);
                 ctx.sequenceStep++;
                 break;
 
             case 803:
-                if (ctx.car.x >= VSCREEN_MAX_WIDTH + 152) {
+                if (passers.x[jam] >= VSCREEN_MAX_WIDTH + 152) {
                     //Traffic jam stops
-                    ctx.car.x = VSCREEN_MAX_WIDTH + 152;
-                    ctx.car.xvel = 0;
-                    bus.x = ctx.car.x - 400;
+                    passers.x[jam] = VSCREEN_MAX_WIDTH + 152;
+                    passers.xvel[jam] = 0;
+                    bus.x = passers.x[jam] - 400;
                     bus.xvel = 0;
-                    ctx.anims[ANIM_CAR_WHEELS].running = false;
-                    ctx.anims[ANIM_CAR_WHEELS].frame = 0;
+                    stopAnimation(ANIM_CAR_WHEELS, 0);
                     ctx.sequenceDelay = 1;
                     ctx.sequenceStep++;
                 }
@@ -2269,11 +3299,7 @@ class Play {
                 cutscenePlayer.x = cam.x - 80;
                 cutscenePlayer.y = 204;
                 cutscenePlayer.xvel = 210;
-                cutscenePlayerAnim.running = true;
-                cutscenePlayerAnim.numFrames = 4;
-                cutscenePlayerAnim.loop = true;
-                cutscenePlayerAnim.delay = 0.1f;
-                cutscenePlayerAnim.maxDelay = 0.1f;
+                setAnimation(ANIM_CUTSCENE_OBJECTS + 0, true, true, false, 4, 0.1f);
                 ctx.sequenceStep++;
                 break;
 
@@ -2281,8 +3307,7 @@ class Play {
                 if (cutscenePlayer.x > flagman.x && !ctx.playerReachedFlagman) {
                     //Player character reaches the flagman, who swings the flag
                     ctx.playerReachedFlagman = true;
-                    flagmanAnim.frame = 0;
-                    flagmanAnim.running = true;
+                    startAnimation(ANIM_CUTSCENE_OBJECTS + 1);
                 }
                 if (cutscenePlayer.x >= cam.x + 304) {
                     //Player character decelerates
@@ -2305,8 +3330,7 @@ class Play {
                     cutscenePlayer.xvel = 0;
                     cutscenePlayer.acc = 0;
                     cutscenePlayer.sprite = SPR_PLAYER_STAND;
-                    cutscenePlayerAnim.running = false;
-                    cutscenePlayerAnim.frame = 0;
+                    stopAnimation(ANIM_CUTSCENE_OBJECTS + 0, 0);
                     ctx.sequenceDelay = 1;
                     ctx.sequenceStep++;
                 }
@@ -2314,21 +3338,20 @@ class Play {
 
             case 807:
                 //Traffic jam starts moving
-                ctx.car.xvel = 64;
+                passers.xvel[jam] = 64;
                 bus.xvel = 64;
                 startAnimation(ANIM_CAR_WHEELS);
                 ctx.sequenceStep++;
                 break;
 
             case 808:
-                if (ctx.car.x >= VSCREEN_MAX_WIDTH + 424) {
+                if (passers.x[jam] >= VSCREEN_MAX_WIDTH + 424) {
                     //Traffic jam stops
-                    ctx.car.x = VSCREEN_MAX_WIDTH + 424;
-                    ctx.car.xvel = 0;
-                    bus.x = ctx.car.x - 400;
+                    passers.x[jam] = VSCREEN_MAX_WIDTH + 424;
+                    passers.xvel[jam] = 0;
+                    bus.x = passers.x[jam] - 400;
                     bus.xvel = 0;
-                    ctx.anims[ANIM_CAR_WHEELS].running = false;
-                    ctx.anims[ANIM_CAR_WHEELS].frame = 0;
+                    stopAnimation(ANIM_CAR_WHEELS, 0);
                     ctx.sequenceDelay = 1;
                     ctx.sequenceStep++;
                 }
@@ -2336,35 +3359,32 @@ class Play {
 
             case 809:
                 //Hen appears from the left side of the screen
-                ctx.hen.x = cam.x - 64;
-                ctx.hen.xvel = 350;
+                ctx.endingHen = addPasser(TRIGGER_HEN, cam.x - 64, 350);
                 startAnimation(ANIM_HEN);
                 ctx.sequenceStep++;
                 break;
 
             case 810:
-                if (ctx.hen.x >= cam.x + 120) {
+                if (passers.x[hen] >= cam.x + 120) {
                     //Hen decelerates
-                    ctx.hen.x = cam.x + 120;
-                    ctx.hen.acc = -256;
+                    passers.x[hen] = cam.x + 120;
+                    passers.acc[hen] = -256;
                     ctx.sequenceStep++;
                 }
                 break;
 
             case 811:
-                if (ctx.hen.x > flagman.x && !ctx.henReachedFlagman) {
+                if (passers.x[hen] > flagman.x && !ctx.henReachedFlagman) {
                     //Hen reaches the flagman, who swings the flag
                     ctx.henReachedFlagman = true;
-                    flagmanAnim.frame = 0;
-                    flagmanAnim.running = true;
+                    startAnimation(ANIM_CUTSCENE_OBJECTS + 1);
                 }
-                if (ctx.hen.xvel <= 0 || ctx.hen.x >= cam.x + 352) {
+                if (passers.xvel[hen] <= 0 || passers.x[hen] >= cam.x + 352) {
                     //Hen stops
-                    ctx.hen.x = cam.x + 352;
-                    ctx.hen.xvel = 0;
-                    ctx.hen.acc = 0;
-                    ctx.anims[ANIM_HEN].running = false;
-                    ctx.anims[ANIM_HEN].frame = 1;
+                    passers.x[hen] = cam.x + 352;
+                    passers.xvel[hen] = 0;
+                    passers.acc[hen] = 0;
+                    stopAnimation(ANIM_HEN, 1);
                     ctx.sequenceDelay = 1;
                     ctx.sequenceStep++;
                 }
@@ -2372,7 +3392,7 @@ class Play {
 
             case 812:
                 //Traffic jam starts moving
-                ctx.car.xvel = 64;
+                passers.xvel[jam] = 64;
                 bus.xvel = 64;
                 startAnimation(ANIM_CAR_WHEELS);
                 ctx.sequenceStep++;
@@ -2382,16 +3402,14 @@ class Play {
                 if (bus.x >= cam.x - 60) {
                     //Bus reaches the flagman, who swings the flag
                     ctx.busReachedFlagman = true;
-                    flagmanAnim.frame = 0;
-                    flagmanAnim.running = true;
+                    startAnimation(ANIM_CUTSCENE_OBJECTS + 1);
 
                     //Traffic jam stops
-                    ctx.car.x = cam.x - 60 + 400;
-                    ctx.car.xvel = 0;
+                    passers.x[jam] = cam.x - 60 + 400;
+                    passers.xvel[jam] = 0;
                     bus.x = cam.x - 60;
                     bus.xvel = 0;
-                    ctx.anims[ANIM_CAR_WHEELS].running = false;
-                    ctx.anims[ANIM_CAR_WHEELS].frame = 0;
+                    stopAnimation(ANIM_CAR_WHEELS, 0);
                     startAnimation(ANIM_BUS_DOOR_FRONT);
                     ctx.sequenceDelay = 3;
                     ctx.sequenceStep++;
@@ -0,0 +1,104 @@
+/*
+ * Alex vs Bus
+ * Copyright (C) 2021-2023 M374LX
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.alexvsbus;
+
+import static org.alexvsbus.Defs.*;
+
+//Keeps track of which positions (handles) of a fixed-size array are in use
+//
+//A handle stays the same for as long as the entry is alive, so it can be
+//stored elsewhere (as in Gush.obj), while the handles of the live entries are
+//also kept packed at the start of live[], so that loops only need to visit
+//the entries that actually exist
+class Pool {
+    int capacity;
+
+    int live[]; //Handles of the live entries (only the first numLive are valid)
+    int livePos[]; //Position of each handle within live[] (NONE if free)
+    int numLive;
+
+    int freeList[]; //Handles available for allocation (used as a stack)
+    int numFree;
+
+    //--------------------------------------------------------------------------
+
+    Pool(int cap) {
+        capacity = cap;
+        live = new int[cap];
+        livePos = new int[cap];
+        freeList = new int[cap];
+
+        clear();
+    }
+
+    //Frees all entries
+    void clear() {
+        int i;
+
+        for (i = 0; i < capacity; i++) {
+            livePos[i] = NONE;
+
+            //Lower handles are at the top of the stack, so a pool that has
+            //just been cleared allocates handles in ascending order
+            freeList[i] = capacity - 1 - i;
+        }
+
+        numLive = 0;
+        numFree = capacity;
+    }
+
+    //Returns the handle of a newly allocated entry or NONE if the pool is full
+    int alloc() {
+        int h;
+
+        if (numFree == 0) return NONE;
+
+        numFree--;
+        h = freeList[numFree];
+
+        live[numLive] = h;
+        livePos[h] = numLive;
+        numLive++;
+
+        return h;
+    }
+
+    void free(int h) {
+        int pos = livePos[h];
+        int last;
+
+        if (pos == NONE) return;
+
+        //Move the last live handle to the position being vacated
+        numLive--;
+        last = live[numLive];
+        live[pos] = last;
+        livePos[last] = pos;
+
+        livePos[h] = NONE;
+        freeList[numFree] = h;
+        numFree++;
+    }
+
+    boolean isLive(int h) {
+        return livePos[h] != NONE;
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Alex vs Bus
+ * Copyright (C) 2021-2023 M374LX
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.alexvsbus;
+
+import static org.alexvsbus.Defs.*;
+
+import java.util.Locale;
+
+//Opt-in measurement of the time taken by each phase of Play.update() and
+//each part of Main.render() (PROF_* constants)
+//
+//Each section has a histogram of its durations, with one bucket for each
+//power of two nanoseconds, from which the summary is made. The most recent
+//PROF_TRACE_SIZE measurements are also kept, to be exported in the trace
+//event format of Chrome, which can be opened in chrome://tracing or
+//Perfetto
+//
+//Nothing is allocated before the profiler is enabled, and while it is
+//disabled, every call returns right away
+class Profiler {
+    static final String sectionNames[] = {
+        "storePrevPositions",          //PROF_STORE_PREV_POSITIONS
+        "beginUpdate",                 //PROF_BEGIN_UPDATE
+        "updateRemainingTime",         //PROF_UPDATE_REMAINING_TIME
+        "updateScoreCount",            //PROF_UPDATE_SCORE_COUNT
+        "moveObjects",                 //PROF_MOVE_OBJECTS
+        "handleCarThrownPeel",         //PROF_HANDLE_CAR_THROWN_PEEL
+        "movePlayer",                  //PROF_MOVE_PLAYER
+        "handleSolids",                //PROF_HANDLE_SOLIDS
+        "handlePassageways",           //PROF_HANDLE_PASSAGEWAYS
+        "handlePlayerInteractions",    //PROF_HANDLE_PLAYER_INTERACTIONS
+        "handleTriggers",              //PROF_HANDLE_TRIGGERS
+        "doPlayerStateSpecifics",      //PROF_DO_PLAYER_STATE_SPECIFICS
+        "handleFall",                  //PROF_HANDLE_FALL
+        "handleRespawn",               //PROF_HANDLE_RESPAWN
+        "handlePlayerStateChange",     //PROF_HANDLE_PLAYER_STATE_CHANGE
+        "moveCamera",                  //PROF_MOVE_CAMERA
+        "keepPlayerWithinLimits",      //PROF_KEEP_PLAYER_WITHIN_LIMITS
+        "handlePlayerAnimationChange", //PROF_HANDLE_PLAYER_ANIMATION_CHANGE
+        "updateAnimations",            //PROF_UPDATE_ANIMATIONS
+        "movePushArrow",               //PROF_MOVE_PUSH_ARROW
+        "positionBusStopSign",         //PROF_POSITION_BUS_STOP_SIGN
+        "positionLightPole",           //PROF_POSITION_LIGHT_POLE
+        "updateSequence",              //PROF_UPDATE_SEQUENCE
+        "updateStateHash",             //PROF_UPDATE_STATE_HASH
+        "tick",                        //PROF_TICK
+        "frame",                       //PROF_FRAME
+        "input",                       //PROF_INPUT
+        "dialogs",                     //PROF_DIALOGS
+        "play",                        //PROF_PLAY
+        "ghost",                       //PROF_GHOST
+        "wipe",                        //PROF_WIPE
+        "draw",                        //PROF_DRAW
+    };
+
+    boolean enabled;
+    long origin; //Time at which the profiler was enabled
+    long lapTime; //End of the last lap (see lap())
+    long sectionStart[];
+
+    //Statistics of each section
+    long count[];
+    long total[];
+    long max[];
+    long hist[]; //PROF_HIST_BUCKETS entries for each section
+
+    //Most recent measurements, as a ring
+    int traceSection[];
+    long traceStart[];
+    long traceDuration[];
+    int tracePos; //Where the next measurement goes
+    boolean traceWrapped;
+
+    //--------------------------------------------------------------------------
+
+    void enable() {
+        if (enabled) return;
+
+        sectionStart = new long[NUM_PROF_SECTIONS];
+        count = new long[NUM_PROF_SECTIONS];
+        total = new long[NUM_PROF_SECTIONS];
+        max = new long[NUM_PROF_SECTIONS];
+        hist = new long[NUM_PROF_SECTIONS * PROF_HIST_BUCKETS];
+
+        traceSection = new int[PROF_TRACE_SIZE];
+        traceStart = new long[PROF_TRACE_SIZE];
+        traceDuration = new long[PROF_TRACE_SIZE];
+
+        origin = System.nanoTime();
+        lapTime = origin;
+        enabled = true;
+    }
+
+    void start(int section) {
+        if (!enabled) return;
+
+        sectionStart[section] = System.nanoTime();
+    }
+
+    void end(int section) {
+        if (!enabled) return;
+
+        record(section, sectionStart[section], System.nanoTime());
+    }
+
+    //Starts a series of sections that run one right after the other, each
+    //ended by a call to lap(), which also starts the next one, so that only
+    //one reading of the time is needed between two sections
+    void mark() {
+        if (!enabled) return;
+
+        lapTime = System.nanoTime();
+    }
+
+    void lap(int section) {
+        long now;
+
+        if (!enabled) return;
+
+        now = System.nanoTime();
+        record(section, lapTime, now);
+        lapTime = now;
+    }
+
+    void record(int section, long start, long end) {
+        long duration = end - start;
+        int bucket = 0;
+
+        count[section]++;
+        total[section] += duration;
+        if (duration > max[section]) max[section] = duration;
+
+        if (duration > 0) {
+            bucket = 63 - Long.numberOfLeadingZeros(duration);
+            if (bucket >= PROF_HIST_BUCKETS) bucket = PROF_HIST_BUCKETS - 1;
+        }
+        hist[section * PROF_HIST_BUCKETS + bucket]++;
+
+        traceSection[tracePos] = section;
+        traceStart[tracePos] = start;
+        traceDuration[tracePos] = duration;
+        tracePos++;
+        if (tracePos == PROF_TRACE_SIZE) {
+            tracePos = 0;
+            traceWrapped = true;
+        }
+    }
+
+    //Returns the duration, in nanoseconds, below which the fraction p of the
+    //measurements of a section fall, rounded up to the end of a bucket
+    long percentile(int section, double p) {
+        long target = (long)Math.ceil(count[section] * p);
+        long seen = 0;
+        int b;
+
+        for (b = 0; b < PROF_HIST_BUCKETS - 1; b++) {
+            seen += hist[section * PROF_HIST_BUCKETS + b];
+            if (seen >= target) return 2L << b;
+        }
+
+        return max[section];
+    }
+
+    //Returns a table with the statistics of each section measured, with
+    //times in microseconds
+    String summary() {
+        StringBuilder sb = new StringBuilder();
+        int s;
+
+        if (!enabled) return "";
+
+        sb.append(String.format(Locale.ROOT, "%-28s %9s %9s %9s %9s %9s %11s%n",
+                "section", "count", "mean", "p50", "p99", "max", "total ms"));
+
+        for (s = 0; s < NUM_PROF_SECTIONS; s++) {
+            if (count[s] == 0) continue;
+
+            sb.append(String.format(Locale.ROOT,
+                    "%-28s %9d %9.2f %9.2f %9.2f %9.2f %11.2f%n",
+                    sectionNames[s], count[s],
+                    total[s] / 1e3 / count[s],
+                    percentile(s, 0.5) / 1e3,
+                    percentile(s, 0.99) / 1e3,
+                    max[s] / 1e3,
+                    total[s] / 1e6));
+        }
+
+        return sb.toString();
+    }
+
+    //Returns the most recent measurements as a JSON trace, in which each
+    //section is a complete event ("ph": "X") with times in microseconds
+    String trace() {
+        StringBuilder sb = new StringBuilder();
+        int num = traceWrapped ? PROF_TRACE_SIZE : tracePos;
+        int first = traceWrapped ? tracePos : 0;
+        int i;
+
+        sb.append("{\"traceEvents\":[\n");
+
+        for (i = 0; i < num; i++) {
+            int t = (first + i) % PROF_TRACE_SIZE;
+
+            if (i > 0) sb.append(",\n");
+            sb.append(String.format(Locale.ROOT,
+                    "{\"name\":\"%s\",\"ph\":\"X\",\"pid\":1,\"tid\":1,"
+                    + "\"ts\":%.3f,\"dur\":%.3f}",
+                    sectionNames[traceSection[t]],
+                    (traceStart[t] - origin) / 1e3,
+                    traceDuration[t] / 1e3));
+        }
+
+        sb.append("\n],\"displayTimeUnit\":\"ms\"}\n");
+
+        return sb.toString();
+    }
+}
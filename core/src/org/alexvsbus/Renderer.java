@@ -34,6 +34,7 @@ class Renderer {
     Config config;
     PlayCtx playCtx;
     DialogCtx dialogCtx;
+    Ghost ghost;
 
     boolean saveFailed;
 
@@ -45,6 +46,13 @@ class Renderer {
     int drawOffsetX;
     int drawOffsetY;
 
+    //Objects in PlayCtx.objs that are close enough to the camera to be drawn
+    ObjWindow drawWindow;
+
+    //How much of the next play session tick has elapsed (from 0 to 1), used
+    //to interpolate the positions of moving objects
+    float tickAlpha;
+
     //Temporary location for drawDigits()
     //
     //To prevent an instantiation each time the method is called and the
@@ -55,18 +63,21 @@ class Renderer {
 
     //--------------------------------------------------------------------------
 
-    Renderer(DisplayParams dp, Config cfg, PlayCtx pctx, DialogCtx dctx) {
+    Renderer(DisplayParams dp, Config cfg, PlayCtx pctx, DialogCtx dctx,
+                                                                Ghost gh) {
 
         displayParams = dp;
         config = cfg;
         playCtx = pctx;
         dialogCtx = dctx;
+        ghost = gh;
 
         textureRegion = new TextureRegion();
         mat = new Matrix4();
         spriteBatch = new SpriteBatch();
 
         digitsTemp = new int[12];
+        drawWindow = new ObjWindow();
 
         //Clear screen
         Gdx.gl.glClearColor(0, 0, 0, 1);
@@ -148,6 +159,10 @@ class Renderer {
         }
     }
 
+    void setTickAlpha(float alpha) {
+        tickAlpha = alpha;
+    }
+
     void showSaveError(boolean show) {
         saveFailed = show;
     }
@@ -168,19 +183,31 @@ class Renderer {
 
     void drawPlay() {
         PlayCtx ctx = playCtx;
+        Objs objs = ctx.objs;
+        ObjIndex index = ctx.objIndex;
+        Passers passers = ctx.passers;
+        ObjWindow win = drawWindow;
 
         int vscreenWidth  = displayParams.vscreenWidth;
         int vscreenHeight = displayParams.vscreenHeight;
 
         int x, y, spr, frame;
-        int camy, topcamy; //Current and topmost camera Y position
-        int i;
+        int camx, camy; //Camera position
+        int topcamy; //Topmost camera Y position
+        int busx, plx, ply;
+        int i, k;
+
+        //Positions of moving objects between the previous tick and the
+        //current one
+        camx = (int)interpolate(ctx.cam.prevx, ctx.cam.x);
+        camy = (int)interpolate(ctx.cam.prevy, ctx.cam.y);
+        busx = (int)interpolate(ctx.bus.prevx, ctx.bus.x);
+        plx  = (int)interpolate(ctx.player.prevx, ctx.player.x);
+        ply  = (int)interpolate(ctx.player.prevy, ctx.player.y);
 
         //Background color
         drawSpriteStretch(ctx.bgColor, 0, 0, vscreenWidth, vscreenHeight);
 
-        camy = (int)ctx.cam.y;
-
         //Determine topmost camera Y position from virtual screen (vscreen)
         //height
         topcamy = 0;
@@ -195,22 +222,26 @@ class Renderer {
         drawOffsetY = camy - (vscreenHeight - VSCREEN_MAX_HEIGHT);
 
         //Background image
-        drawSpriteRepeat(SPR_BACKGROUND, -ctx.bgOffsetX, BACKGROUND_DRAW_Y, 6, 1);
+        drawSpriteRepeat(SPR_BACKGROUND, -(camx % 96), BACKGROUND_DRAW_Y, 6, 1);
 
-        drawOffsetX = (int)ctx.cam.x;
+        drawOffsetX = camx;
         if (vscreenWidth <= 320 && ctx.levelNum == LVLNUM_ENDING) {
             drawOffsetX += 168;
         }
 
+        //Determine which objects in PlayCtx.objs may be visible
+        index.slide(win, drawOffsetX - OBJ_DRAW_MARGIN, drawOffsetX + vscreenWidth);
+
         //Deep holes and passageways (background part)
-        for (i = 0; i < MAX_HOLES; i++) {
-            int w = ctx.holes[i].width;
+        for (k = 0; k < ctx.holes.numLive; k++) {
+            i = ctx.holes.live[k];
+            int w = ctx.holes.width[i];
 
-            x = ctx.holes[i].x;
+            x = ctx.holes.x[i];
             y = BACKGROUND_DRAW_Y + 72;
 
             if (x != NONE) {
-                int type = ctx.holes[i].type;
+                int type = ctx.holes.type[i];
                 boolean isDeep = (type == HOLE_DEEP);
                 boolean exitOpened = (type == HOLE_PASSAGEWAY_EXIT_OPENED);
 
@@ -224,7 +255,7 @@ class Renderer {
                 drawSpriteRepeat(spr, x, y, w - 2, 1);
 
                 //Right
-                x = ctx.holes[i].x + ((w - 1) * LEVEL_BLOCK_SIZE);
+                x = ctx.holes.x[i] + ((w - 1) * LEVEL_BLOCK_SIZE);
                 spr = (isDeep ? SPR_DEEP_HOLE_RIGHT : SPR_PASSAGEWAY_RIGHT);
                 drawSprite(spr, x, y, 0);
 
@@ -237,7 +268,7 @@ class Renderer {
         }
 
         //Bus body, wheels, and route sign
-        x = (int)ctx.bus.x;
+        x = busx;
         y = BUS_Y;
         drawSprite(SPR_BUS, x, y, 0);
         if (ctx.bus.routeSign != NONE) {
@@ -254,7 +285,7 @@ class Renderer {
                 drawSprite(SPR_BUS_ROUTE, x + 308, y + 48, frame);
             }
         }
-        frame = ctx.anims[ANIM_BUS_WHEELS].frame;
+        frame = Play.animFrame(ctx, ANIM_BUS_WHEELS);
         drawSprite(SPR_BUS_WHEEL, x + 104, y + 80, frame);
         drawSprite(SPR_BUS_WHEEL, x + 296, y + 80, frame);
 
@@ -276,38 +307,47 @@ class Renderer {
             if (cobj.sprite == NONE || !cobj.inBus) continue;
 
             spr = cobj.sprite;
-            x = (int)cobj.x + (int)ctx.bus.x;
+            x = (int)cobj.x + busx;
             y = (int)cobj.y;
-            frame = ctx.anims[ANIM_CUTSCENE_OBJECTS + i].frame;
+            frame = Play.animFrame(ctx, ANIM_CUTSCENE_OBJECTS + i);
             drawSprite(spr, x, y, frame);
         }
 
         //Bus doors
-        x = (int)ctx.bus.x;
+        x = busx;
         y = BUS_Y;
-        frame = ctx.anims[ANIM_BUS_DOOR_REAR].frame;
+        frame = Play.animFrame(ctx, ANIM_BUS_DOOR_REAR);
         drawSprite(SPR_BUS_DOOR, x + 64,  y + 16, frame);
-        frame = ctx.anims[ANIM_BUS_DOOR_FRONT].frame;
+        frame = Play.animFrame(ctx, ANIM_BUS_DOOR_FRONT);
         drawSprite(SPR_BUS_DOOR, x + 344, y + 16, frame);
 
-        //Passing car and ending sequence traffic jam
-        if (ctx.car.x != NONE) {
-            int numCars;
+        //Passing cars, hens, and ending sequence traffic jam
+        for (k = 0; k < passers.numLive; k++) {
+            int type, numCars;
+
+            i = passers.live[k];
+            type = passers.type[i];
+            x = (int)interpolate(passers.prevx[i], passers.x[i]);
+
+            if (type == TRIGGER_HEN) {
+                frame = Play.animFrame(ctx, ANIM_HEN);
+                drawSprite(SPR_HEN, x, HEN_Y, frame);
+                continue;
+            }
 
-            x = (int)ctx.car.x;
             y = PASSING_CAR_Y;
-            frame = ctx.anims[ANIM_CAR_WHEELS].frame;
+            frame = Play.animFrame(ctx, ANIM_CAR_WHEELS);
 
-            if (ctx.car.type == TRAFFIC_JAM) { //Traffic jam
+            if (type == TRAFFIC_JAM) { //Traffic jam
                 numCars = 6;
                 spr = SPR_CAR_BLUE;
             } else { //Single car
                 numCars = 1;
 
                 spr = SPR_CAR_BLUE;
-                if (ctx.car.type == CAR_SILVER) {
+                if (type == CAR_SILVER) {
                     spr = SPR_CAR_SILVER;
-                } else if (ctx.car.type == CAR_YELLOW) {
+                } else if (type == CAR_YELLOW) {
                     spr = SPR_CAR_YELLOW;
                 }
             }
@@ -328,12 +368,6 @@ class Renderer {
             }
         }
 
-        //Hen
-        if (ctx.hen.x != NONE) {
-            frame = ctx.anims[ANIM_HEN].frame;
-            drawSprite(SPR_HEN, (int)ctx.hen.x, HEN_Y, frame);
-        }
-
         //Light poles (at most two are visible)
         drawSprite(SPR_POLE, ctx.poleX, POLE_Y, 0);
         drawSprite(SPR_POLE, ctx.poleX + POLE_DISTANCE, POLE_Y, 0);
@@ -352,53 +386,61 @@ class Renderer {
             }
         }
 
-        //Objects that use PlayCtx.objs[] and are drawn behind the player
+        //Objects that use PlayCtx.objs and are drawn behind the player
         //character
-        for (i = 0; i < MAX_OBJS; i++) {
-            Obj obj = ctx.objs[i];
+        for (k = win.first; k < win.last; k++) {
+            int type;
+
+            i = index.order[k];
+            type = objs.type[i];
 
             //Ignore inexistent objects
-            if (obj.type == NONE) continue;
+            if (type == NONE) continue;
 
             //Skip objects that are drawn in front of the player character, as
             //those will be drawn later
-            if (obj.type == OBJ_COIN_SILVER) continue;
-            if (obj.type == OBJ_COIN_GOLD) continue;
-            if (obj.type == OBJ_BANANA_PEEL) continue;
-            if (obj.type == OBJ_BANANA_PEEL_MOVING) continue;
+            if (type == OBJ_COIN_SILVER) continue;
+            if (type == OBJ_COIN_GOLD) continue;
+            if (type == OBJ_BANANA_PEEL) continue;
+            if (type == OBJ_BANANA_PEEL_MOVING) continue;
 
-            if (obj.type == OBJ_GUSH) {
+            if (type == OBJ_GUSH) {
                 int w = Data.sprites[SPR_GUSH * 4 + 2];
-                int h = 265 - obj.y;
+                int h = 265 - objs.y[i];
                 if (h <= 0) h = 1;
 
-                frame = ctx.anims[ANIM_GUSHES].frame;
+                frame = Play.animFrame(ctx, ANIM_GUSHES);
 
-                drawSpritePart(SPR_GUSH, obj.x, obj.y, frame * w, 0, w, h);
+                drawSpritePart(SPR_GUSH, objs.x[i], objs.y[i], frame * w, 0, w, h);
 
                 //Gush hole
-                drawSprite(SPR_GUSH_HOLE, obj.x, 263, 0);
+                drawSprite(SPR_GUSH_HOLE, objs.x[i], 263, 0);
             } else {
                 frame = 0;
 
-                if (obj.type == OBJ_SPRING) {
+                if (type == OBJ_SPRING) {
                     frame = 5;
 
                     if (i == ctx.hitSpring) {
-                        frame = ctx.anims[ANIM_HIT_SPRING].frame;
+                        frame = Play.animFrame(ctx, ANIM_HIT_SPRING);
                     }
                 }
 
-                drawSprite(Data.objSprites[obj.type], obj.x, obj.y, frame);
+                drawSprite(Data.objSprites[type], objs.x[i], objs.y[i], frame);
             }
         }
 
+        //Ghost, behind the player character
+        if (ghost.visible()) {
+            drawGhost();
+        }
+
         //Player character
         if (ctx.player.visible) {
             spr = Data.playerAnimSprites[ctx.player.animType];
-            x = (int)ctx.player.x;
-            y = (int)ctx.player.y;
-            frame = ctx.anims[ANIM_PLAYER].frame;
+            x = plx;
+            y = ply;
+            frame = Play.animFrame(ctx, ANIM_PLAYER);
             drawSprite(spr, x, y, frame);
         }
 
@@ -411,7 +453,7 @@ class Renderer {
             spr = cobj.sprite;
             x = (int)cobj.x;
             y = (int)cobj.y;
-            frame = ctx.anims[ANIM_CUTSCENE_OBJECTS + i].frame;
+            frame = Play.animFrame(ctx, ANIM_CUTSCENE_OBJECTS + i);
             drawSprite(spr, x, y, frame);
         }
 
@@ -427,30 +469,32 @@ class Renderer {
             drawSprite(SPR_MEDAL1, x, y, 0);
         }
         if (ctx.henReachedFlagman) {
-            x = (int)ctx.hen.x;
+            i = ctx.endingHen;
+            x = (int)interpolate(passers.prevx[i], passers.x[i]);
             y = 184;
             drawSprite(SPR_MEDAL2, x, y, 0);
         }
         if (ctx.busReachedFlagman) {
-            x = (int)ctx.bus.x + 343;
+            x = busx + 343;
             y = 120;
             drawSprite(SPR_MEDAL3, x, y, 0);
         }
 
         //Deep holes and passageways (foreground part)
-        for (i = 0; i < MAX_HOLES; i++) {
-            x = ctx.holes[i].x;
+        for (k = 0; k < ctx.holes.numLive; k++) {
+            i = ctx.holes.live[k];
+            x = ctx.holes.x[i];
             y = BACKGROUND_DRAW_Y + 88;
 
             if (x != NONE) {
-                if (ctx.holes[i].type == HOLE_DEEP) {
+                if (ctx.holes.type[i] == HOLE_DEEP) {
                     drawSprite(SPR_DEEP_HOLE_LEFT_FG, x, y, 0);
                 } else {
                     //Left
                     drawSprite(SPR_PASSAGEWAY_LEFT_FG, x, y, 0);
 
                     //Right
-                    x += (ctx.holes[i].width - 1) * LEVEL_BLOCK_SIZE;
+                    x += (ctx.holes.width[i] - 1) * LEVEL_BLOCK_SIZE;
                     drawSprite(SPR_PASSAGEWAY_RIGHT_FG, x, y, 0);
                 }
             }
@@ -463,31 +507,34 @@ class Renderer {
 
             if (state == PLAYER_STATE_SLIP || state == PLAYER_STATE_GETUP) {
                 spr = Data.playerAnimSprites[ctx.player.animType];
-                x = (int)ctx.player.x;
-                y = (int)ctx.player.y;
-                frame = ctx.anims[ANIM_PLAYER].frame;
+                x = plx;
+                y = ply;
+                frame = Play.animFrame(ctx, ANIM_PLAYER);
                 drawSprite(spr, x, y, frame);
             }
         }
 
-        //Objects that use PlayCtx.objs[] and are drawn in front of the player
+        //Objects that use PlayCtx.objs and are drawn in front of the player
         //character
-        for (i = 0; i < MAX_OBJS; i++) {
-            Obj obj = ctx.objs[i];
+        for (k = win.first; k < win.last; k++) {
+            int type;
+
+            i = index.order[k];
+            type = objs.type[i];
 
-            if (obj.type == OBJ_BANANA_PEEL) {
+            if (type == OBJ_BANANA_PEEL) {
                 frame = 0;
-            } else if (obj.type == OBJ_BANANA_PEEL_MOVING) {
+            } else if (type == OBJ_BANANA_PEEL_MOVING) {
                 frame = 0;
-            } else if (obj.type == OBJ_COIN_SILVER) {
-                frame = ctx.anims[ANIM_COINS].frame;
-            } else if (obj.type == OBJ_COIN_GOLD) {
-                frame = ctx.anims[ANIM_COINS].frame;
+            } else if (type == OBJ_COIN_SILVER) {
+                frame = Play.animFrame(ctx, ANIM_COINS);
+            } else if (type == OBJ_COIN_GOLD) {
+                frame = Play.animFrame(ctx, ANIM_COINS);
             } else {
                 continue;
             }
 
-            drawSprite(Data.objSprites[obj.type], obj.x, obj.y, frame);
+            drawSprite(Data.objSprites[type], objs.x[i], objs.y[i], frame);
         }
 
         //Pushable crate arrows
@@ -495,7 +542,7 @@ class Renderer {
             PushableCrate crate = ctx.pushableCrates[i];
 
             if (crate.obj != NONE && crate.showArrow) {
-                x = ctx.objs[crate.obj].x - 24 + (int)ctx.pushArrow.xoffs;
+                x = objs.x[crate.obj] - 24 + (int)ctx.pushArrow.xoffs;
                 y = FLOOR_Y - 20;
 
                 drawSprite(SPR_PUSH_ARROW, x, y, 0);
@@ -503,46 +550,33 @@ class Renderer {
         }
 
         //Overhead sign bases
-        for (i = 0; i < MAX_OBJS; i++) {
-            Obj obj = ctx.objs[i];
+        for (k = win.first; k < win.last; k++) {
             int h;
 
-            if (obj.type == OBJ_OVERHEAD_SIGN) {
+            i = index.order[k];
+
+            if (objs.type[i] == OBJ_OVERHEAD_SIGN) {
                 spr = SPR_OVERHEAD_SIGN_BASE_TOP;
-                x = obj.x + 16;
-                y = obj.y + 8;
+                x = objs.x[i] + 16;
+                y = objs.y[i] + 8;
                 drawSprite(spr, x, y, 0);
 
                 spr = SPR_OVERHEAD_SIGN_BASE;
-                x = obj.x + 24;
-                y = obj.y + 32;
+                x = objs.x[i] + 24;
+                y = objs.y[i] + 32;
                 h = 272 - y;
                 drawSpritePart(spr, x, y, 0, 320 - h, 8, h);
             }
         }
 
-        //Crack particles
-        for (i = 0; i < MAX_CRACK_PARTICLES; i++) {
-            x = (int)ctx.crackParticles[i].x;
-            y = (int)ctx.crackParticles[i].y;
-            frame = ctx.anims[ANIM_CRACK_PARTICLES].frame;
-
-            if (x != NONE) {
-                drawSprite(SPR_CRACK_PARTICLE, x, y, frame);
-            }
-        }
-
-        //Coin sparks
-        for (i = 0; i < MAX_COIN_SPARKS; i++) {
-            x = ctx.coinSparks[i].x;
-            y = ctx.coinSparks[i].y;
+        //Particles
+        for (i = 0; i < ctx.particles.count; i++) {
+            x = (int)ctx.particles.x[i];
+            y = (int)ctx.particles.y[i];
+            spr = Data.particleSprites[ctx.particles.type[i]];
+            frame = Play.particleFrame(ctx, i);
 
-            if (x != NONE) {
-                boolean gold = ctx.coinSparks[i].gold;
-                spr = gold ? SPR_COIN_SPARK_GOLD : SPR_COIN_SPARK_SILVER;
-                frame = ctx.anims[ANIM_COIN_SPARKS + i].frame;
-                drawSprite(spr, x, y, frame);
-            }
+            drawSprite(spr, x, y, frame);
         }
 
         //Reset draw offset
@@ -550,6 +584,29 @@ class Renderer {
         drawOffsetY = 0;
     }
 
+    //Draws the player character of the ghost, whose play session runs in
+    //lockstep with the live one, so it is interpolated in the same way
+    void drawGhost() {
+        Player pl = ghost.ctx.player;
+        int spr = Data.playerAnimSprites[pl.animType];
+        int x = (int)interpolate(pl.prevx, pl.x);
+        int y = (int)interpolate(pl.prevy, pl.y);
+        int frame = Play.animFrame(ghost.ctx, ANIM_PLAYER);
+
+        spriteBatch.setColor(1, 1, 1, GHOST_OPACITY);
+        drawSprite(spr, x, y, frame);
+        spriteBatch.setColor(1, 1, 1, 1); //Reset opacity
+    }
+
+    //Returns a position between the one at the end of the previous tick and
+    //the current one, according to tickAlpha
+    float interpolate(float prev, float cur) {
+        //Objects that have just appeared or disappeared are not interpolated
+        if (prev == NONE || cur == NONE) return cur;
+
+        return prev + (cur - prev) * tickAlpha;
+    }
+
     void drawHud() {
         int x, h;
 
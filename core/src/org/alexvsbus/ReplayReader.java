@@ -0,0 +1,266 @@
+/*
+ * Alex vs Bus
+ * Copyright (C) 2021-2023 M374LX
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.alexvsbus;
+
+import static org.alexvsbus.Defs.*;
+
+import java.io.InputStream;
+
+//Feeds a replay recorded by ReplayWriter (which describes the file format)
+//back into a play session, reading the file as it goes
+//
+//Usage: call open(), set PlayCtx.score to the initial score, load and start
+//the level described by the header fields, then call step() until it returns
+//false (the score needs to be set first, as it is part of the state hash
+//recorded for the first tick)
+class ReplayReader {
+    InputStream in;
+    boolean invalid; //Set if the replay cannot be read or is malformed
+    boolean ended; //Set once REPLAY_END has been read
+
+    //Header
+    int levelNum;
+    int difficulty;
+    int flags; //REPLAY_FLAG_* constants
+    int vscreenWidth;
+    int score; //Initial score
+
+    //Results recorded at the end of the run, valid once ended is set
+    int finalScore;
+    int finalTime;
+    boolean finalGoalReached;
+
+    int input; //INPUT_* bitfield of the current run
+    int runRemaining; //Ticks left in the current run
+    int ticks; //Number of ticks run so far
+
+    //State hashes of the ticks in the current run at which one was taken
+    //(see ReplayWriter), the next one to be checked being at hashPos
+    int hashes[];
+    int numHashes;
+    int hashPos;
+
+    //Tick before which the state hash first differed from the recorded one
+    //(NONE if it never did) and the last tick before which it matched, so
+    //the divergence happened during one of the ticks in between
+    int divergedTick;
+    int matchedTick;
+
+    //--------------------------------------------------------------------------
+
+    //Reads the header and returns false if the replay cannot be used
+    boolean open(InputStream i) {
+        in = i;
+        invalid = false;
+        ended = false;
+        runRemaining = 0;
+        ticks = 0;
+        if (hashes == null) {
+            hashes = new int[REPLAY_MAX_PENDING_HASHES];
+        }
+        numHashes = 0;
+        hashPos = 0;
+        divergedTick = NONE;
+        matchedTick = NONE;
+
+        if (readByte() != 'A' || readByte() != 'V') invalid = true;
+        if (readByte() != 'B' || readByte() != 'R') invalid = true;
+        if (readByte() != REPLAY_VERSION) invalid = true;
+        if (invalid) return false;
+
+        levelNum = readVarint();
+        difficulty = readVarint();
+        flags = readVarint();
+
+        //Ticks of a different length would not reproduce the same run
+        if (readVarint() != TICK_RATE) invalid = true;
+
+        vscreenWidth = readVarint();
+        score = readVarint();
+
+        if (difficulty < 0 || difficulty > DIFFICULTY_MAX) invalid = true;
+
+        return !invalid;
+    }
+
+    boolean skipInitialSequence() {
+        return (flags & REPLAY_FLAG_SKIP_INITIAL_SEQUENCE) > 0;
+    }
+
+    boolean fixedPoint() {
+        return (flags & REPLAY_FLAG_FIXED_POINT) > 0;
+    }
+
+    //Runs the next tick of the play session and returns true, or returns
+    //false if the replay has ended or is malformed
+    boolean step(Play play) {
+        while (runRemaining == 0) {
+            int b;
+
+            if (invalid || ended) return false;
+
+            b = readByte();
+
+            if (b == REPLAY_END) {
+                finalScore = readVarint();
+                finalTime = readVarint();
+                finalGoalReached = (readByte() == 1);
+                ended = !invalid;
+                return false;
+            } else if (b == REPLAY_HASH) {
+                readHash();
+            } else if (b == REPLAY_SCREEN_WIDTH) {
+                play.displayParams.vscreenWidth = readVarint();
+                play.adaptToScreenSize();
+            } else if (b >= 0 && b <= (REPLAY_INPUT_MASK >> REPLAY_INPUT_SHIFT)) {
+                input = (b << REPLAY_INPUT_SHIFT);
+                runRemaining = readVarint();
+            } else {
+                invalid = true;
+            }
+        }
+
+        if (ticks % REPLAY_HASH_INTERVAL == 0) {
+            checkHash(play.ctx.stateHash);
+        }
+
+        runRemaining--;
+        ticks++;
+
+        play.setInput(input);
+        play.update(TICK_DT);
+
+        return true;
+    }
+
+    //Skips the rest of the replay without running it, only to read the
+    //results recorded at its end, and returns false if it is malformed
+    boolean readResults() {
+        int i;
+
+        while (!invalid) {
+            int b = readByte();
+
+            if (b == REPLAY_END) {
+                finalScore = readVarint();
+                finalTime = readVarint();
+                finalGoalReached = (readByte() == 1);
+                ended = !invalid;
+                break;
+            } else if (b == REPLAY_HASH) {
+                for (i = 0; i < 4; i++) readByte();
+            } else if (b == REPLAY_SCREEN_WIDTH) {
+                readVarint();
+            } else if (b >= 0 && b <= (REPLAY_INPUT_MASK >> REPLAY_INPUT_SHIFT)) {
+                readVarint();
+            } else {
+                invalid = true;
+            }
+        }
+
+        return ended;
+    }
+
+    //Returns true if the re-simulation has diverged from the recorded run
+    boolean diverged() {
+        return divergedTick != NONE;
+    }
+
+    //--------------------------------------------------------------------------
+
+    void readHash() {
+        int recorded = 0;
+        int i;
+
+        for (i = 0; i < 4; i++) {
+            recorded = (recorded << 8) | (readByte() & 0xFF);
+        }
+
+        //The hashes of the previous run have all been checked
+        if (hashPos == numHashes) {
+            numHashes = 0;
+            hashPos = 0;
+        }
+
+        if (numHashes == REPLAY_MAX_PENDING_HASHES) {
+            invalid = true;
+            return;
+        }
+
+        hashes[numHashes] = recorded;
+        numHashes++;
+    }
+
+    //Compares the state hash before the tick about to be run with the one
+    //recorded for it, if any
+    void checkHash(long stateHash) {
+        int recorded;
+
+        if (hashPos == numHashes) return;
+
+        recorded = hashes[hashPos];
+        hashPos++;
+
+        if (invalid || divergedTick != NONE) return;
+
+        if (recorded == ReplayWriter.foldHash(stateHash)) {
+            matchedTick = ticks;
+        } else {
+            divergedTick = ticks;
+        }
+    }
+
+    int readVarint() {
+        int value = 0;
+        int shift = 0;
+        int b;
+
+        do {
+            b = readByte();
+            if (b < 0 || shift > 28) {
+                invalid = true;
+                return 0;
+            }
+
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        return value;
+    }
+
+    //Returns -1 at the end of the stream or on error
+    int readByte() {
+        int b = -1;
+
+        if (invalid) return -1;
+
+        try {
+            b = in.read();
+        } catch (Exception e) {
+            b = -1;
+        }
+
+        if (b < 0) invalid = true;
+
+        return b;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Alex vs Bus
+ * Copyright (C) 2021-2023 M374LX
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.alexvsbus;
+
+import static org.alexvsbus.Defs.*;
+
+import java.io.OutputStream;
+
+//Records the input of a level run, tick by tick, so that it can be
+//re-simulated later by ReplayReader
+//
+//File format (varint = unsigned LEB128, 7 bits per byte):
+//
+//  "AVBR", version (byte)
+//  level number, difficulty, flags, tick rate, vscreen width, initial score
+//  (varints)
+//
+//followed by a stream of records until REPLAY_END:
+//
+//  input (byte, 0 to 7), run length (varint): the input state (left, right,
+//  and jump bits) held for that many ticks
+//
+//  REPLAY_SCREEN_WIDTH, width (varint): the vscreen width changed
+//
+//  REPLAY_HASH, state hash (4 bytes, most significant first): the value of
+//  PlayCtx.stateHash, folded to 32 bits (see foldHash()), before one of the
+//  ticks of the input run that follows, taken every REPLAY_HASH_INTERVAL
+//  ticks starting from the first one
+//
+//  REPLAY_END, final score, final time (varints), goal reached (byte)
+//
+//The state hashes do not end the input run they fall in. They are instead
+//written right before it once it ends, which is forced if
+//REPLAY_MAX_PENDING_HASHES of them are waiting, so the reader has them
+//before running the ticks they belong to
+//
+//As input only changes a few times per second, the input of a complete level
+//run takes a few hundred bytes, to which the state hashes add 150 bytes per
+//minute
+class ReplayWriter {
+    OutputStream out;
+    boolean failed; //An I/O error occurred, so further calls are ignored
+
+    int input; //Input state of the current run (NONE before the first tick)
+    int runLength;
+    int vscreenWidth;
+    int ticks; //Number of ticks recorded so far
+
+    //State hashes taken during the current run
+    int pendingHashes[];
+    int numPendingHashes;
+
+    //--------------------------------------------------------------------------
+
+    void begin(OutputStream o, int levelNum, int difficulty,
+            boolean skipInitialSequence, boolean fixedPoint, int width,
+            int score) {
+        int flags = 0;
+
+        if (skipInitialSequence) flags |= REPLAY_FLAG_SKIP_INITIAL_SEQUENCE;
+        if (fixedPoint) flags |= REPLAY_FLAG_FIXED_POINT;
+
+        out = o;
+        failed = false;
+        input = NONE;
+        runLength = 0;
+        vscreenWidth = width;
+        ticks = 0;
+        if (pendingHashes == null) {
+            pendingHashes = new int[REPLAY_MAX_PENDING_HASHES];
+        }
+        numPendingHashes = 0;
+
+        writeByte('A');
+        writeByte('V');
+        writeByte('B');
+        writeByte('R');
+        writeByte(REPLAY_VERSION);
+        writeVarint(levelNum);
+        writeVarint(difficulty);
+        writeVarint(flags);
+        writeVarint(TICK_RATE);
+        writeVarint(width);
+        writeVarint(score);
+    }
+
+    //Records the input state (INPUT_* bitfield) passed to Play.setInput() for
+    //the tick about to be run, along with PlayCtx.stateHash as it is before
+    //that tick
+    void tick(int inputState, long stateHash) {
+        int in = (inputState & REPLAY_INPUT_MASK) >> REPLAY_INPUT_SHIFT;
+        boolean hashTick = (ticks % REPLAY_HASH_INTERVAL == 0);
+
+        if (in != input
+                || (hashTick && numPendingHashes == REPLAY_MAX_PENDING_HASHES)) {
+            endRun();
+            input = in;
+        }
+
+        if (hashTick) {
+            pendingHashes[numPendingHashes] = foldHash(stateHash);
+            numPendingHashes++;
+        }
+
+        runLength++;
+        ticks++;
+    }
+
+    //Records a change to the vscreen width, which affects the camera
+    void screenWidth(int width) {
+        if (width == vscreenWidth) return;
+
+        endRun();
+        writeByte(REPLAY_SCREEN_WIDTH);
+        writeVarint(width);
+        vscreenWidth = width;
+    }
+
+    //Returns false if an I/O error occurred at any point
+    boolean end(int score, int time, boolean goalReached) {
+        endRun();
+        writeByte(REPLAY_END);
+        writeVarint(score);
+        writeVarint(time);
+        writeByte(goalReached ? 1 : 0);
+
+        try {
+            out.flush();
+        } catch (Exception e) {
+            failed = true;
+        }
+
+        return !failed;
+    }
+
+    //--------------------------------------------------------------------------
+
+    //Writes the current run, preceded by the state hashes taken during it
+    void endRun() {
+        int i, j;
+
+        for (i = 0; i < numPendingHashes; i++) {
+            writeByte(REPLAY_HASH);
+            for (j = 24; j >= 0; j -= 8) {
+                writeByte((pendingHashes[i] >>> j) & 0xFF);
+            }
+        }
+        numPendingHashes = 0;
+
+        if (runLength == 0) return;
+
+        writeByte(input);
+        writeVarint(runLength);
+
+        input = NONE;
+        runLength = 0;
+    }
+
+    static int foldHash(long stateHash) {
+        return (int)(stateHash ^ (stateHash >>> 32));
+    }
+
+    void writeVarint(int value) {
+        while ((value & ~0x7F) != 0) {
+            writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        writeByte(value);
+    }
+
+    void writeByte(int b) {
+        if (failed) return;
+
+        try {
+            out.write(b);
+        } catch (Exception e) {
+            failed = true;
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Alex vs Bus
+ * Copyright (C) 2021-2023 M374LX
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.alexvsbus;
+
+import static org.alexvsbus.Defs.*;
+
+//Uniform grid used as a broad phase for collision detection against the
+//solids in PlayCtx.solids
+//
+//The level is divided into columns (cells) of the same width and each cell
+//holds the indices of the solids that horizontally overlap it, so a query only
+//needs to look at the cells covered by the area of interest, rather than at
+//every solid
+class SolidGrid {
+    Solids solids;
+
+    //Indices of the solids in each cell
+    int cells[][];
+    int cellCounts[];
+
+    //First and last cell each solid is currently in (NONE if not in the grid)
+    int firstCell[];
+    int lastCell[];
+
+    //Indices of the solids found by the last query, in ascending order
+    int result[];
+
+    //Used to avoid adding the same solid to the result more than once when
+    //it spans multiple cells
+    int marks[];
+    int mark;
+
+    //--------------------------------------------------------------------------
+
+    SolidGrid(Solids sols) {
+        int i;
+
+        solids = sols;
+
+        cells = new int[SOLID_GRID_NUM_CELLS][];
+        cellCounts = new int[SOLID_GRID_NUM_CELLS];
+        for (i = 0; i < SOLID_GRID_NUM_CELLS; i++) {
+            cells[i] = new int[SOLID_GRID_INITIAL_CELL_SIZE];
+        }
+
+        firstCell = new int[sols.capacity];
+        lastCell = new int[sols.capacity];
+        result = new int[sols.capacity];
+        marks = new int[sols.capacity];
+
+        clear();
+    }
+
+    void clear() {
+        int i;
+
+        for (i = 0; i < SOLID_GRID_NUM_CELLS; i++) {
+            cellCounts[i] = 0;
+        }
+
+        for (i = 0; i < solids.capacity; i++) {
+            firstCell[i] = NONE;
+            lastCell[i] = NONE;
+            marks[i] = 0;
+        }
+
+        mark = 0;
+    }
+
+    //Adds a solid to the cells it overlaps
+    void add(int sol) {
+        int first = cellAt(solids.left[sol]);
+        int last  = cellAt(solids.right[sol]);
+        int i;
+
+        for (i = first; i <= last; i++) {
+            insert(i, sol);
+        }
+
+        firstCell[sol] = first;
+        lastCell[sol]  = last;
+    }
+
+    //Must be called after the horizontal position or width of a solid that is
+    //already in the grid changes
+    void update(int sol) {
+        int first = cellAt(solids.left[sol]);
+        int last  = cellAt(solids.right[sol]);
+        int i;
+
+        if (firstCell[sol] == NONE) {
+            add(sol);
+            return;
+        }
+
+        //Nothing to do if the solid still overlaps the same cells
+        if (first == firstCell[sol] && last == lastCell[sol]) return;
+
+        for (i = firstCell[sol]; i <= lastCell[sol]; i++) {
+            if (i < first || i > last) {
+                remove(i, sol);
+            }
+        }
+
+        for (i = first; i <= last; i++) {
+            if (i < firstCell[sol] || i > lastCell[sol]) {
+                insert(i, sol);
+            }
+        }
+
+        firstCell[sol] = first;
+        lastCell[sol]  = last;
+    }
+
+    //Finds the solids that may overlap the horizontal range from left to right
+    //(inclusive) and stores their indices in result[] in ascending order,
+    //which is the same order in which PlayCtx.solids would be traversed
+    //
+    //Returns the number of solids found
+    int query(int left, int right) {
+        int first = cellAt(left);
+        int last  = cellAt(right);
+        int count = 0;
+        int i, j, k;
+
+        mark++;
+        if (mark == 0) {
+            //Wrapped around, so reset the marks
+            for (i = 0; i < solids.capacity; i++) {
+                marks[i] = 0;
+            }
+            mark = 1;
+        }
+
+        for (i = first; i <= last; i++) {
+            int cell[] = cells[i];
+            int n = cellCounts[i];
+
+            for (j = 0; j < n; j++) {
+                int sol = cell[j];
+
+                if (marks[sol] == mark) continue;
+                marks[sol] = mark;
+
+                //Insertion sort, as only a handful of solids are expected
+                for (k = count; k > 0 && result[k - 1] > sol; k--) {
+                    result[k] = result[k - 1];
+                }
+                result[k] = sol;
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    //--------------------------------------------------------------------------
+
+    static int cellAt(int x) {
+        int cell = x >> SOLID_GRID_CELL_SHIFT;
+
+        if (cell < 0) return 0;
+        if (cell >= SOLID_GRID_NUM_CELLS) return SOLID_GRID_NUM_CELLS - 1;
+
+        return cell;
+    }
+
+    void insert(int cell, int sol) {
+        int n = cellCounts[cell];
+
+        //Grow the cell if it is full, which should only happen while a level
+        //is being loaded
+        if (n >= cells[cell].length) {
+            int grown[] = new int[cells[cell].length * 2];
+            System.arraycopy(cells[cell], 0, grown, 0, n);
+            cells[cell] = grown;
+        }
+
+        cells[cell][n] = sol;
+        cellCounts[cell]++;
+    }
+
+    void remove(int cell, int sol) {
+        int n = cellCounts[cell];
+        int i;
+
+        for (i = 0; i < n; i++) {
+            if (cells[cell][i] == sol) {
+                cells[cell][i] = cells[cell][n - 1];
+                cellCounts[cell]--;
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Alex vs Bus
+ * Copyright (C) 2021-2023 M374LX
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.alexvsbus;
+
+//Preallocated storage for a snapshot of the state of a play session (see
+//Play.saveState() and Play.restoreState())
+//
+//The same code is used to both save and restore the state: each value goes
+//through a call like "x = sb.f(x);", which stores x and returns it unchanged
+//when saving or returns the stored value when restoring. Values are stored in
+//the order of the calls, so both directions must make exactly the same calls.
+class StateBuffer {
+    static final int MODE_MEASURE = 0;
+    static final int MODE_SAVE = 1;
+    static final int MODE_RESTORE = 2;
+
+    int mode;
+
+    //Booleans are stored as ints
+    int ints[];
+    float floats[];
+    int intPos, floatPos;
+
+    //--------------------------------------------------------------------------
+
+    StateBuffer(int numInts, int numFloats) {
+        ints = new int[numInts];
+        floats = new float[numFloats];
+    }
+
+    void begin(int m) {
+        mode = m;
+        intPos = 0;
+        floatPos = 0;
+    }
+
+    int i(int v) {
+        switch (mode) {
+            case MODE_SAVE:    ints[intPos] = v; break;
+            case MODE_RESTORE: v = ints[intPos]; break;
+        }
+
+        intPos++;
+        return v;
+    }
+
+    float f(float v) {
+        switch (mode) {
+            case MODE_SAVE:    floats[floatPos] = v; break;
+            case MODE_RESTORE: v = floats[floatPos]; break;
+        }
+
+        floatPos++;
+        return v;
+    }
+
+    boolean b(boolean v) {
+        return i(v ? 1 : 0) != 0;
+    }
+
+    //Transfers the first n elements of an array
+    void ints(int a[], int n) {
+        switch (mode) {
+            case MODE_SAVE:    System.arraycopy(a, 0, ints, intPos, n); break;
+            case MODE_RESTORE: System.arraycopy(ints, intPos, a, 0, n); break;
+        }
+
+        intPos += n;
+    }
+
+    void floats(float a[], int n) {
+        switch (mode) {
+            case MODE_SAVE:    System.arraycopy(a, 0, floats, floatPos, n); break;
+            case MODE_RESTORE: System.arraycopy(floats, floatPos, a, 0, n); break;
+        }
+
+        floatPos += n;
+    }
+
+    void bools(boolean a[], int n) {
+        int j;
+
+        for (j = 0; j < n; j++) {
+            a[j] = b(a[j]);
+        }
+    }
+}
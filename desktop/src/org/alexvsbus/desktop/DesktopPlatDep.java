@@ -22,9 +22,14 @@ package org.alexvsbus.desktop;
 
 import static org.alexvsbus.Defs.*;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.backends.lwjgl3.Lwjgl3Application;
 import com.badlogic.gdx.backends.lwjgl3.Lwjgl3ApplicationConfiguration;
@@ -37,13 +42,20 @@ import org.alexvsbus.LineRead;
 import org.alexvsbus.Main;
 
 class DesktopPlatDep implements PlatDep {
+    //Replays of each level kept by --record-replays besides the best one
+    static final int NUM_RECENT_REPLAYS = 10;
+
     //Command-line arguments
     class Cli {
         boolean help;
         boolean version;
         String config;
+        String replayDir;        //Empty = do not record replays
+        String profileFile;      //Empty = do not profile
         boolean resizable;
         boolean touchEnabled;
+        boolean fixedPoint;
+        boolean ghost;
         boolean fullscreen;
         boolean windowed;
         boolean fixedWindowMode;
@@ -148,6 +160,16 @@ class DesktopPlatDep implements PlatDep {
         "                       touchscreen\n" +
         "--mobile               As a shorthand for --fixed-window-mode and --touch,\n" +
         "                       simulate the mobile version\n" +
+        "--record-replays <dir> Save a replay of each level run to the directory,\n" +
+        "                       keeping the last " + NUM_RECENT_REPLAYS + " runs and the\n" +
+        "                       best one of each level\n" +
+        "--ghost                Race against a ghost of the best run of each level\n" +
+        "                       saved by --record-replays\n" +
+        "--fixed-point          Use fixed-point physics, which produces the same\n" +
+        "                       results on every platform\n" +
+        "--profile <file>       Measure where the time of each frame goes, saving a\n" +
+        "                       trace (Chrome trace event format) to the file and\n" +
+        "                       showing a summary on exit\n" +
         "\n" +
         "For --vscreen-size, the size can be either \"auto\" or a width and a height\n" +
         "separated by an \"x\" (example: 480x270), with the supported values listed\n" +
@@ -193,6 +215,8 @@ class DesktopPlatDep implements PlatDep {
         int i;
 
         cli.config = "";
+        cli.replayDir = "";
+        cli.profileFile = "";
 
         for (i = 0; i < argc; i++) {
             String a = args[i];
@@ -217,6 +241,22 @@ class DesktopPlatDep implements PlatDep {
                 }
 
                 cli.config = args[i];
+            } else if (a.equals("--record-replays")) {
+                i++;
+                if (i >= argc) {
+                    cli.help = true;
+                    return;
+                }
+
+                cli.replayDir = args[i];
+            } else if (a.equals("--profile")) {
+                i++;
+                if (i >= argc) {
+                    cli.help = true;
+                    return;
+                }
+
+                cli.profileFile = args[i];
             } else if (a.equals("--vscreen-size")) {
                 i++;
                 if (i >= argc) {
@@ -272,6 +312,10 @@ class DesktopPlatDep implements PlatDep {
                 cli.touchButtonsEnabled = 1;
             } else if (a.equals("--touch-buttons-off")) {
                 cli.touchButtonsEnabled = -1;
+            } else if (a.equals("--fixed-point")) {
+                cli.fixedPoint = true;
+            } else if (a.equals("--ghost")) {
+                cli.ghost = true;
             } else if (a.equals("--mobile")) {
                 //Shorthand for --fixed-window-mode and --touch
                 cli.fixedWindowMode = true;
@@ -542,6 +586,15 @@ class DesktopPlatDep implements PlatDep {
         if (cli.touchButtonsEnabled != 0) {
             config.touchButtonsEnabled = (cli.touchButtonsEnabled == -1) ? false : true;
         }
+        if (cli.fixedPoint) {
+            config.fixedPointPhysics = true;
+        }
+        if (!cli.profileFile.isEmpty()) {
+            config.profilerEnabled = true;
+        }
+        if (cli.ghost) {
+            config.ghostEnabled = true;
+        }
 
         if (!config.vscreenAutoSize) {
             if (config.vscreenWidth == -1 || config.vscreenHeight == -1) {
@@ -617,5 +670,101 @@ class DesktopPlatDep implements PlatDep {
             return false;
         }
     }
-}
 
+    @Override
+    public boolean saveReplay(String name, byte data[], boolean best) {
+        Path dir;
+
+        if (cli.replayDir.isEmpty()) return true;
+
+        try {
+            dir = Paths.get(cli.replayDir);
+            Files.createDirectories(dir);
+            Files.write(dir.resolve(name + "-" + System.currentTimeMillis()
+                    + ".avbr"), data);
+            deleteOldReplays(dir, name);
+
+            if (best) {
+                Files.write(dir.resolve(name + "-best.avbr"), data);
+            }
+
+            return true;
+        } catch (Exception e) {
+            Gdx.app.log("Warning", "Unable to save replay (" + e.toString() + ")");
+
+            return false;
+        }
+    }
+
+    //Deletes the replays of a level saved by saveReplay(), except for the
+    //last NUM_RECENT_REPLAYS ones and the best one, so that the directory does
+    //not grow without bound
+    void deleteOldReplays(Path dir, String name) throws Exception {
+        final int prefixLen = name.length() + 1;
+        ArrayList<Path> recent = new ArrayList<>();
+        int i;
+
+        try (DirectoryStream<Path> stream =
+                Files.newDirectoryStream(dir, name + "-*.avbr")) {
+            for (Path path : stream) {
+                String filename = path.getFileName().toString();
+
+                //Leave out the best replay and anything else not named after
+                //the time it was saved at
+                if (filename.substring(prefixLen).matches("[0-9]+\\.avbr")) {
+                    recent.add(path);
+                }
+            }
+        }
+
+        if (recent.size() <= NUM_RECENT_REPLAYS) return;
+
+        //Oldest first
+        Collections.sort(recent, new Comparator<Path>() {
+            public int compare(Path a, Path b) {
+                return Long.compare(savedAt(a), savedAt(b));
+            }
+
+            long savedAt(Path path) {
+                String filename = path.getFileName().toString();
+
+                return Long.parseLong(filename.substring(prefixLen,
+                        filename.length() - ".avbr".length()));
+            }
+        });
+
+        for (i = 0; i < recent.size() - NUM_RECENT_REPLAYS; i++) {
+            Files.delete(recent.get(i));
+        }
+    }
+
+    @Override
+    public void saveProfile(String trace, String summary) {
+        System.out.print(summary);
+
+        try {
+            Files.write(Paths.get(cli.profileFile),
+                    trace.getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            Gdx.app.log("Warning", "Unable to save profile (" + e.toString() + ")");
+        }
+    }
+
+    @Override
+    public byte[] loadBestReplay(String name) {
+        Path path;
+
+        if (cli.replayDir.isEmpty()) return null;
+
+        path = Paths.get(cli.replayDir).resolve(name + "-best.avbr");
+        if (!Files.isRegularFile(path)) return null;
+
+        try {
+            return Files.readAllBytes(path);
+        } catch (Exception e) {
+            Gdx.app.log("Warning", "Unable to load replay (" + e.toString() + ")");
+
+            return null;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+/*
+ * Alex vs Bus
+ * Copyright (C) 2021-2023 M374LX
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.alexvsbus;
+
+import static org.alexvsbus.Defs.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+//Re-simulates a large number of replays in parallel and checks that each one
+//still produces the score, time and goal state recorded in it, and goes
+//through the same states on the way (see PlayCtx.stateHash)
+//
+//The replays are split among the threads of a ForkJoinPool, each of which
+//has its own play session (Headless instance), as nothing in Play or PlayCtx
+//is shared between sessions
+//
+//Usage: BatchVerify [-j <threads>] <assets directory> <file or directory>...
+class BatchVerify {
+    //Level files are read from disk only once and then shared by all threads
+    static class CachedFileSource implements FileSource {
+        FileSource source;
+        ConcurrentHashMap<String, String> cache;
+
+        CachedFileSource(FileSource fs) {
+            source = fs;
+            cache = new ConcurrentHashMap<>();
+        }
+
+        public long length(String filename) throws Exception {
+            return readString(filename).length();
+        }
+
+        public String readString(String filename) throws Exception {
+            String data = cache.get(filename);
+
+            if (data == null) {
+                if (source.length(filename) > 4096) {
+                    throw new Exception("File too large: " + filename);
+                }
+
+                data = source.readString(filename);
+                cache.put(filename, data);
+            }
+
+            return data;
+        }
+    }
+
+    static class Result {
+        String filename;
+        boolean ok;
+        String error; //Set if the replay could not be re-simulated at all
+        int ticks;
+
+        //Ticks between which the state first differed from the recorded one
+        //(divergedTick is NONE if it never did)
+        int matchedTick, divergedTick;
+
+        //Recorded results
+        int score, time;
+        boolean goalReached;
+
+        //Results of the re-simulation
+        int actualScore, actualTime;
+        boolean actualGoalReached;
+    }
+
+    //Verifies the replays from first to last (exclusive), splitting the range
+    //in halves until each task has a single replay
+    class VerifyTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        int first, last;
+
+        VerifyTask(int f, int l) {
+            first = f;
+            last = l;
+        }
+
+        protected void compute() {
+            int mid;
+
+            if (last - first == 1) {
+                verify(first);
+                return;
+            }
+
+            mid = (first + last) / 2;
+            invokeAll(new VerifyTask(first, mid), new VerifyTask(mid, last));
+        }
+    }
+
+    FileSource fileSource;
+    ThreadLocal<Headless> sims;
+
+    String filenames[];
+    byte replays[][];
+    Result results[];
+
+    //--------------------------------------------------------------------------
+
+    BatchVerify(String assetsDir) {
+        fileSource = new CachedFileSource(new Headless.DirFileSource(assetsDir));
+        sims = new ThreadLocal<Headless>() {
+            protected Headless initialValue() {
+                return new Headless(fileSource, 480, 270);
+            }
+        };
+    }
+
+    //Reads all replays into memory, so that the time spent verifying them does
+    //not include reading files
+    void load(ArrayList<String> files) throws Exception {
+        int n = files.size();
+        int i;
+
+        filenames = new String[n];
+        replays = new byte[n][];
+        results = new Result[n];
+
+        for (i = 0; i < n; i++) {
+            filenames[i] = files.get(i);
+            replays[i] = Files.readAllBytes(new File(filenames[i]).toPath());
+        }
+    }
+
+    void run(ForkJoinPool pool) {
+        if (replays.length == 0) return;
+
+        pool.invoke(new VerifyTask(0, replays.length));
+    }
+
+    void verify(int index) {
+        Headless sim = sims.get();
+        ReplayReader replay = new ReplayReader();
+        Result result = new Result();
+
+        result.filename = filenames[index];
+        results[index] = result;
+
+        if (!replay.open(new ByteArrayInputStream(replays[index]))) {
+            result.error = "invalid replay";
+            return;
+        }
+
+        sim.playReplay(replay);
+
+        result.ticks = sim.ticks;
+        result.matchedTick = replay.matchedTick;
+        result.divergedTick = replay.divergedTick;
+
+        if (replay.diverged()) return;
+
+        if (!replay.ended) {
+            result.error = replay.invalid ? "invalid replay" : "level not loaded";
+            return;
+        }
+
+        result.score = replay.finalScore;
+        result.time = replay.finalTime;
+        result.goalReached = replay.finalGoalReached;
+        result.actualScore = sim.ctx.score;
+        result.actualTime = sim.ctx.time;
+        result.actualGoalReached = sim.ctx.goalReached;
+
+        result.ok = (result.score == result.actualScore)
+                && (result.time == result.actualTime)
+                && (result.goalReached == result.actualGoalReached);
+    }
+
+    //--------------------------------------------------------------------------
+
+    //Adds a replay file or, for a directory, all replay files within it
+    static void addFiles(File file, ArrayList<String> files) {
+        if (file.isDirectory()) {
+            File children[] = file.listFiles();
+            int i;
+
+            if (children == null) return;
+
+            Arrays.sort(children);
+            for (i = 0; i < children.length; i++) {
+                if (children[i].isDirectory()
+                        || children[i].getName().endsWith(".avbr")) {
+                    addFiles(children[i], files);
+                }
+            }
+        } else {
+            files.add(file.getPath());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        ArrayList<String> files = new ArrayList<>();
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        String assetsDir = null;
+        BatchVerify batch;
+        ForkJoinPool pool;
+        long startTime, totalTicks = 0;
+        double seconds;
+        int numFailed = 0;
+        int i;
+
+        for (i = 0; i < args.length; i++) {
+            if (args[i].equals("-j") && i + 1 < args.length) {
+                i++;
+                numThreads = Integer.parseInt(args[i]);
+            } else if (assetsDir == null) {
+                assetsDir = args[i];
+            } else {
+                addFiles(new File(args[i]), files);
+            }
+        }
+
+        if (assetsDir == null || numThreads < 1) {
+            System.err.println("Usage: BatchVerify [-j <threads>] "
+                    + "<assets directory> <file or directory>...");
+            System.exit(2);
+        }
+
+        batch = new BatchVerify(assetsDir);
+        batch.load(files);
+        pool = new ForkJoinPool(numThreads);
+
+        startTime = System.nanoTime();
+        batch.run(pool);
+        seconds = (System.nanoTime() - startTime) / 1e9;
+
+        pool.shutdown();
+
+        for (i = 0; i < batch.results.length; i++) {
+            Result r = batch.results[i];
+
+            totalTicks += r.ticks;
+            if (r.ok) continue;
+
+            numFailed++;
+
+            if (r.error != null) {
+                System.out.println("ERROR    " + r.filename + ": " + r.error);
+            } else if (r.divergedTick != NONE) {
+                System.out.println("MISMATCH " + r.filename
+                        + ": state diverged between ticks " + r.matchedTick
+                        + " and " + r.divergedTick);
+            } else {
+                System.out.println("MISMATCH " + r.filename
+                        + ": score " + r.actualScore + " (recorded " + r.score + ")"
+                        + ", time " + r.actualTime + " (recorded " + r.time + ")"
+                        + ", goal " + r.actualGoalReached
+                        + " (recorded " + r.goalReached + ")");
+            }
+        }
+
+        System.out.println(batch.results.length + " replays, " + numFailed
+                + " failed, " + numThreads + " threads");
+        System.out.println(String.format("%.3f s, %.1f runs/s, %.0f ticks/s",
+                seconds, batch.results.length / seconds, totalTicks / seconds));
+
+        if (numFailed > 0) System.exit(1);
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Alex vs Bus
+ * Copyright (C) 2021-2023 M374LX
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.alexvsbus;
+
+import static org.alexvsbus.Defs.*;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+//Runs play sessions without libGDX, with no graphics, no audio and no
+//real-time pacing, so that the game logic is stepped as fast as the CPU allows
+class Headless {
+    //Reads level files from a directory in the file system
+    static class DirFileSource implements FileSource {
+        File dir;
+
+        DirFileSource(String path) {
+            dir = new File(path);
+        }
+
+        public long length(String filename) throws Exception {
+            File file = new File(dir, filename);
+
+            if (!file.isFile()) {
+                throw new Exception("Cannot open " + file);
+            }
+
+            return file.length();
+        }
+
+        public String readString(String filename) throws Exception {
+            byte[] data = Files.readAllBytes(new File(dir, filename).toPath());
+            return new String(data, StandardCharsets.UTF_8);
+        }
+    }
+
+    DisplayParams displayParams;
+    Play play;
+    PlayCtx ctx;
+    LevelLoad levelLoad;
+    int ticks; //Number of ticks since the level has started
+    boolean fixedPoint; //Fixed-point physics mode for the levels started
+
+    //--------------------------------------------------------------------------
+
+    Headless(FileSource fileSource, int vscreenWidth, int vscreenHeight) {
+        displayParams = new DisplayParams();
+        displayParams.vscreenWidth = vscreenWidth;
+        displayParams.vscreenHeight = vscreenHeight;
+
+        play = new Play(displayParams);
+        ctx = play.newCtx();
+        levelLoad = new LevelLoad(ctx, fileSource);
+    }
+
+    //Returns LVLERR_NONE on success or the error code from LevelLoad
+    int startLevel(int levelNum, int difficulty, boolean skipInitialSequence) {
+        int err;
+
+        play.clear();
+
+        err = levelLoad.load(LevelLoad.filename(levelNum, difficulty));
+        if (err != LVLERR_NONE) return err;
+
+        play.start(levelNum, difficulty, skipInitialSequence, fixedPoint);
+        ticks = 0;
+
+        return LVLERR_NONE;
+    }
+
+    //Advances the simulation by one tick with the given input state (a
+    //combination of INPUT_LEFT, INPUT_RIGHT and INPUT_JUMP)
+    void step(int input) {
+        play.setInput(input);
+        play.update(TICK_DT);
+        ctx.events.clear(); //Nothing reacts to gameplay events here
+        ticks++;
+    }
+
+    //Re-simulates a replay and returns true if the run ends with the same
+    //score, time and goal state recorded in it
+    //
+    //The re-simulation stops as soon as the state hash differs from one
+    //recorded in the replay, as nothing after that point can be trusted
+    boolean playReplay(ReplayReader replay) {
+        displayParams.vscreenWidth = replay.vscreenWidth;
+        fixedPoint = replay.fixedPoint();
+
+        //The score is part of the state hash taken when the level starts
+        ctx.score = replay.score;
+
+        if (startLevel(replay.levelNum, replay.difficulty,
+                replay.skipInitialSequence()) != LVLERR_NONE) {
+            return false;
+        }
+
+        while (!replay.diverged() && replay.step(play)) {
+            ctx.events.clear();
+            ticks++;
+        }
+
+        if (!replay.ended || replay.diverged()) return false;
+        if (ctx.score != replay.finalScore) return false;
+        if (ctx.time != replay.finalTime) return false;
+        if (ctx.goalReached != replay.finalGoalReached) return false;
+
+        return true;
+    }
+
+    //--------------------------------------------------------------------------
+
+    //Usage: Headless [assets directory] [number of runs] [--fixed-point]
+    //                [--profile <trace file>]
+    //       Headless <assets directory> --replay <file>...
+    public static void main(String[] args) throws Exception {
+        String assetsDir = (args.length > 0) ? args[0] : ".";
+        Headless sim = new Headless(new DirFileSource(assetsDir), 480, 270);
+        String profileFile = null;
+        int i;
+
+        if (args.length > 1 && args[1].equals("--replay")) {
+            verifyReplays(sim, args);
+            return;
+        }
+
+        for (i = 2; i < args.length; i++) {
+            if (args[i].equals("--fixed-point")) {
+                sim.fixedPoint = true;
+            } else if (args[i].equals("--profile") && i + 1 < args.length) {
+                i++;
+                profileFile = args[i];
+                sim.play.profiler.enable();
+            }
+        }
+
+        benchmark(sim, (args.length > 1) ? Integer.parseInt(args[1]) : 10);
+
+        if (profileFile != null) {
+            System.out.print(sim.play.profiler.summary());
+            Files.write(new File(profileFile).toPath(),
+                    sim.play.profiler.trace().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    //Plays every level with a fixed input pattern (hold right and jump
+    //periodically) and reports the number of ticks simulated per second
+    static void benchmark(Headless sim, int numRuns) {
+        int maxTicks = 200 * TICK_RATE;
+        long totalTicks = 0;
+        long startTime = System.nanoTime();
+        double seconds;
+        int run, difficulty, level;
+
+        for (run = 0; run < numRuns; run++) {
+            for (difficulty = 0; difficulty <= DIFFICULTY_MAX; difficulty++) {
+                int numLevels = Data.difficultyNumLevels[difficulty];
+
+                for (level = 1; level <= numLevels; level++) {
+                    int err = sim.startLevel(level, difficulty, true);
+
+                    if (err != LVLERR_NONE) {
+                        System.err.println("Cannot load level " + level
+                                + " (difficulty " + difficulty + "): error "
+                                + err);
+                        System.exit(1);
+                    }
+
+                    while (sim.ticks < maxTicks && !sim.ctx.goalReached
+                            && !sim.ctx.timeUp) {
+                        int input = INPUT_RIGHT;
+
+                        if ((sim.ticks % TICK_RATE) < TICK_RATE / 4) {
+                            input |= INPUT_JUMP;
+                        }
+
+                        sim.step(input);
+                    }
+
+                    totalTicks += sim.ticks;
+                }
+            }
+        }
+
+        seconds = (System.nanoTime() - startTime) / 1e9;
+
+        System.out.println(totalTicks + " ticks in " + seconds + " s ("
+                + (long)(totalTicks / seconds) + " ticks/s, "
+                + (totalTicks / seconds / TICK_RATE) + "x real time)");
+    }
+
+    //Re-simulates each replay file given after "--replay" and reports whether
+    //it still produces the recorded results
+    static void verifyReplays(Headless sim, String[] args) {
+        int numFailed = 0;
+        int i;
+
+        for (i = 2; i < args.length; i++) {
+            ReplayReader replay = new ReplayReader();
+            boolean ok = false;
+
+            try (BufferedInputStream in =
+                    new BufferedInputStream(new FileInputStream(args[i]))) {
+                ok = replay.open(in) && sim.playReplay(replay);
+            } catch (Exception e) {
+                ok = false;
+            }
+
+            System.out.print((ok ? "OK       " : "MISMATCH ") + args[i]
+                    + " (" + sim.ticks + " ticks)");
+
+            if (replay.diverged()) {
+                System.out.print(" diverged between ticks "
+                        + replay.matchedTick + " and " + replay.divergedTick);
+            }
+            System.out.println();
+
+            if (!ok) numFailed++;
+        }
+
+        if (numFailed > 0) System.exit(1);
+    }
+}
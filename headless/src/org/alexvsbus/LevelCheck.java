@@ -0,0 +1,527 @@
+/*
+ * Alex vs Bus
+ * Copyright (C) 2021-2023 M374LX
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.alexvsbus;
+
+import static org.alexvsbus.Defs.*;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+//Checks whether level files can be completed before the time runs out
+//
+//LevelLoad only checks the syntax and placement rules of a level file, so this
+//searches for a run that reaches the goal. As every state comes from actually
+//running Play, a "completable" result is a proof
+//
+//The search is best first: the states found so far wait in a queue ordered by
+//how far to the right the player character is, less a penalty for the time
+//taken (see TIME_WEIGHT), and the best ones are expanded in batches, each
+//with every input in ACTIONS held for a step, whether the player character is
+//on the floor or in the air. The expansions are run in parallel with one play
+//session per thread. A resulting state is only kept if its discretized
+//version (see stateKey()) has not been reached before, or has only been
+//reached later, which keeps the search from going over the same ground again
+//and again while letting a faster way to the same place take over
+//
+//Otherwise, the search ends when no states are left, as states are dropped
+//once the time runs out, and the furthest X position reached is reported. As
+//the state space is discretized and the input only changes between steps, a
+//run that depends on more precise timing can be missed, which makes a "not
+//completable" result a strong hint rather than a proof
+//
+//Usage: LevelCheck [-j <threads>] <level file or directory>...
+//
+//For a directory, every file in it whose name starts with "level" is checked
+class LevelCheck {
+    //Inputs tried from each state, held for a whole step
+    static final int ACTIONS[] = {
+        INPUT_RIGHT,
+        INPUT_RIGHT | INPUT_JUMP,
+        0,
+        INPUT_JUMP,
+        INPUT_LEFT,
+        INPUT_LEFT | INPUT_JUMP,
+    };
+    static final int NUM_ACTIONS = ACTIONS.length;
+
+    static final int TICKS_PER_STEP = 8;
+
+    //Pixels to the right a state has to be ahead of another to be expanded
+    //first if it has taken one more tick to reach
+    //
+    //Without it, the search follows the player character as far right as
+    //possible even if it takes too long, as when waiting for each gush to move
+    //out of the way, and runs out of time before trying the faster ways; with
+    //too large a weight, it goes back to each state reached earlier and is
+    //little better than breadth first
+    static final float TIME_WEIGHT = 0.5f;
+
+    //Maximum horizontal distance from the player character to a gush for
+    //the gush's position to be part of the discretized state
+    static final int GUSH_RANGE = 96;
+
+    //Number of states taken from the queue and expanded together, which lets
+    //the expansions run in parallel, but larger batches make the search go
+    //through more states that are not among the best ones
+    static final int BATCH_SIZE = 16;
+
+    //A state waiting in the queue
+    static class Node {
+        StateBuffer state;
+        long key;
+        int tick; //Ticks taken to reach the state
+        float priority;
+    }
+
+    //Serves the contents of a single level file, whatever name is requested
+    static class LevelFileSource implements FileSource {
+        String data;
+
+        LevelFileSource(String d) {
+            data = d;
+        }
+
+        public long length(String filename) {
+            return data.length();
+        }
+
+        public String readString(String filename) {
+            return data;
+        }
+    }
+
+    //Expands the candidates from first to last (exclusive), splitting the
+    //range in halves until each task has a single candidate
+    class ExpandTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        int first, last;
+
+        ExpandTask(int f, int l) {
+            first = f;
+            last = l;
+        }
+
+        protected void compute() {
+            int mid;
+
+            if (last - first == 1) {
+                expand(first);
+                return;
+            }
+
+            mid = (first + last) / 2;
+            invokeAll(new ExpandTask(first, mid), new ExpandTask(mid, last));
+        }
+    }
+
+    ForkJoinPool pool;
+    ThreadLocal<Headless> sims;
+    FileSource fileSource;
+    int levelNum;
+    int difficulty;
+
+    PriorityQueue<Node> queue;
+    ArrayList<StateBuffer> free; //Snapshots not in use
+    int snapshotInts, snapshotFloats; //Size of the snapshots
+
+    //States of the current batch
+    Node parents[];
+    int numParents;
+
+    //Expansions of the current batch, the expansion of parent p with action a
+    //being candidate p * NUM_ACTIONS + a
+    StateBuffer candidates[];
+    long candKey[];
+    boolean candAlive[]; //False if time is up
+    boolean candGoal[];
+    float candGoalTime[];
+    float candX[];
+
+    //Ticks taken to first reach each discretized state found so far
+    LongIntMap firstTick;
+
+    //Results
+    boolean completable;
+    float goalTime; //Seconds until the goal is reached in the run found
+    float furthestX;
+    int numStates; //States kept by the search
+
+    //--------------------------------------------------------------------------
+
+    LevelCheck(ForkJoinPool p) {
+        int numCandidates = BATCH_SIZE * NUM_ACTIONS;
+
+        pool = p;
+
+        queue = new PriorityQueue<>(new Comparator<Node>() {
+            public int compare(Node a, Node b) {
+                return Float.compare(b.priority, a.priority);
+            }
+        });
+        free = new ArrayList<>();
+
+        parents = new Node[BATCH_SIZE];
+
+        candidates = new StateBuffer[numCandidates];
+        candKey = new long[numCandidates];
+        candAlive = new boolean[numCandidates];
+        candGoal = new boolean[numCandidates];
+        candGoalTime = new float[numCandidates];
+        candX = new float[numCandidates];
+
+        firstTick = new LongIntMap(1 << 16);
+    }
+
+    //Returns LVLERR_NONE if the level has been checked or the error code from
+    //LevelLoad if it cannot be loaded
+    int check(String data, int lvl, int diff) {
+        Headless sim;
+        StateBuffer sb;
+        Node root;
+        int i, err;
+
+        fileSource = new LevelFileSource(data);
+        levelNum = lvl;
+        difficulty = diff;
+
+        //The play sessions of the threads are created for each level, as they
+        //hold the file source
+        sims = new ThreadLocal<Headless>() {
+            protected Headless initialValue() {
+                Headless s = new Headless(fileSource, 480, 270);
+                s.startLevel(levelNum, difficulty, true);
+                return s;
+            }
+        };
+
+        completable = false;
+        goalTime = 0;
+        furthestX = 0;
+        numStates = 1;
+        firstTick.clear();
+
+        while (!queue.isEmpty()) free.add(queue.poll().state);
+
+        sim = sims.get();
+        err = sim.startLevel(levelNum, difficulty, true);
+        if (err != LVLERR_NONE) return err;
+
+        //The snapshots of the previous level cannot be reused if the size of
+        //the state has changed, as with levels that need larger tables than
+        //the default ones
+        sb = sim.play.newStateBuffer();
+        if (sb.ints.length != snapshotInts
+                || sb.floats.length != snapshotFloats) {
+            snapshotInts = sb.ints.length;
+            snapshotFloats = sb.floats.length;
+            free.clear();
+            Arrays.fill(candidates, null);
+        }
+
+        root = new Node();
+        root.state = newBuffer();
+        root.key = stateKey(sim);
+        root.tick = 0;
+        root.priority = sim.ctx.player.x;
+        sim.play.saveState(root.state);
+        queue.add(root);
+        firstTick.put(root.key, 0);
+        furthestX = sim.ctx.player.x;
+
+        //As states are dropped once the time is up, the queue always ends up
+        //empty if the goal is not reached
+        while (!queue.isEmpty()) {
+            numParents = 0;
+            while (numParents < BATCH_SIZE && !queue.isEmpty()) {
+                Node n = queue.poll();
+
+                //Skip the states that have since been reached faster
+                if (firstTick.get(n.key, n.tick) < n.tick) {
+                    free.add(n.state);
+                    continue;
+                }
+
+                parents[numParents] = n;
+                numParents++;
+            }
+
+            if (numParents == 0) break;
+
+            pool.invoke(new ExpandTask(0, numParents * NUM_ACTIONS));
+
+            if (merge(numParents * NUM_ACTIONS)) {
+                completable = true;
+                return LVLERR_NONE;
+            }
+
+            for (i = 0; i < numParents; i++) {
+                free.add(parents[i].state);
+                parents[i] = null;
+            }
+        }
+
+        return LVLERR_NONE;
+    }
+
+    StateBuffer newBuffer() {
+        return new StateBuffer(snapshotInts, snapshotFloats);
+    }
+
+    //Runs a single step from a parent state with one of the actions
+    void expand(int cand) {
+        Headless sim = sims.get();
+        PlayCtx ctx = sim.ctx;
+        Player pl = ctx.player;
+        int input = ACTIONS[cand % NUM_ACTIONS];
+        int t;
+
+        if (candidates[cand] == null) candidates[cand] = newBuffer();
+
+        sim.play.restoreState(parents[cand / NUM_ACTIONS].state);
+
+        candGoal[cand] = false;
+        for (t = 0; t < TICKS_PER_STEP; t++) {
+            sim.step(input);
+
+            if (ctx.goalReached) {
+                candGoal[cand] = true;
+                candGoalTime[cand] = ctx.clock;
+                break;
+            }
+
+            //Falling into a deep hole only sends the player character back
+            //to a respawn point, which has been reached before anyway
+            if (ctx.timeUp || pl.fell) break;
+        }
+
+        sim.play.saveState(candidates[cand]);
+
+        candAlive[cand] = !ctx.timeUp && !pl.fell;
+        candKey[cand] = stateKey(sim);
+        candX[cand] = pl.x;
+    }
+
+    //Queues the candidates not reached before (or only reached later) and
+    //returns true if any of them has reached the goal
+    boolean merge(int numCandidates) {
+        StateBuffer tmp;
+        Node n;
+        int i, tick;
+
+        for (i = 0; i < numCandidates; i++) {
+            if (candGoal[i]) {
+                goalTime = candGoalTime[i];
+                return true;
+            }
+        }
+
+        for (i = 0; i < numCandidates; i++) {
+            if (!candAlive[i]) continue;
+
+            tick = parents[i / NUM_ACTIONS].tick + TICKS_PER_STEP;
+            if (firstTick.get(candKey[i], Integer.MAX_VALUE) <= tick) continue;
+
+            firstTick.put(candKey[i], tick);
+            numStates++;
+            if (candX[i] > furthestX) furthestX = candX[i];
+
+            //Swap the candidate's snapshot with a free one instead of copying
+            //the state
+            tmp = candidates[i];
+            candidates[i] = null;
+            if (!free.isEmpty()) candidates[i] = free.remove(free.size() - 1);
+
+            n = new Node();
+            n.state = tmp;
+            n.key = candKey[i];
+            n.tick = tick;
+            n.priority = candX[i] - TIME_WEIGHT * tick;
+            queue.add(n);
+        }
+
+        return false;
+    }
+
+    //Hash of the discretized state
+    //
+    //Unlike the key used by Solver, this leaves out the score and the objects
+    //collected, as only reachability matters here
+    static long stateKey(Headless sim) {
+        PlayCtx ctx = sim.ctx;
+        Player pl = ctx.player;
+        long h = 0;
+        int i;
+
+        h = Solver.mix(h, (int)pl.x >> 3);
+        h = Solver.mix(h, (int)pl.y >> 3);
+        h = Solver.mix(h, (int)pl.xvel >> 5);
+
+        //While in the air, the vertical velocity changes by about 15 in a
+        //step, so it is kept finer than the other values, as otherwise a state
+        //in the middle of a jump could have the same key as the one it comes
+        //from and the jump would be cut short
+        h = Solver.mix(h, (int)pl.yvel >> 3);
+
+        h = Solver.mix(h, pl.state);
+        h = Solver.mix(h, pl.onFloor ? 1 : 0);
+        h = Solver.mix(h, sim.play.oldInputJump ? 1 : 0);
+        h = Solver.mix(h, ctx.sequenceStep);
+        h = Solver.mix(h, (int)(ctx.sequenceDelay * 16));
+        h = Solver.mix(h, (int)(ctx.cratePushRemaining * 16));
+        h = Solver.mix(h, ctx.curPassageway);
+        h = Solver.mix(h, ctx.grabbedRope.obj);
+        h = Solver.mix(h, (int)ctx.grabbedRope.x >> 3);
+
+        for (i = 0; i < MAX_PUSHABLE_CRATES; i++) {
+            h = Solver.mix(h, ctx.pushableCrates[i].pushed ? 1 : 0);
+        }
+
+        //Gushes near the player character, as waiting for one of them to
+        //move out of the way can be needed
+        for (i = 0; i < ctx.gushes.numLive; i++) {
+            int g = ctx.gushes.live[i];
+
+            if (Math.abs(ctx.objs.x[ctx.gushes.obj[g]] - pl.x) > GUSH_RANGE) {
+                continue;
+            }
+
+            h = Solver.mix(h, (int)ctx.gushes.y[g] >> 3);
+            h = Solver.mix(h, ctx.gushes.movePatternPos[g]);
+        }
+
+        for (i = 0; i < ctx.numPassageways; i++) {
+            h = Solver.mix(h, ctx.holes.type[ctx.passageways[i]]);
+        }
+
+        return h;
+    }
+
+    //--------------------------------------------------------------------------
+
+    //Adds a file or, for a directory, the level files in it
+    static void addFiles(File file, ArrayList<File> files) {
+        File list[];
+        int i;
+
+        if (!file.isDirectory()) {
+            files.add(file);
+            return;
+        }
+
+        list = file.listFiles();
+        if (list == null) return;
+
+        Arrays.sort(list);
+        for (i = 0; i < list.length; i++) {
+            if (list[i].isFile() && list[i].getName().startsWith("level")) {
+                files.add(list[i]);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        ArrayList<File> files = new ArrayList<>();
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool;
+        LevelCheck checker;
+        boolean failed = false;
+        int i;
+
+        for (i = 0; i < args.length; i++) {
+            if (args[i].equals("-j") && i + 1 < args.length) {
+                i++;
+                numThreads = Integer.parseInt(args[i]);
+            } else {
+                addFiles(new File(args[i]), files);
+            }
+        }
+
+        if (files.isEmpty() || numThreads < 1) {
+            System.err.println("Usage: LevelCheck [-j <threads>] "
+                    + "<level file or directory>...");
+            System.exit(2);
+        }
+
+        pool = new ForkJoinPool(numThreads);
+        checker = new LevelCheck(pool);
+
+        for (i = 0; i < files.size(); i++) {
+            File file = files.get(i);
+            String name = file.getName();
+            int levelNum = 2, difficulty = DIFFICULTY_NORMAL;
+            long startTime;
+            double seconds;
+            String data;
+            int err;
+
+            //Use the level number and difficulty of a shipped level if the
+            //file name is that of one, as some things (like the initial
+            //sequence) depend on them
+            if (name.matches("level[1-5][nhs]")) {
+                levelNum = name.charAt(5) - '0';
+                difficulty = "nhs".indexOf(name.charAt(6));
+            }
+
+            try {
+                data = new String(Files.readAllBytes(file.toPath()),
+                        StandardCharsets.UTF_8);
+            } catch (Exception e) {
+                System.out.println(name + ": cannot read file");
+                failed = true;
+                continue;
+            }
+
+            startTime = System.nanoTime();
+            err = checker.check(data, levelNum, difficulty);
+            seconds = (System.nanoTime() - startTime) / 1e9;
+
+            if (err != LVLERR_NONE) {
+                System.out.println(name + ": cannot load (error " + err + ")");
+                failed = true;
+            } else if (checker.completable) {
+                System.out.println(String.format(
+                        "%-12s completable, goal reached at %.2f s "
+                        + "(%d states, %.1f s)",
+                        name, checker.goalTime,
+                        checker.numStates, seconds));
+            } else {
+                System.out.println(String.format(
+                        "%-12s NOT completable, furthest X %d "
+                        + "(%d states, %.1f s)",
+                        name, (int)checker.furthestX, checker.numStates,
+                        seconds));
+                failed = true;
+            }
+        }
+
+        pool.shutdown();
+
+        if (failed) System.exit(1);
+    }
+}
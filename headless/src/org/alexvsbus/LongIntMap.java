@@ -0,0 +1,132 @@
+/*
+ * Alex vs Bus
+ * Copyright (C) 2021-2023 M374LX
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.alexvsbus;
+
+//Map from longs (used for hashes of states) to ints with open addressing and
+//linear probing, which avoids boxing each key and value as a
+//HashMap<Long, Integer> would
+//
+//Zero marks an empty slot, so the key zero itself is tracked separately
+class LongIntMap {
+    long keys[];
+    int values[];
+    int mask;
+    int size;
+    boolean hasZero;
+    int zeroValue;
+
+    //--------------------------------------------------------------------------
+
+    LongIntMap(int initialCapacity) {
+        int capacity = 16;
+
+        while (capacity < initialCapacity * 2) capacity *= 2;
+
+        keys = new long[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    void clear() {
+        int i;
+
+        for (i = 0; i < keys.length; i++) {
+            keys[i] = 0;
+        }
+
+        size = 0;
+        hasZero = false;
+    }
+
+    //Returns the value of a key or missing if the key is not in the map
+    int get(long k, int missing) {
+        int pos;
+
+        if (k == 0) return hasZero ? zeroValue : missing;
+
+        pos = slot(k);
+        while (keys[pos] != 0) {
+            if (keys[pos] == k) return values[pos];
+            pos = (pos + 1) & mask;
+        }
+
+        return missing;
+    }
+
+    //Sets the value of a key, adding the key if it is not in the map yet
+    void put(long k, int v) {
+        int pos;
+
+        if (k == 0) {
+            if (!hasZero) size++;
+
+            hasZero = true;
+            zeroValue = v;
+            return;
+        }
+
+        pos = slot(k);
+        while (keys[pos] != 0) {
+            if (keys[pos] == k) {
+                values[pos] = v;
+                return;
+            }
+
+            pos = (pos + 1) & mask;
+        }
+
+        keys[pos] = k;
+        values[pos] = v;
+        size++;
+
+        //Keep the table at most half full
+        if (size * 2 > keys.length) grow();
+    }
+
+    //--------------------------------------------------------------------------
+
+    int slot(long k) {
+        k *= 0x9E3779B97F4A7C15L;
+        return (int)(k >>> 32) & mask;
+    }
+
+    void grow() {
+        long oldKeys[] = keys;
+        int oldValues[] = values;
+        int i;
+
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        mask = keys.length - 1;
+
+        for (i = 0; i < oldKeys.length; i++) {
+            long k = oldKeys[i];
+            int pos;
+
+            if (k == 0) continue;
+
+            pos = slot(k);
+            while (keys[pos] != 0) pos = (pos + 1) & mask;
+            keys[pos] = k;
+            values[pos] = oldValues[i];
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Alex vs Bus
+ * Copyright (C) 2021-2023 M374LX
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.alexvsbus;
+
+//Set of longs (used for hashes of visited states) with open addressing and
+//linear probing, which avoids boxing each value as a HashSet<Long> would
+//
+//Zero marks an empty slot, so the value zero itself is tracked separately
+class LongSet {
+    long slots[];
+    int mask;
+    int size;
+    boolean hasZero;
+
+    //--------------------------------------------------------------------------
+
+    LongSet(int initialCapacity) {
+        int capacity = 16;
+
+        while (capacity < initialCapacity * 2) capacity *= 2;
+
+        slots = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    void clear() {
+        int i;
+
+        for (i = 0; i < slots.length; i++) {
+            slots[i] = 0;
+        }
+
+        size = 0;
+        hasZero = false;
+    }
+
+    //Adds a value and returns true if it was not in the set yet
+    boolean add(long v) {
+        int pos;
+
+        if (v == 0) {
+            if (hasZero) return false;
+
+            hasZero = true;
+            size++;
+            return true;
+        }
+
+        pos = slot(v);
+        while (slots[pos] != 0) {
+            if (slots[pos] == v) return false;
+            pos = (pos + 1) & mask;
+        }
+
+        slots[pos] = v;
+        size++;
+
+        //Keep the table at most half full
+        if (size * 2 > slots.length) grow();
+
+        return true;
+    }
+
+    boolean contains(long v) {
+        int pos;
+
+        if (v == 0) return hasZero;
+
+        pos = slot(v);
+        while (slots[pos] != 0) {
+            if (slots[pos] == v) return true;
+            pos = (pos + 1) & mask;
+        }
+
+        return false;
+    }
+
+    //--------------------------------------------------------------------------
+
+    int slot(long v) {
+        v *= 0x9E3779B97F4A7C15L;
+        return (int)(v >>> 32) & mask;
+    }
+
+    void grow() {
+        long old[] = slots;
+        int i;
+
+        slots = new long[old.length * 2];
+        mask = slots.length - 1;
+
+        for (i = 0; i < old.length; i++) {
+            long v = old[i];
+            int pos;
+
+            if (v == 0) continue;
+
+            pos = slot(v);
+            while (slots[pos] != 0) pos = (pos + 1) & mask;
+            slots[pos] = v;
+        }
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Alex vs Bus
+ * Copyright (C) 2021-2023 M374LX
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.alexvsbus;
+
+import static org.alexvsbus.Defs.*;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+//Runs a large number of independent play sessions on a thread pool and
+//reports how the simulation throughput scales with the number of threads
+//
+//Each session (Instance) has its own Headless simulation and input source, so
+//the only things shared between threads are the level files, which are
+//cached, and the read-only tables in Data. There is no audio at all, as Play
+//only emits gameplay events, which are discarded
+//
+//All shipped levels are played by the given number of instances each, with
+//the whole set of instances being run once for each thread count. As every
+//instance starts from the same state and input each time, the results are
+//also compared between runs, which fails if anything leaks between sessions
+//
+//Usage: ParallelRun [-n <instances per level>] [-j <threads>[,<threads>...]]
+//                   [-t <seconds per level>] [<assets directory>]
+class ParallelRun {
+    //Provides the input state (combination of INPUT_LEFT, INPUT_RIGHT and
+    //INPUT_JUMP) for each tick of a play session
+    interface InputSource {
+        void reset();
+        int next(PlayCtx ctx);
+    }
+
+    //Simple bot that mostly runs to the right and jumps when it is blocked
+    //or at random, with its own random number generator (xorshift), so that
+    //each instance is reproducible and independent of the others
+    static class BotInput implements InputSource {
+        int seed;
+        int state;
+        int input;
+
+        BotInput(int s) {
+            seed = (s == 0) ? 1 : s;
+            reset();
+        }
+
+        public void reset() {
+            state = seed;
+            input = INPUT_RIGHT;
+        }
+
+        public int next(PlayCtx ctx) {
+            state ^= state << 13;
+            state ^= state >>> 17;
+            state ^= state << 5;
+
+            //Change the held keys about once every 32 ticks
+            if ((state & 31) == 0) {
+                input = INPUT_RIGHT;
+                if (((state >>> 5) & 7) == 0) input = INPUT_LEFT;
+                if (((state >>> 8) & 3) == 0) input |= INPUT_JUMP;
+            }
+
+            //Jump when not moving forward
+            if (ctx.player.xvel < 60) return input | INPUT_JUMP;
+
+            return input;
+        }
+    }
+
+    static class Instance {
+        Headless sim;
+        InputSource input;
+        int levelNum;
+        int difficulty;
+
+        //Results of the last run
+        int ticks;
+        int score;
+        boolean goalReached;
+    }
+
+    //Runs the instances from first to last (exclusive), splitting the range
+    //in halves until each task has a single instance
+    class RunTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        int first, last;
+
+        RunTask(int f, int l) {
+            first = f;
+            last = l;
+        }
+
+        protected void compute() {
+            int mid;
+
+            if (last - first == 1) {
+                runInstance(instances[first]);
+                return;
+            }
+
+            mid = (first + last) / 2;
+            invokeAll(new RunTask(first, mid), new RunTask(mid, last));
+        }
+    }
+
+    Instance instances[];
+    int maxTicks;
+
+    //--------------------------------------------------------------------------
+
+    ParallelRun(String assetsDir, int instancesPerLevel, int secondsPerLevel) {
+        FileSource dirSource = new Headless.DirFileSource(assetsDir);
+        FileSource fileSource = new BatchVerify.CachedFileSource(dirSource);
+        ArrayList<Instance> list = new ArrayList<>();
+        int difficulty, level, i;
+
+        for (difficulty = 0; difficulty <= DIFFICULTY_MAX; difficulty++) {
+            int numLevels = Data.difficultyNumLevels[difficulty];
+
+            for (level = 1; level <= numLevels; level++) {
+                for (i = 0; i < instancesPerLevel; i++) {
+                    Instance inst = new Instance();
+
+                    inst.sim = new Headless(fileSource, 480, 270);
+                    inst.input = new BotInput(list.size() * 7919 + 1);
+                    inst.levelNum = level;
+                    inst.difficulty = difficulty;
+                    list.add(inst);
+                }
+            }
+        }
+
+        instances = list.toArray(new Instance[list.size()]);
+        maxTicks = secondsPerLevel * TICK_RATE;
+    }
+
+    //Plays the level of an instance from the start until it ends or the
+    //maximum number of ticks is reached
+    void runInstance(Instance inst) {
+        Headless sim = inst.sim;
+        int err;
+
+        //The score is not reset by Play, as it carries over between levels
+        inst.input.reset();
+        sim.ctx.score = 0;
+
+        err = sim.startLevel(inst.levelNum, inst.difficulty, true);
+        if (err != LVLERR_NONE) {
+            inst.ticks = 0;
+            inst.score = NONE;
+            return;
+        }
+
+        while (sim.ticks < maxTicks && sim.ctx.sequenceStep != SEQ_FINISHED) {
+            sim.step(inst.input.next(sim.ctx));
+        }
+
+        inst.ticks = sim.ticks;
+        inst.score = sim.ctx.score;
+        inst.goalReached = sim.ctx.goalReached;
+    }
+
+    //--------------------------------------------------------------------------
+
+    public static void main(String[] args) {
+        String assetsDir = ".";
+        String threadCounts = null;
+        int instancesPerLevel = 16;
+        int secondsPerLevel = 150;
+        ArrayList<Integer> numThreads = new ArrayList<>();
+        ParallelRun runner;
+        ForkJoinPool pool;
+        int prevTicks[], prevScores[];
+        double baseRate = 0;
+        boolean consistent = true;
+        int i, j;
+
+        try {
+            for (i = 0; i < args.length; i++) {
+                if (args[i].equals("-n") && i + 1 < args.length) {
+                    i++;
+                    instancesPerLevel = Integer.parseInt(args[i]);
+                } else if (args[i].equals("-j") && i + 1 < args.length) {
+                    i++;
+                    threadCounts = args[i];
+                } else if (args[i].equals("-t") && i + 1 < args.length) {
+                    i++;
+                    secondsPerLevel = Integer.parseInt(args[i]);
+                } else {
+                    assetsDir = args[i];
+                }
+            }
+
+            if (threadCounts != null) {
+                String counts[] = threadCounts.split(",");
+
+                for (i = 0; i < counts.length; i++) {
+                    numThreads.add(Integer.parseInt(counts[i]));
+                }
+            }
+        } catch (NumberFormatException e) {
+            numThreads.clear();
+            instancesPerLevel = 0;
+        }
+
+        //By default, use powers of two up to the number of processors
+        if (threadCounts == null) {
+            int numProcessors = Runtime.getRuntime().availableProcessors();
+
+            for (i = 1; i < numProcessors; i *= 2) {
+                numThreads.add(i);
+            }
+            numThreads.add(numProcessors);
+        }
+
+        for (i = 0; i < numThreads.size(); i++) {
+            if (numThreads.get(i) < 1) instancesPerLevel = 0;
+        }
+
+        if (instancesPerLevel < 1 || secondsPerLevel < 1) {
+            System.err.println("Usage: ParallelRun [-n <instances per level>] "
+                    + "[-j <threads>[,<threads>...]] [-t <seconds per level>] "
+                    + "[<assets directory>]");
+            System.exit(2);
+        }
+
+        runner = new ParallelRun(assetsDir, instancesPerLevel, secondsPerLevel);
+        prevTicks = new int[runner.instances.length];
+        prevScores = new int[runner.instances.length];
+
+        //Warm up the JIT compiler, so that the first thread count measured is
+        //not penalized
+        pool = new ForkJoinPool(numThreads.get(0));
+        pool.invoke(runner.new RunTask(0, runner.instances.length));
+        pool.shutdown();
+
+        System.out.println(runner.instances.length + " instances, "
+                + Runtime.getRuntime().availableProcessors() + " processors");
+        System.out.println("threads      ticks/s  speedup  efficiency");
+
+        for (i = 0; i < numThreads.size(); i++) {
+            int n = numThreads.get(i);
+            long startTime, totalTicks = 0;
+            double seconds, rate;
+
+            pool = new ForkJoinPool(n);
+            startTime = System.nanoTime();
+            pool.invoke(runner.new RunTask(0, runner.instances.length));
+            seconds = (System.nanoTime() - startTime) / 1e9;
+
+            pool.shutdown();
+
+            for (j = 0; j < runner.instances.length; j++) {
+                Instance inst = runner.instances[j];
+
+                totalTicks += inst.ticks;
+
+                if (inst.score == NONE) {
+                    System.err.println("Cannot load level " + inst.levelNum
+                            + " (difficulty " + inst.difficulty + ")");
+                    System.exit(1);
+                }
+
+                if (i > 0 && (inst.ticks != prevTicks[j]
+                        || inst.score != prevScores[j])) {
+                    consistent = false;
+                }
+
+                prevTicks[j] = inst.ticks;
+                prevScores[j] = inst.score;
+            }
+
+            rate = totalTicks / seconds;
+            if (i == 0) baseRate = rate / n;
+
+            System.out.println(String.format("%7d %12.0f %8.2f %10.2f",
+                    n, rate, rate / baseRate, rate / baseRate / n));
+        }
+
+        if (!consistent) {
+            System.out.println("Results differ between runs");
+            System.exit(1);
+        }
+    }
+}
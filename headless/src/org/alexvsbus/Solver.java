@@ -0,0 +1,543 @@
+/*
+ * Alex vs Bus
+ * Copyright (C) 2021-2023 M374LX
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.alexvsbus;
+
+import static org.alexvsbus.Defs.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+//Searches for the fastest way to finish a level and saves it as a replay
+//
+//The search is a beam search over steps of a few ticks. At each step, every
+//state in the beam (a snapshot taken with Play.saveState()) is expanded with
+//each of the inputs in ACTIONS, the expansions being run in parallel by a
+//ForkJoinPool with one play session per thread. The resulting states are
+//then ranked by how far the player character has gotten and by score, and
+//the best ones form the next beam, leaving out duplicates (candidates whose
+//quantized state is the same as that of a better candidate)
+//
+//The search ends at the first step in which the goal is reached, taking the
+//candidate that reaches it in the fewest ticks, with the highest score as a
+//tie-breaker. That run is then played again from the start to record it as a
+//replay and to obtain the final score, which includes the remaining time
+//
+//As states are pruned, the run found is not guaranteed to be the fastest
+//possible, but it gives a reference time for the level. If the beam gets
+//stuck (some levels require backtracking, such as to push a crate), the
+//search is repeated with a wider beam
+//
+//Reference times (seconds until the goal is reached, with the beam width
+//needed), as of REPLAY_VERSION 7, which need to be regenerated whenever a
+//change to Play or to the search alters the runs found:
+//
+//  level1n 55.17 (128)   level1h 59.22 (128)   level1s 67.95 (512)
+//  level2n 54.97 (128)   level2h 67.31 (128)   level2s 89.12 (256)
+//  level3n 61.03 (128)   level3h 77.82 (128)   level3s 65.82 (512)
+//  level4n 57.85 (128)   level4h 56.62 (128)
+//  level5n 76.79 (128)   level5h 84.03 (256)
+//
+//Usage: Solver [-w <beam width>] [-j <threads>] [-o <output directory>]
+//              <assets directory> [<level name>...]
+//
+//The level name is as in the level files (example: level1n). If none is
+//given, every shipped level is solved.
+class Solver {
+    //Inputs tried from each state, held for a whole step
+    static final int ACTIONS[] = {
+        INPUT_RIGHT,
+        INPUT_RIGHT | INPUT_JUMP,
+        0,
+        INPUT_JUMP,
+        INPUT_LEFT,
+        INPUT_LEFT | INPUT_JUMP,
+    };
+    static final int NUM_ACTIONS = ACTIONS.length;
+
+    static final int TICKS_PER_STEP = 8;
+    static final int MAX_TICKS = 90 * TICK_RATE;
+
+    //How many times the beam width is doubled when no solution is found
+    static final int MAX_WIDENINGS = 2;
+
+    //Expands the candidates from first to last (exclusive), splitting the
+    //range in halves until each task has a single candidate
+    class ExpandTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        int first, last;
+
+        ExpandTask(int f, int l) {
+            first = f;
+            last = l;
+        }
+
+        protected void compute() {
+            int mid;
+
+            if (last - first == 1) {
+                expand(first);
+                return;
+            }
+
+            mid = (first + last) / 2;
+            invokeAll(new ExpandTask(first, mid), new ExpandTask(mid, last));
+        }
+    }
+
+    FileSource fileSource;
+    ThreadLocal<Headless> sims;
+    ForkJoinPool pool;
+    int beamWidth; //Current width, from minWidth to maxWidth
+    int minWidth;
+    int maxWidth;
+
+    //Level being solved
+    int levelNum;
+    int difficulty;
+
+    //Beam (parent states) and its expansions (candidates), the expansion of
+    //parent p with action a being candidate p * NUM_ACTIONS + a
+    StateBuffer parents[];
+    int numParents;
+    StateBuffer candidates[];
+    long candKey[];   //Hash of the state, for deduplication
+    long candValue[]; //Higher is better
+    boolean candAlive[]; //False if time is up
+    int candGoalTick[]; //Tick within the step in which the goal was reached
+    int candScore[];
+    Integer order[];
+
+    //For each step, the parent and action of every state kept in the beam
+    int stepParent[][];
+    int stepAction[][];
+
+    boolean candSeen[]; //True if the key has been kept in an earlier step
+    LongSet visited; //Keys of the candidates kept in the current step
+    LongSet seen; //Keys of the candidates kept in all steps so far
+
+    //Results (the replay of the run found is stored in replayData)
+    int goalTicks;
+    int goalScore;
+    int goalTime;
+    int finalScore;
+    int numExpanded;
+    ByteArrayOutputStream replayData;
+
+    //--------------------------------------------------------------------------
+
+    Solver(String assetsDir, int width, int numThreads) {
+        int maxCandidates;
+        int maxSteps = MAX_TICKS / TICKS_PER_STEP + 1;
+
+        fileSource = new BatchVerify.CachedFileSource(
+                new Headless.DirFileSource(assetsDir));
+        sims = new ThreadLocal<Headless>() {
+            protected Headless initialValue() {
+                return new Headless(fileSource, 480, 270);
+            }
+        };
+        pool = new ForkJoinPool(numThreads);
+        minWidth = width;
+        maxWidth = width << MAX_WIDENINGS;
+        maxCandidates = maxWidth * NUM_ACTIONS;
+
+        //Preallocate all snapshots
+        parents = new StateBuffer[maxWidth];
+        candidates = new StateBuffer[maxCandidates];
+        allocSnapshots(sims.get());
+
+        candKey = new long[maxCandidates];
+        candValue = new long[maxCandidates];
+        candAlive = new boolean[maxCandidates];
+        candGoalTick = new int[maxCandidates];
+        candScore = new int[maxCandidates];
+        candSeen = new boolean[maxCandidates];
+        order = new Integer[maxCandidates];
+
+        stepParent = new int[maxSteps][maxWidth];
+        stepAction = new int[maxSteps][maxWidth];
+
+        visited = new LongSet(maxCandidates);
+        seen = new LongSet(maxCandidates * 16);
+        replayData = new ByteArrayOutputStream();
+    }
+
+    //Allocates the snapshots, unless they already have the size of the state
+    //of the play session, which only changes for levels that need larger
+    //tables than the default ones
+    void allocSnapshots(Headless sim) {
+        StateBuffer sb = sim.play.newStateBuffer();
+        int i;
+
+        if (parents[0] != null && parents[0].ints.length == sb.ints.length
+                && parents[0].floats.length == sb.floats.length) {
+            return;
+        }
+
+        for (i = 0; i < parents.length; i++) {
+            parents[i] = new StateBuffer(sb.ints.length, sb.floats.length);
+        }
+        for (i = 0; i < candidates.length; i++) {
+            candidates[i] = new StateBuffer(sb.ints.length, sb.floats.length);
+        }
+    }
+
+    //Returns the play session of the current thread, with the level being
+    //solved loaded
+    Headless sim() {
+        Headless sim = sims.get();
+
+        if (sim.ctx.levelNum != levelNum || sim.ctx.difficulty != difficulty) {
+            sim.ctx.score = 0;
+            sim.startLevel(levelNum, difficulty, true);
+        }
+
+        return sim;
+    }
+
+    //Returns true if a run that reaches the goal has been found, retrying
+    //with a wider beam if the search fails
+    boolean solve(int lvl, int diff) {
+        levelNum = lvl;
+        difficulty = diff;
+        numExpanded = 0;
+
+        for (beamWidth = minWidth; beamWidth <= maxWidth; beamWidth *= 2) {
+            if (search()) return true;
+        }
+
+        beamWidth = maxWidth;
+        return false;
+    }
+
+    //Beam search with the current width
+    boolean search() {
+        Headless sim;
+        int maxSteps = MAX_TICKS / TICKS_PER_STEP;
+        int step, i;
+
+        seen.clear();
+
+        sim = sims.get();
+        sim.ctx.score = 0;
+        if (sim.startLevel(levelNum, difficulty, true) != LVLERR_NONE) {
+            return false;
+        }
+
+        allocSnapshots(sim);
+        sim.play.saveState(parents[0]);
+        numParents = 1;
+
+        for (step = 0; step < maxSteps && numParents > 0; step++) {
+            int numCandidates = numParents * NUM_ACTIONS;
+            int best = NONE;
+
+            pool.invoke(new ExpandTask(0, numCandidates));
+            numExpanded += numCandidates;
+
+            //Check if the goal has been reached, preferring the candidate that
+            //reaches it the earliest and then the one with the highest score
+            for (i = 0; i < numCandidates; i++) {
+                if (candGoalTick[i] == NONE) continue;
+
+                if (best == NONE || candGoalTick[i] < candGoalTick[best]
+                        || (candGoalTick[i] == candGoalTick[best]
+                            && candScore[i] > candScore[best])) {
+                    best = i;
+                }
+            }
+
+            if (best != NONE) {
+                return record(step, best);
+            }
+
+            selectBeam(step, numCandidates);
+        }
+
+        return false;
+    }
+
+    //Runs a single step from a parent state with one of the actions
+    void expand(int cand) {
+        Headless sim = sim();
+        PlayCtx ctx = sim.ctx;
+        int input = ACTIONS[cand % NUM_ACTIONS];
+        int t;
+
+        sim.play.restoreState(parents[cand / NUM_ACTIONS]);
+
+        candGoalTick[cand] = NONE;
+        for (t = 0; t < TICKS_PER_STEP; t++) {
+            sim.step(input);
+
+            if (ctx.goalReached) {
+                candGoalTick[cand] = t + 1;
+                break;
+            }
+        }
+
+        sim.play.saveState(candidates[cand]);
+
+        candAlive[cand] = !ctx.timeUp;
+        candScore[cand] = ctx.score;
+        candKey[cand] = stateKey(sim);
+
+        //Progress towards the goal comes first, score second
+        candValue[cand] = ((long)(ctx.player.x * 16) << 20) + ctx.score;
+
+        //Falling into a deep hole sends the player character back, so such
+        //states are only kept if there is nothing else
+        if (ctx.player.fell) candValue[cand] = ctx.score;
+    }
+
+    //Keeps the best candidates as the next beam, leaving out duplicates
+    //
+    //Candidates whose key has already been kept in an earlier step are not
+    //left out, as the key does not include everything that changes over time
+    //(the position of gushes, for example), so waiting can be useful, but they
+    //only come after all the others. This keeps the beam from filling up with
+    //states that are stuck against a wall while there are others to explore
+    void selectBeam(int step, int numCandidates) {
+        StateBuffer tmp;
+        int n = 0;
+        int i;
+
+        for (i = 0; i < numCandidates; i++) {
+            order[i] = i;
+            candSeen[i] = seen.contains(candKey[i]);
+        }
+
+        Arrays.sort(order, 0, numCandidates, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                if (candSeen[a] != candSeen[b]) return candSeen[a] ? 1 : -1;
+                return Long.compare(candValue[b], candValue[a]);
+            }
+        });
+
+        visited.clear();
+
+        for (i = 0; i < numCandidates && n < beamWidth; i++) {
+            int cand = order[i];
+
+            if (!candAlive[cand]) continue;
+            if (!visited.add(candKey[cand])) continue;
+
+            seen.add(candKey[cand]);
+
+            stepParent[step][n] = cand / NUM_ACTIONS;
+            stepAction[step][n] = cand % NUM_ACTIONS;
+
+            //Swap the buffers instead of copying the state
+            tmp = parents[n];
+            parents[n] = candidates[cand];
+            candidates[cand] = tmp;
+
+            n++;
+        }
+
+        numParents = n;
+    }
+
+    //Hash of the parts of the state that make two search states equivalent,
+    //with positions and velocities quantized, so that states that differ
+    //only slightly are merged
+    static long stateKey(Headless sim) {
+        PlayCtx ctx = sim.ctx;
+        Player pl = ctx.player;
+        long h = 0;
+        int i;
+
+        h = mix(h, (int)pl.x >> 3);
+        h = mix(h, (int)pl.y >> 3);
+        h = mix(h, (int)pl.xvel >> 5);
+
+        //Kept finer than the rest, so that the steps of a jump do not merge
+        h = mix(h, (int)pl.yvel >> 3);
+
+        h = mix(h, pl.state);
+        h = mix(h, pl.onFloor ? 1 : 0);
+        h = mix(h, pl.visible ? 1 : 0);
+        h = mix(h, sim.play.oldInputJump ? 1 : 0);
+        h = mix(h, ctx.score);
+        h = mix(h, ctx.sequenceStep);
+        h = mix(h, (int)(ctx.cratePushRemaining * 16));
+
+        h = mix(h, ctx.curPassageway);
+        h = mix(h, ctx.objs.numLive);
+        h = mix(h, ctx.grabbedRope.obj);
+        h = mix(h, (int)ctx.grabbedRope.x);
+
+        for (i = 0; i < MAX_PUSHABLE_CRATES; i++) {
+            h = mix(h, ctx.pushableCrates[i].pushed ? 1 : 0);
+        }
+
+        return h;
+    }
+
+    static long mix(long h, int v) {
+        h ^= v;
+        h *= 0x100000001B3L;
+        h ^= h >>> 29;
+        return h;
+    }
+
+    //Follows the parents back from the candidate that reached the goal to
+    //rebuild the input of each step, then plays the run again from the start
+    //to record it as a replay
+    boolean record(int lastStep, int cand) {
+        Headless sim = new Headless(fileSource, 480, 270);
+        ReplayWriter writer = new ReplayWriter();
+        int actions[] = new int[lastStep + 1];
+        int step, t;
+
+        actions[lastStep] = cand % NUM_ACTIONS;
+        for (step = lastStep - 1, t = cand / NUM_ACTIONS; step >= 0; step--) {
+            actions[step] = stepAction[step][t];
+            t = stepParent[step][t];
+        }
+
+        replayData.reset();
+        sim.ctx.score = 0;
+        sim.startLevel(levelNum, difficulty, true);
+        writer.begin(replayData, levelNum, difficulty, true, false,
+                sim.displayParams.vscreenWidth, 0);
+
+        for (step = 0; step <= lastStep; step++) {
+            for (t = 0; t < TICKS_PER_STEP && !sim.ctx.goalReached; t++) {
+                writer.tick(ACTIONS[actions[step]], sim.ctx.stateHash);
+                sim.step(ACTIONS[actions[step]]);
+            }
+        }
+
+        //The re-simulation must reach the goal exactly as in the search
+        if (!sim.ctx.goalReached) return false;
+
+        goalTicks = sim.ticks;
+        goalScore = sim.ctx.score;
+        goalTime = sim.ctx.time;
+
+        //Let the ending sequence, which adds the remaining time to the
+        //score, run to the end
+        while (sim.ctx.sequenceStep != SEQ_FINISHED) {
+            writer.tick(0, sim.ctx.stateHash);
+            sim.step(0);
+        }
+
+        finalScore = sim.ctx.score;
+
+        return writer.end(sim.ctx.score, sim.ctx.time, sim.ctx.goalReached);
+    }
+
+    //--------------------------------------------------------------------------
+
+    public static void main(String[] args) throws Exception {
+        int beamWidth = 128;
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        String outDir = ".";
+        String assetsDir = null;
+        ArrayList<String> names = new ArrayList<>();
+        Solver solver;
+        boolean allLevels;
+        boolean failed = false;
+        int difficulty, level, i;
+
+        for (i = 0; i < args.length; i++) {
+            if (args[i].equals("-w") && i + 1 < args.length) {
+                i++;
+                beamWidth = Integer.parseInt(args[i]);
+            } else if (args[i].equals("-j") && i + 1 < args.length) {
+                i++;
+                numThreads = Integer.parseInt(args[i]);
+            } else if (args[i].equals("-o") && i + 1 < args.length) {
+                i++;
+                outDir = args[i];
+            } else if (assetsDir == null) {
+                assetsDir = args[i];
+            } else {
+                names.add(args[i]);
+            }
+        }
+
+        if (assetsDir == null || beamWidth < 1 || numThreads < 1) {
+            System.err.println("Usage: Solver [-w <beam width>] [-j <threads>] "
+                    + "[-o <output directory>] <assets directory> "
+                    + "[<level name>...]");
+            System.exit(2);
+        }
+
+        solver = new Solver(assetsDir, beamWidth, numThreads);
+        allLevels = names.isEmpty();
+        new File(outDir).mkdirs();
+
+        System.out.println("level    ticks  seconds  time left  score  "
+                + "final score  width   states  solve time");
+
+        for (difficulty = 0; difficulty <= DIFFICULTY_MAX; difficulty++) {
+            for (level = 1; level <= Data.difficultyNumLevels[difficulty];
+                    level++) {
+                String name = LevelLoad.filename(level, difficulty);
+                long startTime;
+                double seconds;
+
+                if (!allLevels && !names.remove(name)) continue;
+
+                startTime = System.nanoTime();
+
+                if (!solver.solve(level, difficulty)) {
+                    System.out.println(name + ": no solution found");
+                    failed = true;
+                    continue;
+                }
+
+                seconds = (System.nanoTime() - startTime) / 1e9;
+
+                try (FileOutputStream out =
+                        new FileOutputStream(outDir + "/" + name + ".avbr")) {
+                    solver.replayData.writeTo(out);
+                }
+
+                System.out.println(String.format(
+                        "%-8s %5d %8.2f %10d %6d %12d %6d %8d %9.1f s",
+                        name, solver.goalTicks,
+                        (float)solver.goalTicks / TICK_RATE,
+                        solver.goalTime, solver.goalScore, solver.finalScore,
+                        solver.beamWidth, solver.numExpanded, seconds));
+            }
+        }
+
+        //Names left are those that do not match any level
+        for (i = 0; i < names.size(); i++) {
+            System.out.println(names.get(i) + ": unknown level");
+            failed = true;
+        }
+
+        solver.pool.shutdown();
+
+        if (failed) System.exit(1);
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Alex vs Bus
+ * Copyright (C) 2021-2023 M374LX
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.alexvsbus;
+
+import static org.alexvsbus.Defs.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+//Checks that the gameplay at the normal tick rate is still that of the
+//original game
+//
+//Every shipped level is played a few times by the bot of ParallelRun, each
+//time with a different seed, and a hash of the position, velocity and state
+//of the player character and of the score after every tick is compared with
+//the one obtained by running the same bot on the original code (before the
+//fixed tick rate was introduced), calling Play.update() with a delta time of
+//1/120 s. Changes meant to leave the gameplay as it is must not change any of
+//the results below
+public class BaselineRunTest {
+    static final int RUNS_PER_LEVEL = 8;
+    static final int MAX_TICKS = 100 * TICK_RATE;
+
+    //Level, seed, ticks, score, whether the goal has been reached, and hash
+    static final String EXPECTED[] = {
+        "level1n 32 11763 1850 false 627245e72938a446",
+        "level1n 7951 11763 1000 false 4f82ac6924ae7636",
+        "level1n 15870 11763 650 false 242cf075c0de0aa4",
+        "level1n 23789 11763 1100 false 43999f1602d6ba92",
+        "level1n 31708 11763 1600 false a9f425e5c9e332f7",
+        "level1n 39627 11763 1500 false 998f3d605aedd9a4",
+        "level1n 47546 11763 1100 false 7ae790a0123f5b9f",
+        "level1n 55465 11763 1350 false f513aef61a00ff52",
+        "level2n 63 11763 750 false 7e1c9b27b90b00f7",
+        "level2n 7982 11763 500 false 774c232c43bc0f7c",
+        "level2n 15901 11763 1550 false 1e9ec7c922019c92",
+        "level2n 23820 11763 1150 false 3ae2f4ea84b727ce",
+        "level2n 31739 11763 1850 false 86368acaec80e0e6",
+        "level2n 39658 11763 550 false 3b5f5a7721daaed0",
+        "level2n 47577 11763 950 false 9e87ce13fc210cc0",
+        "level2n 55496 11763 1050 false c6e5c7c0125ec831",
+        "level3n 94 11763 450 false ce36339fa002a303",
+        "level3n 8013 11763 500 false 9ffb46324e645d25",
+        "level3n 15932 11763 350 false 5f42cde09550f346",
+        "level3n 23851 11763 1050 false 652f8a3058f26b8b",
+        "level3n 31770 11763 650 false 938b40a2059a00ec",
+        "level3n 39689 11763 500 false b6e6d2568aea2d2a",
+        "level3n 47608 11763 350 false b5c02cc797ff1301",
+        "level3n 55527 11763 500 false 82ec31e53220dd53",
+        "level4n 125 11763 0 false 9a50abf3b37bed3a",
+        "level4n 8044 11763 350 false c591f72511f7612",
+        "level4n 15963 11763 300 false 26f72afc1590d521",
+        "level4n 23882 11763 450 false bd1a5a398b8c805",
+        "level4n 31801 11763 500 false 86d3676f4705f354",
+        "level4n 39720 11763 650 false c76d1d7678dca63b",
+        "level4n 47639 11763 0 false e812834aa57247f9",
+        "level4n 55558 11763 400 false 930073396b69b65e",
+        "level5n 156 11763 450 false 60c07556d7367f1c",
+        "level5n 8075 11763 500 false 704c9c21b0642e80",
+        "level5n 15994 11763 550 false 4f7465860b51c6e",
+        "level5n 23913 11763 350 false 465d0eb53384ba34",
+        "level5n 31832 11763 50 false 7a580b662a89764",
+        "level5n 39751 11763 50 false d57a92c1f2c2d88b",
+        "level5n 47670 11763 500 false 62a54a356bb351aa",
+        "level5n 55589 11763 100 false 8172894f603e5ba0",
+        "level1h 33 11763 300 false 653bf6983c581f75",
+        "level1h 7952 11763 300 false adc8828d5a821fb9",
+        "level1h 15871 11763 700 false 57689cdbfc29010a",
+        "level1h 23790 11763 300 false 18b1607effb4a7a3",
+        "level1h 31709 11763 250 false 65e5f5cf5be4345f",
+        "level1h 39628 11763 250 false 65355700b1202047",
+        "level1h 47547 11763 400 false be47edfcfad1262e",
+        "level1h 55466 11763 250 false c462c5ff402f761c",
+        "level2h 64 11763 300 false 6d6f69238f2ee05f",
+        "level2h 7983 11763 200 false a997555bedd9625c",
+        "level2h 15902 11763 200 false 8d620d83033b244c",
+        "level2h 23821 11763 450 false 8e71b1931f9447b2",
+        "level2h 31740 11763 250 false 2ae01b24bb952824",
+        "level2h 39659 11763 250 false c5966255a89ce32f",
+        "level2h 47578 11763 350 false 6dbeebc2046c12c8",
+        "level2h 55497 11763 950 false cb8b8ae3a986f2a4",
+        "level3h 95 11763 550 false 9bc79631530700f7",
+        "level3h 8014 11763 350 false e75e99f2a433642",
+        "level3h 15933 11763 400 false 4f7beff1b9c3483",
+        "level3h 23852 11763 500 false ecf38b53528fb598",
+        "level3h 31771 11763 400 false ee4a6e61dd296856",
+        "level3h 39690 11763 400 false 68aba67db4b52bff",
+        "level3h 47609 11763 400 false 64a01079010200a1",
+        "level3h 55528 11763 500 false b195b6975e76a90",
+        "level4h 126 11763 0 false 6e540fb5edf0ba0d",
+        "level4h 8045 11763 250 false cde6f5be0229b356",
+        "level4h 15964 11763 0 false 937969f1b5375e32",
+        "level4h 23883 11763 0 false bf596fe494f519a0",
+        "level4h 31802 11763 450 false bc43be2de5670cfc",
+        "level4h 39721 11763 0 false 1cb55d333e183a32",
+        "level4h 47640 11763 50 false 99b0ca5a8d498cf3",
+        "level4h 55559 11763 0 false c2f8abf9f38c68e",
+        "level5h 157 11763 100 false 94aa900f1952a89a",
+        "level5h 8076 11763 200 false 532976a3906db69",
+        "level5h 15995 11763 50 false c03644d0a9c5e69d",
+        "level5h 23914 11763 200 false 5b71738ce4e34317",
+        "level5h 31833 11763 200 false 10ff7b3359e6ac84",
+        "level5h 39752 11763 100 false 61291dd17110508b",
+        "level5h 47671 11763 450 false 8b742a807793e3e4",
+        "level5h 55590 11763 100 false f43eb3ba9b84eeb5",
+        "level1s 34 11763 200 false f123122beb14a412",
+        "level1s 7953 11763 450 false 9f212acff91b787e",
+        "level1s 15872 11763 300 false 989b225ce1eebad4",
+        "level1s 23791 11763 350 false ce951f274f563006",
+        "level1s 31710 11763 400 false e26020081e21203e",
+        "level1s 39629 11763 300 false b2c20eec8d8b57e0",
+        "level1s 47548 11763 500 false ab73a71642d20cfa",
+        "level1s 55467 11763 150 false 204c4af9c6d9d100",
+        "level2s 65 11763 50 false 5d72df4240f3dca7",
+        "level2s 7984 11763 50 false be621e74e20d144a",
+        "level2s 15903 11763 50 false 53e139a5c5aec86",
+        "level2s 23822 11763 50 false e15762feeaa4ed32",
+        "level2s 31741 11763 50 false 51fc646a5ebab59d",
+        "level2s 39660 11763 50 false 664a76b527097793",
+        "level2s 47579 11763 50 false fe444f68b9f71695",
+        "level2s 55498 11763 50 false e5b22660f2b58adb",
+        "level3s 96 11763 150 false f371fda8f7c216f4",
+        "level3s 8015 11763 0 false 25cdae482d55845e",
+        "level3s 15934 11763 150 false e7457adc39a439fb",
+        "level3s 23853 11763 50 false 32022a4e372b6dad",
+        "level3s 31772 11763 50 false e07c23279fa0d27d",
+        "level3s 39691 11763 50 false d46665223e33670e",
+        "level3s 47610 11763 0 false c5136a1785319e8a",
+        "level3s 55529 11763 50 false e4c40fb6bbae817d",
+    };
+
+    static long mix(long h, long v) {
+        h ^= v;
+        h *= 0x100000001b3L;
+        h ^= h >>> 29;
+        return h;
+    }
+
+    //Plays a level with the bot from the given seed and returns the results
+    //in the format of EXPECTED[]
+    static String run(Headless sim, int level, int difficulty, int seed) {
+        ParallelRun.BotInput bot = new ParallelRun.BotInput(seed);
+        PlayCtx ctx = sim.ctx;
+        Player pl = ctx.player;
+        long h = 0;
+
+        //The score is not reset by Play, as it carries over between levels
+        ctx.score = 0;
+        assertEquals(LVLERR_NONE, sim.startLevel(level, difficulty, true));
+
+        while (sim.ticks < MAX_TICKS && ctx.sequenceStep != SEQ_FINISHED) {
+            sim.step(bot.next(ctx));
+
+            h = mix(h, Float.floatToIntBits(pl.x));
+            h = mix(h, Float.floatToIntBits(pl.y));
+            h = mix(h, Float.floatToIntBits(pl.xvel));
+            h = mix(h, Float.floatToIntBits(pl.yvel));
+            h = mix(h, pl.state);
+            h = mix(h, ctx.score);
+        }
+
+        return LevelLoad.filename(level, difficulty) + " " + seed + " "
+            + sim.ticks + " " + ctx.score + " " + ctx.goalReached + " "
+            + Long.toHexString(h);
+    }
+
+    @Test
+    public void seededRunsMatchBaseline() {
+        Headless sim = new Headless(new Headless.DirFileSource("."), 480, 270);
+        int difficulty, level, i;
+        int n = 0;
+
+        for (difficulty = 0; difficulty <= DIFFICULTY_MAX; difficulty++) {
+            for (level = 1; level <= Data.difficultyNumLevels[difficulty];
+                    level++) {
+                for (i = 0; i < RUNS_PER_LEVEL; i++) {
+                    int seed = i * 7919 + level * 31 + difficulty + 1;
+
+                    assertEquals(EXPECTED[n],
+                            run(sim, level, difficulty, seed));
+                    n++;
+                }
+            }
+        }
+
+        assertEquals(EXPECTED.length, n);
+    }
+}
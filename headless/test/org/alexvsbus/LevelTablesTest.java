@@ -0,0 +1,124 @@
+/*
+ * Alex vs Bus
+ * Copyright (C) 2021-2023 M374LX
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.alexvsbus;
+
+import static org.alexvsbus.Defs.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+//Checks that the tables of a play session grow for a level that needs more
+//entries than their default capacities and shrink back for the next level
+public class LevelTablesTest {
+    static final int NUM_COINS = MAX_OBJS + 40;
+
+    //Serves the shipped levels, except for level 1 (normal difficulty), which
+    //can be replaced
+    static class TestFileSource implements FileSource {
+        FileSource assets = new Headless.DirFileSource(".");
+        String level1n;
+
+        public long length(String filename) throws Exception {
+            if (level1n != null && filename.equals("level1n")) {
+                return level1n.length();
+            }
+
+            return assets.length(filename);
+        }
+
+        public String readString(String filename) throws Exception {
+            if (level1n != null && filename.equals("level1n")) {
+                return level1n;
+            }
+
+            return assets.readString(filename);
+        }
+    }
+
+    //A level with a row of coins, one per level block
+    static String manyCoins() {
+        StringBuilder sb = new StringBuilder();
+        int i;
+
+        sb.append("level-size 32\n");
+        sb.append("sky-color 1\n");
+        sb.append("bgm 1\n");
+        for (i = 0; i < NUM_COINS; i++) {
+            sb.append("coin-silver 1 9\n");
+        }
+
+        return sb.toString();
+    }
+
+    static int countObjs(PlayCtx ctx, int type) {
+        int count = 0;
+        int i;
+
+        for (i = 0; i < ctx.objs.capacity; i++) {
+            if (ctx.objs.type[i] == type) count++;
+        }
+
+        return count;
+    }
+
+    @Test
+    public void tablesFollowTheLevel() {
+        TestFileSource fs = new TestFileSource();
+        Headless sim = new Headless(fs, 480, 270);
+        StateBuffer small, large;
+        long hash;
+        int i;
+
+        assertEquals(LVLERR_NONE, sim.startLevel(1, DIFFICULTY_NORMAL, true));
+        assertEquals(MAX_OBJS, sim.ctx.objs.capacity);
+        small = sim.play.newStateBuffer();
+
+        //Every coin is loaded, and the larger tables are part of the state
+        fs.level1n = manyCoins();
+        assertEquals(LVLERR_NONE, sim.startLevel(1, DIFFICULTY_NORMAL, true));
+        assertTrue(sim.ctx.objs.capacity >= NUM_COINS);
+        assertEquals(NUM_COINS, countObjs(sim.ctx, OBJ_COIN_SILVER));
+        large = sim.play.newStateBuffer();
+        assertTrue(large.ints.length > small.ints.length);
+
+        //Play goes through the objects beyond the default capacity, as
+        //collecting coins adds to the score
+        for (i = 0; i < 10 * TICK_RATE; i++) {
+            sim.step(INPUT_RIGHT);
+        }
+        assertTrue(sim.ctx.score > 0);
+        assertTrue(countObjs(sim.ctx, OBJ_COIN_SILVER) < NUM_COINS);
+
+        sim.play.saveState(large);
+        hash = sim.ctx.stateHash;
+        sim.step(INPUT_RIGHT);
+        sim.play.restoreState(large);
+        assertEquals(hash, sim.ctx.stateHash);
+
+        //Back to the default capacities and snapshot size
+        fs.level1n = null;
+        assertEquals(LVLERR_NONE, sim.startLevel(1, DIFFICULTY_NORMAL, true));
+        assertEquals(MAX_OBJS, sim.ctx.objs.capacity);
+        assertEquals(small.ints.length, sim.play.newStateBuffer().ints.length);
+        assertEquals(small.floats.length,
+                sim.play.newStateBuffer().floats.length);
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Alex vs Bus
+ * Copyright (C) 2021-2023 M374LX
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.alexvsbus;
+
+import static org.alexvsbus.Defs.*;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+//Checks ObjIndex against a scan of all objects, going through a random
+//sequence of additions, removals, moves, and window slides
+public class ObjIndexTest {
+    static final int NUM_OPS = 20000;
+    static final int WINDOW_WIDTH = 480;
+
+    Objs objs = new Objs(MAX_OBJS);
+    ObjIndex index = new ObjIndex(objs, false);
+    boolean used[] = new boolean[MAX_OBJS];
+
+    //The index must hold exactly the objects in use, sorted by X position
+    void checkOrder() {
+        int count = 0;
+        int i;
+
+        for (i = 0; i < MAX_OBJS; i++) {
+            if (used[i]) {
+                count++;
+                assertEquals(i, index.order[index.orderPos[i]]);
+            } else {
+                assertEquals(NONE, index.orderPos[i]);
+            }
+        }
+
+        assertEquals(count, index.count);
+
+        for (i = 1; i < index.count; i++) {
+            assertTrue(objs.x[index.order[i - 1]] <= objs.x[index.order[i]]);
+        }
+    }
+
+    //The window must cover exactly the objects in use within the range
+    void checkWindow(ObjWindow win, int left, int right) {
+        boolean inWindow[] = new boolean[MAX_OBJS];
+        int i;
+
+        for (i = win.first; i < win.last; i++) {
+            inWindow[index.order[i]] = true;
+        }
+
+        for (i = 0; i < MAX_OBJS; i++) {
+            boolean inRange = used[i] && objs.x[i] >= left
+                && objs.x[i] <= right;
+
+            assertEquals(inRange, inWindow[i]);
+        }
+    }
+
+    int pick(Random rand, boolean inUse) {
+        int obj;
+
+        do {
+            obj = rand.nextInt(MAX_OBJS);
+        } while (used[obj] != inUse);
+
+        return obj;
+    }
+
+    @Test
+    public void matchesScan() {
+        Random rand = new Random(1);
+        ObjWindow win = new ObjWindow();
+        int levelSize = 8000;
+        int numUsed = 0;
+        int left = 0;
+        int i, obj;
+
+        //Objects loaded from a level file, in roughly ascending X order
+        for (i = 0; i < MAX_OBJS / 2; i++) {
+            objs.x[i] = i * 48 + rand.nextInt(64);
+            used[i] = true;
+            numUsed++;
+        }
+        index.build(numUsed);
+        checkOrder();
+
+        for (i = 0; i < NUM_OPS; i++) {
+            int op = rand.nextInt(4);
+
+            if (op == 0 && numUsed < MAX_OBJS) {
+                obj = pick(rand, false);
+                objs.x[obj] = rand.nextInt(levelSize);
+                used[obj] = true;
+                numUsed++;
+                index.add(obj);
+            } else if (op == 1 && numUsed > 0) {
+                obj = pick(rand, true);
+                used[obj] = false;
+                numUsed--;
+                index.remove(obj);
+            } else if (op == 2 && numUsed > 0) {
+                //Mostly moves of a few pixels, as with moving objects, but
+                //sometimes farther
+                obj = pick(rand, true);
+                if (rand.nextInt(8) == 0) {
+                    objs.x[obj] = rand.nextInt(levelSize);
+                } else {
+                    objs.x[obj] += rand.nextInt(9) - 4;
+                }
+                index.update(obj);
+            } else {
+                //The window mostly follows the camera, but sometimes jumps,
+                //as when the player character respawns
+                if (rand.nextInt(16) == 0) {
+                    left = rand.nextInt(levelSize);
+                } else {
+                    left += rand.nextInt(41) - 8;
+                }
+                index.slide(win, left, left + WINDOW_WIDTH);
+                checkWindow(win, left, left + WINDOW_WIDTH);
+            }
+
+            checkOrder();
+        }
+    }
+}
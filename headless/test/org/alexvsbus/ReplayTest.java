@@ -0,0 +1,127 @@
+/*
+ * Alex vs Bus
+ * Copyright (C) 2021-2023 M374LX
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.alexvsbus;
+
+import static org.alexvsbus.Defs.*;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+//Records a level run with ReplayWriter and plays it back with ReplayReader
+public class ReplayTest {
+    static final int INITIAL_SCORE = 500;
+    static final int INITIAL_WIDTH = 320;
+    static final int FINAL_WIDTH = 480;
+
+    //Standing still for longer than REPLAY_MAX_PENDING_HASHES state hashes
+    //take, so that the writer has to write the hashes in the middle of the
+    //input run
+    static final int STAND_TICKS =
+        (REPLAY_MAX_PENDING_HASHES + 4) * REPLAY_HASH_INTERVAL;
+    static final int WALK_TICKS = 20 * TICK_RATE;
+
+    int headerLength;
+    int ticks;
+
+    byte[] record() {
+        Headless sim = new Headless(new Headless.DirFileSource("."),
+                INITIAL_WIDTH, 270);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ReplayWriter writer = new ReplayWriter();
+        Random rand = new Random(1);
+        int input = 0;
+        int i;
+
+        sim.ctx.score = INITIAL_SCORE;
+        assertEquals(LVLERR_NONE, sim.startLevel(1, DIFFICULTY_NORMAL, true));
+        writer.begin(out, 1, DIFFICULTY_NORMAL, true, false,
+                sim.displayParams.vscreenWidth, INITIAL_SCORE);
+        headerLength = out.size();
+
+        for (i = 0; i < STAND_TICKS; i++) {
+            writer.tick(0, sim.ctx.stateHash);
+            sim.step(0);
+        }
+
+        //The camera depends on the vscreen width, so the run would not be the
+        //same if the reader missed the change
+        sim.displayParams.vscreenWidth = FINAL_WIDTH;
+        sim.play.adaptToScreenSize();
+        writer.screenWidth(FINAL_WIDTH);
+
+        for (i = 0; i < WALK_TICKS; i++) {
+            if (rand.nextInt(40) == 0) {
+                input = (rand.nextInt(5) == 0) ? INPUT_LEFT : INPUT_RIGHT;
+                if (rand.nextInt(3) == 0) input |= INPUT_JUMP;
+            }
+
+            writer.tick(input, sim.ctx.stateHash);
+            sim.step(input);
+        }
+
+        ticks = sim.ticks;
+        assertTrue(writer.end(sim.ctx.score, sim.ctx.time,
+                    sim.ctx.goalReached));
+
+        return out.toByteArray();
+    }
+
+    @Test
+    public void playsBackTheSame() {
+        byte data[] = record();
+        Headless sim = new Headless(new Headless.DirFileSource("."), 256, 270);
+        ReplayReader replay = new ReplayReader();
+
+        assertTrue(replay.open(new ByteArrayInputStream(data)));
+        assertEquals(INITIAL_WIDTH, replay.vscreenWidth);
+        assertEquals(INITIAL_SCORE, replay.score);
+
+        assertTrue(sim.playReplay(replay));
+        assertFalse(replay.invalid);
+        assertEquals(ticks, sim.ticks);
+        assertEquals(FINAL_WIDTH, sim.displayParams.vscreenWidth);
+
+        //Every state hash has been checked, up to the last one recorded
+        assertEquals((ticks - 1) / REPLAY_HASH_INTERVAL * REPLAY_HASH_INTERVAL,
+                replay.matchedTick);
+    }
+
+    @Test
+    public void divergenceIsFound() {
+        byte data[] = record();
+        Headless sim = new Headless(new Headless.DirFileSource("."), 256, 270);
+        ReplayReader replay = new ReplayReader();
+
+        //The first record is that of the hash taken before the first tick,
+        //written when the writer had too many of them waiting
+        assertEquals((byte)REPLAY_HASH, data[headerLength]);
+        data[headerLength + 1] ^= 1;
+
+        assertTrue(replay.open(new ByteArrayInputStream(data)));
+        assertFalse(sim.playReplay(replay));
+        assertTrue(replay.diverged());
+        assertEquals(0, replay.divergedTick);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Alex vs Bus
+ * Copyright (C) 2021-2023 M374LX
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.alexvsbus;
+
+import static org.alexvsbus.Defs.*;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+//Checks SolidGrid queries against a scan of all solids, with solids being
+//moved and resized between the queries
+public class SolidGridTest {
+    static final int NUM_OPS = 20000;
+    static final int LEVEL_SIZE = MAX_LEVEL_SIZE;
+
+    Solids solids = new Solids(MAX_SOLIDS);
+    SolidGrid grid = new SolidGrid(solids);
+
+    void place(Random rand, int sol) {
+        int width = (rand.nextInt(4) == 0) ? rand.nextInt(1024)
+            : rand.nextInt(64);
+
+        solids.left[sol] = rand.nextInt(LEVEL_SIZE - width);
+        solids.right[sol] = solids.left[sol] + width;
+    }
+
+    //A query returns the solids in the cells the range covers, which includes
+    //every solid overlapping the range, in ascending order and without
+    //repetitions
+    void checkQuery(int left, int right) {
+        int n = grid.query(left, right);
+        int first = SolidGrid.cellAt(left);
+        int last = SolidGrid.cellAt(right);
+        int count = 0;
+        int sol;
+
+        for (sol = 0; sol < MAX_SOLIDS; sol++) {
+            boolean sharesCell = SolidGrid.cellAt(solids.left[sol]) <= last
+                && SolidGrid.cellAt(solids.right[sol]) >= first;
+
+            if (solids.right[sol] >= left && solids.left[sol] <= right) {
+                assertTrue(sharesCell);
+            }
+
+            if (sharesCell) {
+                assertTrue(count < n);
+                assertEquals(sol, grid.result[count]);
+                count++;
+            }
+        }
+
+        assertEquals(count, n);
+    }
+
+    @Test
+    public void matchesScan() {
+        Random rand = new Random(1);
+        int i, sol;
+
+        for (sol = 0; sol < MAX_SOLIDS; sol++) {
+            place(rand, sol);
+            grid.add(sol);
+        }
+
+        for (i = 0; i < NUM_OPS; i++) {
+            sol = rand.nextInt(MAX_SOLIDS);
+
+            if (rand.nextBoolean()) {
+                //Moving a few pixels, as with a pushed crate, or anywhere
+                if (rand.nextInt(8) == 0) {
+                    place(rand, sol);
+                } else {
+                    int dx = rand.nextInt(9) - 4;
+
+                    if (solids.left[sol] + dx >= 0) {
+                        solids.left[sol] += dx;
+                        solids.right[sol] += dx;
+                    }
+                }
+                grid.update(sol);
+            } else {
+                int left = rand.nextInt(LEVEL_SIZE);
+                int right = left + rand.nextInt(512);
+
+                checkQuery(left, right);
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Alex vs Bus
+ * Copyright (C) 2021-2023 M374LX
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.alexvsbus;
+
+import static org.alexvsbus.Defs.*;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+//Checks that a play session restored from a snapshot continues exactly as the
+//one the snapshot was taken from, going by the state hash
+public class StateBufferTest {
+    static final int TICKS_BEFORE = 10 * TICK_RATE;
+    static final int TICKS_AFTER = 20 * TICK_RATE;
+
+    static Headless newSim() {
+        Headless sim = new Headless(new Headless.DirFileSource("."), 480, 270);
+
+        assertEquals(LVLERR_NONE, sim.startLevel(1, DIFFICULTY_NORMAL, true));
+
+        return sim;
+    }
+
+    //Mostly walking right, sometimes jumping or turning back
+    static int randomInput(Random rand) {
+        int input = (rand.nextInt(5) == 0) ? INPUT_LEFT : INPUT_RIGHT;
+
+        if (rand.nextInt(3) == 0) input |= INPUT_JUMP;
+
+        return input;
+    }
+
+    //Runs the ticks after the snapshot, changing the input every few ticks,
+    //and returns the state hash before each tick
+    static long[] run(Headless sim, long seed) {
+        Random rand = new Random(seed);
+        long hashes[] = new long[TICKS_AFTER];
+        int input = 0;
+        int i;
+
+        for (i = 0; i < TICKS_AFTER; i++) {
+            if (i % 8 == 0) input = randomInput(rand);
+
+            hashes[i] = sim.ctx.stateHash;
+            sim.step(input);
+        }
+
+        return hashes;
+    }
+
+    @Test
+    public void restoredSessionContinuesTheSame() {
+        Headless sim = newSim();
+        Headless other = newSim();
+        Random rand = new Random(1);
+        StateBuffer sb = sim.play.newStateBuffer();
+        long hashes[];
+        long snapshotHash;
+        int i;
+
+        for (i = 0; i < TICKS_BEFORE; i++) {
+            sim.step(randomInput(rand));
+        }
+
+        sim.play.saveState(sb);
+        snapshotHash = sim.ctx.stateHash;
+        hashes = run(sim, 2);
+
+        //Back into the same session, after it has gone on
+        sim.play.restoreState(sb);
+        assertEquals(snapshotHash, sim.ctx.stateHash);
+        assertArrayEquals(hashes, run(sim, 2));
+
+        //Into another session of the same level, which is still at the start
+        other.play.restoreState(sb);
+        assertEquals(snapshotHash, other.ctx.stateHash);
+        assertArrayEquals(hashes, run(other, 2));
+    }
+
+    //Saving fills the buffer exactly as measured by newStateBuffer()
+    @Test
+    public void snapshotSizeMatches() {
+        Headless sim = newSim();
+        StateBuffer sb = sim.play.newStateBuffer();
+
+        sim.play.saveState(sb);
+        assertEquals(sb.ints.length, sb.intPos);
+        assertEquals(sb.floats.length, sb.floatPos);
+
+        sim.play.restoreState(sb);
+        assertEquals(sb.ints.length, sb.intPos);
+        assertEquals(sb.floats.length, sb.floatPos);
+    }
+}
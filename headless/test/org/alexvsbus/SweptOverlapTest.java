@@ -0,0 +1,82 @@
+/*
+ * Alex vs Bus
+ * Copyright (C) 2021-2023 M374LX
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ *
+ */
+
+
+package org.alexvsbus;
+
+import static org.alexvsbus.Defs.*;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+//Checks Play.sweptOverlap() against the overlap test of a box at a single
+//position
+public class SweptOverlapTest {
+    //Rectangle the boxes are tested against (a spring, as placed by
+    //handlePlayerInteractions()) and size of the player character's box
+    static final int LEFT = 100, TOP = 208, RIGHT = 116, BOTTOM = 208;
+    static final int WIDTH = 14, HEIGHT = 48;
+
+    static boolean overlaps(int x, int y) {
+        return x + WIDTH >= LEFT && x <= RIGHT
+            && y + HEIGHT >= TOP && y <= BOTTOM;
+    }
+
+    static boolean swept(int x0, int y0, int x1, int y1) {
+        return Play.sweptOverlap(x0, y0, x1, y1, WIDTH, HEIGHT,
+                LEFT, TOP, RIGHT, BOTTOM);
+    }
+
+    //Moves of a few pixels, as at the normal tick rate, are decided by the
+    //position at the end alone
+    @Test
+    public void shortMovesOnlyCheckTheEnd() {
+        int x, y, dx, dy;
+
+        for (x = LEFT - WIDTH - 8; x <= RIGHT + 8; x++) {
+            for (y = TOP - HEIGHT - 8; y <= BOTTOM + 8; y++) {
+                for (dx = -4; dx <= 4; dx++) {
+                    for (dy = -4; dy <= 4; dy++) {
+                        assertEquals(overlaps(x, y),
+                                swept(x - dx, y - dy, x, y));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void longMovesCheckThePath() {
+        //Passing over the rectangle from above and from the left
+        assertTrue(swept(104, 100, 104, 300));
+        assertTrue(swept(40, 180, 180, 180));
+
+        //Passing beside it
+        assertFalse(swept(60, 100, 60, 300));
+        assertFalse(swept(40, 100, 180, 100));
+    }
+
+    //Contact at the start of the move has been checked in the previous tick
+    @Test
+    public void startIsNotCheckedAgain() {
+        assertTrue(overlaps(104, 180));
+        assertFalse(swept(104, 180, 104, 100));
+        assertFalse(swept(104, 180, 300, 180));
+    }
+}